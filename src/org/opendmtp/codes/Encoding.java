@@ -19,6 +19,8 @@
 // Change History:
 //  2006/03/26  Martin D. Flynn
 //      Initial release
+//  2026/10/17
+//     -Added 'SUPPORTED_ENCODING_DEFLATE' (compressed blocks)
 // ----------------------------------------------------------------------------
 package org.opendmtp.codes;
 
@@ -41,6 +43,11 @@ public class Encoding
     public static final int     SUPPORTED_ENCODING_HEX      = 0x04;
     public static final int     SUPPORTED_ENCODING_CSV      = 0x08;
 
+    // Compressed blocks (extension, not part of the v0.1.0 specification):
+    // A client may send a block of packets (in any of the above encodings) as a single
+    // deflate compressed container packet (see 'Packet.PKT_CLIENT_COMPRESSED_BLOCK').
+    public static final int     SUPPORTED_ENCODING_DEFLATE  = 0x10;
+
     // ------------------------------------------------------------------------
     // Packet encoding
 
@@ -23,6 +23,8 @@
 //     -Added description to property attributes
 //  2008/05/12  Martin D. Flynn
 //     -Updated to Java 5.
+//  2026/10/17
+//     -Added 'PROP_COMM_RESUME_TOKEN', 'PROP_COMM_ACK_WINDOW'
 // ----------------------------------------------------------------------------
 package org.opendmtp.codes;
 
@@ -153,6 +155,8 @@ public class PropCodes
     // --- Packet/Data format properties:
     public static final int PROP_COMM_CUSTOM_FORMATS        = 0xF3C0;
     public static final int PROP_COMM_ENCODINGS             = 0xF3C1;
+    public static final int PROP_COMM_RESUME_TOKEN          = 0xF3C4;   // sent by the server, returned in PKT_CLIENT_RESUME_TOKEN
+    public static final int PROP_COMM_ACK_WINDOW            = 0xF3C5;   // reported by the client: { events, seconds }
     public static final int PROP_COMM_BYTES_READ            = 0xF3F1;
     public static final int PROP_COMM_BYTES_WRITTEN         = 0xF3F2;
     
@@ -392,6 +396,8 @@ public class PropCodes
         // --- Packet/Data format properties
         new Attr(PROP_COMM_CUSTOM_FORMATS   , TYPE_UINT8    ,  1, "Custom Formats"                  ),
         new Attr(PROP_COMM_ENCODINGS        , TYPE_UINT8    ,  1, "Supported Encodings"             ),
+        new Attr(PROP_COMM_RESUME_TOKEN     , TYPE_BINARY   ,  1, "Session Resume Token"            ),
+        new Attr(PROP_COMM_ACK_WINDOW       , TYPE_UINT16   ,  2, "Mid-Block ACK Window"            ),
         new Attr(PROP_COMM_BYTES_READ       , TYPE_UINT32   ,  1, "Bytes Read"                      ),
         new Attr(PROP_COMM_BYTES_WRITTEN    , TYPE_UINT32   ,  1, "Bytes Written"                   ),
 
@@ -21,6 +21,8 @@
 //      Initial release
 //  2006/04/09  Martin D. Flynn
 //      Added 'NAK_ACCOUNT_ERROR' and 'NAK_DEVICE_ERROR'
+//  2026/10/17
+//      Added optional retry delay to 'NAK_EXCESSIVE_CONNECTIONS'
 // ----------------------------------------------------------------------------
 package org.opendmtp.codes;
 
@@ -114,8 +116,11 @@ public class ServerErrors
     //      0:2 - This error code
     //      2:1 - Packet header causing error
     //      3:1 - Packet type causing error
+    //      4:2 - (optional) Suggested retry delay in seconds
     // Notes:
     //      Sent to client when too many connections have been made in the alotted time.
+    //      The retry delay is included when the server is admitting clients at a reduced
+    //      rate (connection storm), the client should not reconnect before it expires.
 
 // ----------------------------------------------------------------------------
 // Packet errors:
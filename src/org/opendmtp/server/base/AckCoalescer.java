@@ -0,0 +1,287 @@
+// ----------------------------------------------------------------------------
+// Copyright 2006-2010, GeoTelematic Solutions, Inc.
+// All rights reserved
+// ----------------------------------------------------------------------------
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+// http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+//
+// ----------------------------------------------------------------------------
+// Change History:
+//  2026/10/17
+//     -Initial release
+// ----------------------------------------------------------------------------
+package org.opendmtp.server.base;
+
+import java.lang.*;
+import java.util.*;
+import java.io.*;
+import java.net.*;
+
+import org.opengts.util.*;
+
+import org.opendmtp.codes.*;
+
+/**
+*** Coalesces the ACKs of consecutive Simplex/UDP sessions from the same device.<br>
+*** The ACK of a session is held for a short window.  Sessions from the same device
+*** arriving within the window are merged with the held ACK when their event sequences
+*** are contiguous with it (in either order, since datagrams may be handled out of
+*** order).  When the window expires (it is not extended by merged sessions) an ACK for
+*** the highest sequence of each contiguous range is sent, followed by an EOT, in a
+*** single datagram.  Normally all sessions merge into a single range.
+**/
+
+public class AckCoalescer
+    implements Runnable
+{
+
+    // ------------------------------------------------------------------------
+
+    /* held ACK */
+    private static class PendingAck
+    {
+        public String               key         = null;
+        public ServerSocketThread   sst         = null;
+        public SocketAddress        to          = null;
+        public int                  encoding    = Encoding.ENCODING_BINARY;
+        public int                  seqLen      = 0;
+        public java.util.List<long[]> ranges    = new Vector<long[]>(); // { first, last }
+        public long                 sendAt      = 0L;
+        public int                  sessions    = 0;
+        public boolean add(long first, long last) {
+            // merge the range into an adjacent held range (and then join any ranges it now bridges)
+            long r[] = new long[] { first, last };
+            if (this.ranges.size() >= MAX_RANGES) {
+                boolean adjacent = false;
+                for (Iterator<long[]> i = this.ranges.iterator(); !adjacent && i.hasNext();) {
+                    long h[] = i.next();
+                    adjacent = (first == AckCoalescer._nextSequence(h[1], this.seqLen)) || 
+                               (h[0] == AckCoalescer._nextSequence(last, this.seqLen));
+                }
+                if (!adjacent) {
+                    return false;
+                }
+            }
+            for (boolean merged = true; merged;) {
+                merged = false;
+                for (Iterator<long[]> i = this.ranges.iterator(); i.hasNext();) {
+                    long h[] = i.next();
+                    if (r[0] == AckCoalescer._nextSequence(h[1], this.seqLen)) {
+                        r[0] = h[0]; i.remove(); merged = true; break;
+                    } else
+                    if (h[0] == AckCoalescer._nextSequence(r[1], this.seqLen)) {
+                        r[1] = h[1]; i.remove(); merged = true; break;
+                    }
+                }
+            }
+            this.ranges.add(r);
+            this.sessions++;
+            return true;
+        }
+    }
+
+    /* maximum disjoint sequence ranges held per device */
+    private static final int MAX_RANGES = 8;
+
+    // ------------------------------------------------------------------------
+
+    private long                        windowMS    = 0L;
+    private Map<String,PendingAck>      pending     = new HashMap<String,PendingAck>();
+    private java.util.List<PendingAck>  sendQueue   = new LinkedList<PendingAck>(); // in 'sendAt' order
+    private Thread                      thread      = null;
+    private long                        ackCount    = 0L;
+    private long                        mergeCount  = 0L;
+
+    /**
+    *** Constructor
+    *** @param windowMS  The time an ACK is held waiting for further sessions
+    **/
+    public AckCoalescer(long windowMS)
+    {
+        this.windowMS = (windowMS > 0L)? windowMS : 1L;
+        this.thread   = new Thread(this, "AckCoalescer");
+        this.thread.setDaemon(true);
+        this.thread.start();
+    }
+
+    // ------------------------------------------------------------------------
+
+    /**
+    *** Gets the coalescing window
+    *** @return The coalescing window in milliseconds
+    **/
+    public long getWindow()
+    {
+        return this.windowMS;
+    }
+
+    /**
+    *** Returns the number of ACKs sent, and the number of session ACKs merged into them
+    *** @return A String containing the ACK counts
+    **/
+    public String toString()
+    {
+        synchronized (this.pending) {
+            return "sent=" + this.ackCount + " merged=" + this.mergeCount + " held=" + this.pending.size();
+        }
+    }
+
+    // ------------------------------------------------------------------------
+
+    /**
+    *** Holds the ACK of a session.  Any held ACK for the same device which cannot be
+    *** merged with this ACK (different client address/encoding, or too many 
+    *** non-contiguous ranges) is sent first.
+    *** @param key       The device key ("account/device")
+    *** @param sst       The UDP listener from which the ACK is sent
+    *** @param to        The client address
+    *** @param encoding  The client encoding
+    *** @param seqLen    The event sequence length
+    *** @param firstSeq  The sequence of the first event acknowledged by this session
+    *** @param lastSeq   The sequence of the last event acknowledged by this session
+    **/
+    public void hold(String key, ServerSocketThread sst, SocketAddress to, int encoding, int seqLen, long firstSeq, long lastSeq)
+    {
+        PendingAck flush = null;
+        synchronized (this.pending) {
+            PendingAck pa = this.pending.get(key);
+            if ((pa != null) && pa.to.equals(to) && (pa.encoding == encoding) && (pa.seqLen == seqLen) &&
+                pa.add(firstSeq, lastSeq)) {
+                // merged with held ACK
+                this.mergeCount++;
+                return;
+            }
+            if (pa != null) {
+                // cannot be merged, send held ACK now
+                this.pending.remove(key);
+                this.sendQueue.remove(pa);
+                flush = pa;
+            }
+            pa = new PendingAck();
+            pa.key      = key;
+            pa.sst      = sst;
+            pa.to       = to;
+            pa.encoding = encoding;
+            pa.seqLen   = seqLen;
+            pa.sendAt   = DateTime.getCurrentTimeMillis() + this.windowMS;
+            pa.add(firstSeq, lastSeq);
+            this.pending.put(key, pa);
+            this.sendQueue.add(pa);
+            this.pending.notify();
+        }
+        if (flush != null) {
+            this._send(flush);
+        }
+    }
+
+    /**
+    *** Sends any held ACK for the specified device now (ie. before a session
+    *** response which cannot be coalesced)
+    *** @param key  The device key ("account/device")
+    **/
+    public void flush(String key)
+    {
+        PendingAck pa;
+        synchronized (this.pending) {
+            pa = this.pending.remove(key);
+            if (pa != null) {
+                this.sendQueue.remove(pa);
+            }
+        }
+        if (pa != null) {
+            this._send(pa);
+        }
+    }
+
+    // ------------------------------------------------------------------------
+
+    /* return the sequence following the specified sequence */
+    private static long _nextSequence(long seq, int seqLen)
+    {
+        long mask = (seqLen >= 8)? -1L : ((1L << (seqLen * 8)) - 1L);
+        return (seq + 1L) & mask;
+    }
+
+    /* send ACK(s) + EOT */
+    private void _send(PendingAck pa)
+    {
+        // ranges in sequence order (the sequence may wrap, so the order starts after the largest gap)
+        final long mask = (pa.seqLen >= 8)? -1L : ((1L << (pa.seqLen * 8)) - 1L);
+        Collections.sort(pa.ranges, new Comparator<long[]>() {
+            public int compare(long a[], long b[]) {
+                return (a[0] < b[0])? -1 : (a[0] > b[0])? 1 : 0;
+            }
+        });
+        int start = 0;
+        long maxGap = -1L;
+        for (int i = 0; i < pa.ranges.size(); i++) {
+            long prev[] = pa.ranges.get((i + pa.ranges.size() - 1) % pa.ranges.size());
+            long gap = (pa.ranges.get(i)[0] - prev[1]) & mask;
+            if (gap > maxGap) { maxGap = gap; start = i; }
+        }
+        Collections.rotate(pa.ranges, -start);
+        ByteArrayOutputStream dg = new ByteArrayOutputStream();
+        StringBuffer seqs = new StringBuffer();
+        for (Iterator<long[]> i = pa.ranges.iterator(); i.hasNext();) {
+            long r[] = i.next();
+            Packet ackPkt = Packet.createServerPacket(Packet.PKT_SERVER_ACK);
+            ackPkt.getPayload(true).writeLong(r[1], pa.seqLen);
+            byte ack[] = ackPkt.encode(pa.encoding);
+            dg.write(ack, 0, ack.length);
+            if (seqs.length() > 0) { seqs.append(","); }
+            seqs.append("0x").append(StringTools.toHexString(r[1], pa.seqLen * 8));
+        }
+        byte eot[] = Packet.createServerPacket(Packet.PKT_SERVER_EOT).encode(pa.encoding);
+        dg.write(eot, 0, eot.length);
+        try {
+            pa.sst.sendDatagram(pa.to, dg.toByteArray());
+            synchronized (this.pending) {
+                this.ackCount++;
+            }
+            if (pa.sessions > 1) {
+                Print.logInfo("Coalesced ACK sent: " + pa.key + " [sessions=" + pa.sessions + ", seq=" + seqs + "]");
+            }
+        } catch (Throwable t) {
+            Print.logError("Unable to send coalesced ACK: " + pa.to + " - " + t);
+        }
+    }
+
+    /**
+    *** Sends held ACKs as their windows expire
+    **/
+    public void run()
+    {
+        while (true) {
+            PendingAck pa = null;
+            synchronized (this.pending) {
+                while (pa == null) {
+                    if (this.sendQueue.isEmpty()) {
+                        try { this.pending.wait(); } catch (InterruptedException ie) {}
+                    } else {
+                        PendingAck next = this.sendQueue.get(0);
+                        long waitMS = next.sendAt - DateTime.getCurrentTimeMillis();
+                        if (waitMS > 0L) {
+                            try { this.pending.wait(waitMS); } catch (InterruptedException ie) {}
+                        } else {
+                            this.sendQueue.remove(0);
+                            this.pending.remove(next.key);
+                            pa = next;
+                        }
+                    }
+                }
+            }
+            this._send(pa);
+        }
+    }
+
+}
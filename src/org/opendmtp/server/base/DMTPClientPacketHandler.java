@@ -34,6 +34,16 @@
 //     -Changed error messages for unrecognized custom event packet types.
 //     -Allow client to respond with an event template during the same session 
 //      where the server has responded with a NAK_FORMAT_NOT_RECOGNIZED error.
+//  2026/10/17
+//     -Added optional pipelined event persistence (see 'setEventPipelineThreads')
+//     -Added optional device affinity ingest shards (see 'setIngestShards')
+//     -Added optional adaptive per-device timeouts (see 'setAdaptiveTimeouts')
+//     -Added optional persistent "speak freely" Duplex sessions (see 'setPersistentSessions')
+//     -Added 'setBatchSession' for sessions delivered in a single request (HTTP gateway)
+//     -Added optional coalescing of Simplex/UDP ACKs (see 'setUdpAckCoalescing')
+//     -Added optional session resume tokens (see 'setResumeTokens')
+//     -Added optional mid-block cumulative ACK window (see 'setAckWindow')
+//     -Added optional deflate compressed block containers (see 'setCompressedBlocks')
 // ----------------------------------------------------------------------------
 package org.opendmtp.server.base;
 
@@ -41,6 +51,7 @@ import java.lang.*;
 import java.util.*;
 import java.io.*;
 import java.net.*;
+import java.nio.*;
 import java.sql.*;
 
 import org.opengts.util.*;
@@ -70,6 +81,241 @@ public class DMTPClientPacketHandler
         UDP_RETURN_RESPONSE = state;
     }
 
+    /* coalesced Simplex/UDP ACKs */
+    private static AckCoalescer UdpAckCoalescer = null;
+
+    /**
+    *** Enables coalescing of Simplex/UDP ACKs (only applicable when UDP responses are
+    *** returned).  The ACK+EOT response of a Simplex session is held for the specified
+    *** window, and consecutive sessions from the same device with contiguous event 
+    *** sequences are acknowledged by a single ACK for the highest sequence.
+    *** @param windowMS  The coalescing window (<= 0 to disable)
+    **/
+    public static void setUdpAckCoalescing(long windowMS)
+    {
+        UdpAckCoalescer = (windowMS > 0L)? new AckCoalescer(windowMS) : null;
+    }
+
+    // ------------------------------------------------------------------------
+
+    /* identified Simplex/UDP sessions, keyed by remote "address:port" */
+    private static ExpiringCache<String,SimplexSession> SimplexSessionCache = null;
+    private static long SIMPLEX_SESSION_MAX_AGE_MS          = 3600000L;
+    
+    /**
+    *** Enables caching of identified Simplex/UDP sessions.  Datagrams subsequently 
+    *** received from the same remote address:port resume the cached identification,
+    *** encoding, and checksum state, and skip re-identifying the device.  A cached
+    *** session is discarded once the maximum age has passed since its account/device
+    *** were loaded, so that the device is periodically reloaded and revalidated.
+    *** @param maxSize        The maximum number of cached sessions (<= 0 to disable)
+    *** @param idleTimeoutMS  The time after which an unused cached session expires
+    *** @param maxAgeMS       The maximum age of the cached account/device
+    **/
+    public static void setSimplexSessionCache(int maxSize, long idleTimeoutMS, long maxAgeMS)
+    {
+        SIMPLEX_SESSION_MAX_AGE_MS = (maxAgeMS > 0L)? maxAgeMS : 3600000L;
+        SimplexSessionCache = (maxSize > 0)? new ExpiringCache<String,SimplexSession>(maxSize, idleTimeoutMS) : null;
+    }
+
+    /* cached Simplex session state */
+    private static class SimplexSession
+    {
+        public AccountID        accountId   = null;
+        public DeviceID         deviceId    = null;
+        public int              encoding    = Encoding.ENCODING_UNKNOWN;
+        public FletcherChecksum fletcher    = null;
+        public Set<String>      identKeys   = null;
+        public long             loadTime    = 0L; // time the account/device were loaded
+    }
+
+    // ------------------------------------------------------------------------
+
+    /* session resume tokens, keyed by hex token */
+    private static final int RESUME_TOKEN_LENGTH            = 8;
+    private static ExpiringCache<String,ResumeState> ResumeTokenCache = null;
+    private static java.security.SecureRandom ResumeTokenRandom = null;
+    private static long RESUME_TOKEN_MAX_AGE_MS             = 3600000L;
+
+    /**
+    *** Enables session resume tokens.  At the end of a session in which the device 
+    *** identified itself by account/device (or unique) id, the server sends the device
+    *** a short opaque token (a SET_PROPERTY of PROP_COMM_RESUME_TOKEN) ahead of the EOT.
+    *** A device which presents the token in a PKT_CLIENT_RESUME_TOKEN packet at the start
+    *** of a later session is bound to its cached account/device (including any custom
+    *** payload templates), and negotiated encoding, without any identification lookups.
+    *** A token may be used only once (a resumed session is issued a new token).  The
+    *** cached account/device is reloaded once the maximum age has passed since it was
+    *** loaded by a normal identification, so that a token never outlives changes to the
+    *** account/device records (eg. a deactivated device) by more than the maximum age.
+    *** An unknown or expired token is rejected with NAK_ID_INVALID, after which the
+    *** device should identify itself normally (and will be issued a new token).
+    *** The connected devices must support PROP_COMM_RESUME_TOKEN.
+    *** @param maxSize        The maximum number of cached tokens (<= 0 to disable)
+    *** @param idleTimeoutMS  The time after which an unused token expires
+    *** @param maxAgeMS       The maximum age of the cached account/device
+    **/
+    public static void setResumeTokens(int maxSize, long idleTimeoutMS, long maxAgeMS)
+    {
+        RESUME_TOKEN_MAX_AGE_MS = (maxAgeMS > 0L)? maxAgeMS : 3600000L;
+        if (maxSize > 0) {
+            if (ResumeTokenRandom == null) {
+                ResumeTokenRandom = new java.security.SecureRandom();
+            }
+            ResumeTokenCache = new ExpiringCache<String,ResumeState>(maxSize, idleTimeoutMS);
+        } else {
+            ResumeTokenCache = null;
+        }
+    }
+
+    /* state bound to a resume token */
+    private static class ResumeState
+    {
+        public AccountID        accountId   = null;
+        public DeviceID         deviceId    = null;
+        public int              encoding    = Encoding.ENCODING_UNKNOWN;
+        public long             loadTime    = 0L; // time the account/device were loaded
+    }
+
+    // ------------------------------------------------------------------------
+
+    /* mid-block cumulative ACK window */
+    private static int  AckWindowEvents = 0;
+    private static long AckWindowMS     = 0L;
+
+    /**
+    *** Enables a mid-block cumulative ACK window for Duplex sessions.  A client which
+    *** reports a PROP_COMM_ACK_WINDOW property value { events, seconds } during the 
+    *** session is sent a PKT_SERVER_ACK for the last saved event each time the window 
+    *** number of events have been saved, or the window time has elapsed since the 
+    *** previous ACK, while its block of events is still being received.  This allows
+    *** the client to release acknowledged events from its buffer during long event 
+    *** backlogs (and to resend only the unacknowledged events after a lost connection).
+    *** The window used is the smaller of the client and server values (a '0' value
+    *** from the client uses the server value).  Clients which do not report the property
+    *** are acknowledged only at the end of each block, as before.  The interval is only 
+    *** checked as each event is received.
+    *** @param events      The maximum number of saved events between ACKs (0 for no limit)
+    *** @param intervalMS  The maximum time between ACKs (0 for no limit)
+    **/
+    public static void setAckWindow(int events, long intervalMS)
+    {
+        AckWindowEvents = (events     > 0 )? events     : 0;
+        AckWindowMS     = (intervalMS > 0L)? intervalMS : 0L;
+    }
+
+    // ------------------------------------------------------------------------
+
+    /* deflate compressed block containers */
+    private static final int MAX_INFLATED_LENGTH    = 256 * 1024;
+    private static int CompressedBlockMaxLength     = 0;
+
+    /**
+    *** Enables deflate compressed block containers (PKT_CLIENT_COMPRESSED_BLOCK).  A client 
+    *** which supports Encoding.SUPPORTED_ENCODING_DEFLATE may send a block of packets
+    *** (eg. a backlog of events followed by the end-of-block) as a single zlib compressed 
+    *** container packet, which is inflated and then handled as the individual packets.
+    *** Response packets are not compressed.  The maximum length applies only to TCP container
+    *** packets, all other packets remain limited by the listener 'maxPacketLength'.  UDP 
+    *** containers must still fit within the listener 'maxPacketLength'.
+    *** @param maxLength  The maximum container packet length (<= 0 to disable, at most 65535)
+    **/
+    public static void setCompressedBlocks(int maxLength)
+    {
+        CompressedBlockMaxLength = (maxLength > 0)? Math.min(maxLength, 0xFFFF) : 0;
+    }
+
+    // ------------------------------------------------------------------------
+
+    /* adaptive per-device timeouts */
+    private static boolean ADAPTIVE_TIMEOUTS                = false;
+    private static long    ADAPTIVE_MIN_IDLE_MS             = 2000L;
+    private static long    ADAPTIVE_MIN_PACKET_MS           = 1000L;
+
+    /**
+    *** Enables adaptive per-device Duplex timeouts.  The gap between client packets,
+    *** and the delay between a server response and the next client packet, are tracked
+    *** per device (see 'LatencyProfile'), and the session idle/packet timeouts are 
+    *** derived from them.  Learned timeouts are bounded below by the specified minimums,
+    *** and above by the configured server timeouts.  The learned profile is saved with
+    *** the device record at the end of each session.
+    *** @param enable       True to enable adaptive timeouts
+    *** @param minIdleMS    The minimum idle timeout
+    *** @param minPacketMS  The minimum packet timeout
+    **/
+    public static void setAdaptiveTimeouts(boolean enable, long minIdleMS, long minPacketMS)
+    {
+        ADAPTIVE_TIMEOUTS      = enable;
+        ADAPTIVE_MIN_IDLE_MS   = minIdleMS;
+        ADAPTIVE_MIN_PACKET_MS = minPacketMS;
+    }
+
+    // ------------------------------------------------------------------------
+
+    /* persistent "speak freely" Duplex sessions */
+    private static boolean PERSISTENT_SESSIONS              = false;
+    private static long    PENDING_POLL_MS                  = 5000L;
+
+    /**
+    *** Enables persistent Duplex sessions.  When a block completes without errors, and
+    *** there is nothing further to exchange, the server responds with "speak freely"
+    *** rather than ending the transmission, and the connection remains open until the
+    *** client closes it, or the session idle/session timeout expires.  While waiting 
+    *** for the client, pending packets are checked periodically and pushed to the client
+    *** as soon as they are queued.
+    *** @param enable         True to enable persistent sessions
+    *** @param pendingPollMS  The interval at which pending packets are checked
+    **/
+    public static void setPersistentSessions(boolean enable, long pendingPollMS)
+    {
+        PERSISTENT_SESSIONS = enable;
+        PENDING_POLL_MS     = pendingPollMS;
+    }
+
+    // ------------------------------------------------------------------------
+
+    /* maximum number of parsed events awaiting persistence, per session */
+    private static final int MAX_QUEUED_EVENTS              = 64;
+
+    /* shared event persistence threads (null to persist events in the session thread) */
+    private static ThreadPool EventPersistPool              = null;
+
+    /**
+    *** Enables pipelined event persistence.  Parsed event packets are queued for 
+    *** insertion by a shared pool of threads while the session continues reading the
+    *** next packets, and the end-of-block waits once for all queued events to be saved
+    *** before acknowledging the last valid event.  Events of a given session are
+    *** always saved in the order received.
+    *** @param maxThreads  The maximum number of persistence threads (<= 0 to save events
+    ***                    synchronously in the session thread)
+    **/
+    public static void setEventPipelineThreads(int maxThreads)
+    {
+        EventPersistPool = (maxThreads > 0)? new ThreadPool("EventPipeline", maxThreads) : null;
+    }
+
+    /* device affinity ingest shards (null for no device affinity) */
+    private static ShardedExecutor IngestShards             = null;
+
+    /**
+    *** Enables device affinity ingest shards.  Each shard is a single thread, and all 
+    *** storage writes for an identified device (events and session statistics) are 
+    *** routed to the shard selected by a hash of its account/device name.  Writes for
+    *** a device are therefore never concurrent, even across simultaneous sessions, and
+    *** the device storage state stays with one thread.  When enabled, this replaces the
+    *** event pipeline threads (see 'setEventPipelineThreads').
+    *** @param shardCount  The number of shards (0 to disable, < 0 for the number of 
+    ***                    available processors)
+    **/
+    public static void setIngestShards(int shardCount)
+    {
+        ShardedExecutor old = IngestShards;
+        IngestShards = (shardCount != 0)? new ShardedExecutor("IngestShard", shardCount) : null;
+        if (old != null) {
+            old.stopThreads();
+        }
+    }
+
     // ------------------------------------------------------------------------
     // ------------------------------------------------------------------------
 
@@ -95,19 +341,52 @@ public class DMTPClientPacketHandler
     /* identification */
     private AccountID       accountId               = null;
     private DeviceID        deviceId                = null;
+    private Set<String>     identKeys               = new HashSet<String>();
+    private boolean         identError              = false;
+    
+    /* Simplex session resumed from cache */
+    private String          simplexKey              = null;
+    private Set<String>     resumedIdentKeys        = null;
+    
+    /* session resumed by token */
+    private boolean         resumedByToken          = false;
+    
+    /* time the resumed account/device were loaded (0 if loaded by this session) */
+    private long            identLoadTime           = 0L;
     
     /* event accounting */
     private int             eventTotalCount         = 0;
     private int             eventBlockCount         = 0;
     private Event           lastValidEvent          = null;
+    private Event           firstValidEvent         = null;
     
     private Packet          eventErrorPacket        = null;
     
+    /* mid-block ACK window (negotiated by the client) */
+    private int             ackWindowEvents         = 0;
+    private long            ackWindowMS             = 0L;
+    private int             ackWindowCount          = 0; // events saved since the last ACK
+    private long            ackWindowTime           = 0L;
+    
+    /* pipelined event persistence */
+    private java.util.List<Event> eventQueue        = new Vector<Event>();
+    private boolean         eventWriterActive       = false;
+    
     private int             formatErrorCount        = 0;
     private int             formatErrorType         = 0;
     private int             formatRecvTemplate      = 0; // number of event template packets received
     private boolean         expectEventTemplate     = false;
 
+    /* packet latency */
+    private long            lastPacketNanos         = 0L;
+    private boolean         lastPacketResponse      = false;
+
+    /* persistent session, waiting for the client to speak */
+    private boolean         speakFreely             = false;
+
+    /* all packets delivered at once (ie. HTTP gateway) */
+    private boolean         batchSession            = false;
+
     /* pending packets */
     private boolean         sendPending             = true;
     private PacketList      pendingPackets          = null;
@@ -133,9 +412,33 @@ public class DMTPClientPacketHandler
         this.formatErrorCount = 0;
         this.formatErrorType  = 0;
         
+        /* resume cached Simplex session */
+        ExpiringCache<String,SimplexSession> cache = SimplexSessionCache;
+        ServerSocketThread.SessionInfo session = this.getSessionInfo();
+        if (!this.isDuplex && (cache != null) && (this.ipAddress != null) && (session != null)) {
+            this.simplexKey = this.ipAddress + ":" + session.getRemotePort();
+            SimplexSession ss = cache.remove(this.simplexKey); // in use by this session
+            if ((ss != null) && ((DateTime.getCurrentTimeMillis() - ss.loadTime) >= SIMPLEX_SESSION_MAX_AGE_MS)) {
+                // reload/revalidate the account/device
+                Print.logDebug("Cached Simplex session expired: " + this.simplexKey);
+                ss = null;
+            }
+            if (ss != null) {
+                this.identLoadTime    = ss.loadTime;
+                this.accountId        = ss.accountId;
+                this.deviceId         = ss.deviceId;
+                this.encoding         = ss.encoding;
+                this.fletcher         = ss.fletcher;
+                this.resumedIdentKeys = ss.identKeys;
+            }
+        }
+        
         /* debug message */
         if (this.isDuplex) {
             Print.logInfo("Begin Duplex communication: " + this.ipAddress);
+        } else
+        if (this.resumedIdentKeys != null) {
+            Print.logInfo("Begin Simplex communication: " + this.ipAddress + " [resumed " + this.deviceId.getAccountName() + "/" + this.deviceId.getDeviceName() + "]");
         } else {
             Print.logInfo("Begin Simplex communication: " + this.ipAddress);
         }
@@ -146,6 +449,9 @@ public class DMTPClientPacketHandler
         // called before the socket is closed
         boolean hasError = (err != null);
         
+        /* wait for queued events to be saved */
+        this._awaitQueuedEvents();
+        
         /* clear any pending packets if no errors have occurred */
         if (hasError) {
             if (this.pendingPackets != null) {
@@ -163,14 +469,55 @@ public class DMTPClientPacketHandler
         
         /* save session statistics */
         if (this.deviceId != null) {
-            this.deviceId.saveSessionStatistics(this.sessionStartTime,this.ipAddress,this.isDuplex,readCount,writeCount,this.eventTotalCount);
+            final DeviceID devId      = this.deviceId;
+            final long     startTime  = this.sessionStartTime;
+            final String   ipAddr     = this.ipAddress;
+            final boolean  duplex     = this.isDuplex;
+            final long     readCnt    = readCount;
+            final long     writeCnt   = writeCount;
+            final int      eventCnt   = this.eventTotalCount;
+            Runnable saveStats = new Runnable() {
+                public void run() {
+                    devId.saveSessionStatistics(startTime, ipAddr, duplex, readCnt, writeCnt, eventCnt);
+                    if (ADAPTIVE_TIMEOUTS && duplex) {
+                        devId.saveLatencyProfile();
+                        try {
+                            devId.saveChanges();
+                        } catch (PacketParseException ppe) {
+                            Print.logError("Unable to save latency profile: " + ppe);
+                        }
+                    }
+                }
+            };
+            ShardedExecutor shards = IngestShards;
+            if (shards != null) {
+                shards.run(this._getShardKey(), saveStats);
+            } else {
+                saveStats.run();
+            }
+        }
+        
+        /* cache identified Simplex session */
+        ExpiringCache<String,SimplexSession> cache = SimplexSessionCache;
+        if ((cache != null) && (this.simplexKey != null) && (this.deviceId != null) && !hasError && !this.identError) {
+            SimplexSession ss = new SimplexSession();
+            ss.accountId = this.accountId;
+            ss.deviceId  = this.deviceId;
+            ss.encoding  = this.encoding;
+            ss.fletcher  = this.fletcher;
+            ss.identKeys = this.identKeys;
+            ss.loadTime  = this._getIdentLoadTime();
+            if (this.resumedIdentKeys != null) {
+                ss.identKeys.addAll(this.resumedIdentKeys);
+            }
+            cache.put(this.simplexKey, ss);
         }
 
         /* log session termination */
         if (this.isDuplex()) {
             Print.logInfo("End Duplex communication: " + this.ipAddress);
-            // short pause to 'help' make sure the pending outbound data is transmitted
-            try { Thread.sleep(75L); } catch (Throwable t) {}
+            // pending outbound data is flushed by ServerSocketThread, which half-closes 
+            // the socket and schedules the final close (no need to pause this thread)
         } else {
             Print.logInfo("End Simplex communication: " + this.ipAddress);
         }
@@ -186,11 +533,143 @@ public class DMTPClientPacketHandler
 
     // ------------------------------------------------------------------------
 
+    public long getIdleTimeout()
+    {
+        if (this.speakFreely) {
+            // waiting for the client to speak, the learned client latency does not apply
+            return -1L; // server idle timeout
+        } else
+        if (ADAPTIVE_TIMEOUTS && this.isDuplex && (this.deviceId != null)) {
+            return this.deviceId.getLatencyProfile().getIdleTimeout(ADAPTIVE_MIN_IDLE_MS, -1L);
+        }
+        return -1L; // server idle timeout
+    }
+
+    public long getPacketTimeout()
+    {
+        if (this.speakFreely) {
+            // waiting for the client to speak, the learned client latency does not apply
+            return -1L; // server packet timeout
+        } else
+        if (ADAPTIVE_TIMEOUTS && this.isDuplex && (this.deviceId != null)) {
+            return this.deviceId.getLatencyProfile().getPacketTimeout(ADAPTIVE_MIN_PACKET_MS, -1L);
+        }
+        return -1L; // server packet timeout
+    }
+
+    // ------------------------------------------------------------------------
+
+    public long getIdlePollInterval()
+    {
+        return this.speakFreely? PENDING_POLL_MS : -1L;
+    }
+
+    public byte[] getIdlePacket()
+        throws Exception
+    {
+
+        /* waiting for the client to speak? */
+        if (!this.speakFreely || (this.deviceId == null) || (this.pendingPackets != null)) {
+            return null;
+        }
+
+        /* push pending packets */
+        PacketList pl = this.deviceId.getPendingPackets();
+        if (pl == null) {
+            return null;
+        }
+        this.pendingPackets  = pl;
+        this.speakFreely     = false; // client's turn to respond
+        this.lastPacketNanos = 0L;    // do not sample the idle time as a response delay
+        Packet p[] = pl.getPackets(); // will not be null
+        Print.logInfo("Pushing PendingPacket's to client [cnt=" + p.length + "]");
+        ByteArrayOutputStream baos = new ByteArrayOutputStream();
+        for (int i = 0; i <= p.length; i++) {
+            Packet pkt = (i < p.length)? p[i] : Packet.createServerPacket(Packet.PKT_SERVER_EOB_DONE);
+            if (Print.isDebugLoggingLevel()) {
+                Print.logDebug("==> " + pkt.toString(this.encoding));
+            }
+            byte b[] = pkt.encode(this.encoding);
+            baos.write(b, 0, b.length);
+        }
+        return baos.toByteArray();
+
+    }
+
+    /**
+    *** Sets this session as a batch session, where all client packets are delivered
+    *** at once and all responses are returned at once (ie. the HTTP gateway).  A batch
+    *** session is never kept open after the end-of-block, and its packet timing is
+    *** not used to learn the device latency.
+    *** @param batch  True for a batch session
+    **/
+    public void setBatchSession(boolean batch)
+    {
+        this.batchSession = batch;
+    }
+
+    /* returns true if the session should remain open after the current block */
+    private boolean _keepSessionOpen(boolean blockError)
+    {
+        return PERSISTENT_SESSIONS && this.isDuplex() && !this.batchSession && !blockError && !this.identError && (this.formatErrorCount == 0);
+    }
+
+    // ------------------------------------------------------------------------
+
+    /* record the time since the previous packet was handled */
+    private void _recordPacketLatency(long nowNanos)
+    {
+        if (ADAPTIVE_TIMEOUTS && this.isDuplex && !this.batchSession && (this.deviceId != null) && (this.lastPacketNanos > 0L)) {
+            long deltaMS = (nowNanos - this.lastPacketNanos) / 1000000L;
+            LatencyProfile lp = this.deviceId.getLatencyProfile();
+            if (this.lastPacketResponse) {
+                // client responding to the server
+                lp.addResponseDelay(deltaMS);
+            } else {
+                // next packet in the same block
+                lp.addPacketGap(deltaMS);
+            }
+        }
+    }
+
+    // ------------------------------------------------------------------------
+
     public int getActualPacketLength(byte packet[], int packetLen)
     {
         if ((packetLen >= 1) && (packet[0] == Encoding.AsciiEncodingChar)) {
-            // look for line terminator
-            return -1;
+            if (CompressedBlockMaxLength <= 0) {
+                // look for line terminator
+                return ServerSocketThread.PACKET_LEN_ASCII_LINE_TERMINATOR;
+            } else
+            if ((packet[packetLen - 1] == '\r') || (packet[packetLen - 1] == '\n')) {
+                // short line, already terminated
+                return ServerSocketThread.PACKET_LEN_ASCII_LINE_TERMINATOR;
+            } else
+            if (packetLen < 5) {
+                // "$E00C" identifies a compressed block, read one more byte
+                return ServerSocketThread.PACKET_LEN_INCREMENTAL_ | (packetLen + 1);
+            } else
+            if (Packet.isCompressedBlock(packet, 0, packetLen)) {
+                // compressed block line may exceed the listener maximum
+                return ServerSocketThread.PACKET_LEN_EXTENDED_LINE_ | CompressedBlockMaxLength;
+            } else {
+                // look for line terminator
+                return ServerSocketThread.PACKET_LEN_ASCII_LINE_TERMINATOR;
+            }
+        } else
+        if ((CompressedBlockMaxLength > 0) && Packet.isCompressedBlock(packet, 0, packetLen)) {
+            // compressed block, 2 byte length follows the packet type
+            if (packetLen < Packet.COMPRESSED_BLOCK_HEADER_LENGTH) {
+                return ServerSocketThread.PACKET_LEN_INCREMENTAL_ | Packet.COMPRESSED_BLOCK_HEADER_LENGTH;
+            }
+            int blockLen = (((int)packet[2] & 0xFF) << 8) | ((int)packet[3] & 0xFF);
+            int pktLen   = Packet.COMPRESSED_BLOCK_HEADER_LENGTH + blockLen;
+            if (pktLen > CompressedBlockMaxLength) {
+                // too long, frame the header only (rejected when parsed)
+                return Packet.COMPRESSED_BLOCK_HEADER_LENGTH;
+            }
+            // may exceed the listener maximum
+            return ServerSocketThread.PACKET_LEN_EXTENDED_ | pktLen;
         } else
         if (packetLen >= Packet.MIN_HEADER_LENGTH) {
             int payloadLen = (int)packet[2] & 0xFF;
@@ -204,10 +683,60 @@ public class DMTPClientPacketHandler
     // ------------------------------------------------------------------------
 
     public byte[] getHandlePacket(byte pktBytes[]) 
+    {
+        Packet resp[] = this._getResponsePackets(pktBytes);
+        if (resp == null) {
+            return null;
+        } else
+        if (resp.length == 1) {
+            return resp[0].encode(this.encoding);
+        } else {
+            ByteArrayOutputStream baos = new ByteArrayOutputStream();
+            for (int i = 0; i < resp.length; i++) {
+                byte b[] = resp[i].encode(this.encoding);
+                baos.write(b, 0, b.length);
+            }
+            return baos.toByteArray();
+        }
+    }
+
+    public ByteBuffer[] getHandlePacketBuffers(byte pktBytes[]) 
+    {
+        Packet resp[] = this._getResponsePackets(pktBytes);
+        if (resp == null) {
+            return null;
+        } else
+        if (this.encoding == Encoding.ENCODING_BINARY) {
+            // encode all response packets directly into a single buffer
+            int len = 0;
+            for (int i = 0; i < resp.length; i++) {
+                len += resp[i].getPacketLength();
+            }
+            ByteBuffer bb = ByteBuffer.allocate(len);
+            for (int i = 0; i < resp.length; i++) {
+                resp[i].encode(bb, this.encoding);
+            }
+            bb.flip();
+            return new ByteBuffer[] { bb };
+        } else {
+            // ASCII encoded response packets are sent in a gathering write
+            ByteBuffer bb[] = new ByteBuffer[resp.length];
+            for (int i = 0; i < resp.length; i++) {
+                bb[i] = ByteBuffer.wrap(resp[i].encode(this.encoding));
+            }
+            return bb;
+        }
+    }
+
+    private Packet[] _getResponsePackets(byte pktBytes[]) 
     {
         String ipAddr = this.getHostAddress();
         //Print.logInfo("handlePacket: IP = " + ipAddr);
+        this._recordPacketLatency(System.nanoTime());
+        this.speakFreely = false; // client is speaking
         Packet resp[] = this._parsePacket(ipAddr, pktBytes);
+        this.lastPacketNanos    = this.speakFreely? 0L : System.nanoTime(); // idle time is not sampled
+        this.lastPacketResponse = ((resp != null) && (resp.length > 0));
         
         /* null/empty response */
         if ((resp == null) || (resp.length == 0)) {
@@ -215,41 +744,19 @@ public class DMTPClientPacketHandler
             return null;
         }
 
-        /* Duplex/TCP response */
-        if (this.isDuplex()) {
-            if (resp.length == 1) {
-                Print.logDebug("==> " + resp[0].toString(this.encoding));
-                return resp[0].encode(this.encoding);
-            } else {
-                ByteArrayOutputStream baos = new ByteArrayOutputStream();
-                for (int i = 0; i < resp.length; i++) {
-                    Print.logDebug("==> " + resp[i].toString(this.encoding));
-                    byte b[] = resp[i].encode(this.encoding);
-                    baos.write(b, 0, b.length);
-                }
-                return baos.toByteArray();
-            }
-        }
-
         /* Discard Simplex/UDP response */
-        if (!UDP_RETURN_RESPONSE) {
+        if (!this.isDuplex() && !UDP_RETURN_RESPONSE) {
             Print.logError("UDP Response discarded.");
             return null;
         }
 
-        /* Return Simplex/UDP response */
-        if (resp.length == 1) {
-            Print.logDebug("==> " + resp[0].toString(this.encoding));
-            return resp[0].encode(this.encoding);
-        } else {
-            ByteArrayOutputStream baos = new ByteArrayOutputStream();
+        /* Duplex/TCP or Simplex/UDP response */
+        if (Print.isDebugLoggingLevel()) {
             for (int i = 0; i < resp.length; i++) {
                 Print.logDebug("==> " + resp[i].toString(this.encoding));
-                byte b[] = resp[i].encode(this.encoding);
-                baos.write(b, 0, b.length);
             }
-            return baos.toByteArray();
         }
+        return resp;
 
     }
             
@@ -269,6 +776,36 @@ public class DMTPClientPacketHandler
 
     // ------------------------------------------------------------------------
 
+    /* returns true if the identification key was already established by a resumed Simplex session */
+    private boolean _isResumedIdentity(String identKey)
+    {
+        String key = identKey.toLowerCase();
+        boolean isDevice = key.startsWith("d:");
+        boolean acctSent = false;
+        for (Iterator<String> i = this.identKeys.iterator(); i.hasNext();) {
+            if (i.next().startsWith("a:")) { acctSent = true; }
+        }
+        this.identKeys.add(key);
+        if (this.resumedIdentKeys == null) {
+            // not a resumed session
+            return false;
+        } else
+        if (this.resumedIdentKeys.contains(key)) {
+            // already identified
+            return true;
+        } else {
+            // identification changed, discard resumed session
+            Print.logInfo("Simplex identification changed: " + this.simplexKey);
+            if (!isDevice || !acctSent) {
+                this.accountId = null;
+            }
+            this.deviceId         = null;
+            this.resumedIdentKeys = null;
+            this.identLoadTime    = 0L;
+            return false;
+        }
+    }
+
     /* load account/device from unique id */
     private void loadUniqueID(String ipAddr, byte id[])
         throws PacketParseException
@@ -296,6 +833,79 @@ public class DMTPClientPacketHandler
         
     }
 
+    /* load account/device from a resume token */
+    private void loadResumeToken(String ipAddr, byte token[])
+        throws PacketParseException
+    {
+
+        /* account/device already defined? */
+        if ((this.accountId != null) || (this.deviceId != null)) {
+            Print.logError("Account/Device ID already defined");
+            throw new PacketParseException(ServerErrors.NAK_PROTOCOL_ERROR, null); // errData ok
+        }
+
+        /* lookup token (removed, a token is used only once) */
+        ExpiringCache<String,ResumeState> cache = ResumeTokenCache;
+        ResumeState rs = ((cache != null) && (token != null) && (token.length == RESUME_TOKEN_LENGTH))?
+            cache.remove(StringTools.toHexString(token)) : null;
+        if (rs == null) {
+            Print.logInfo("Unknown resume token: " + StringTools.toHexString(token));
+            throw new PacketParseException(ServerErrors.NAK_ID_INVALID, null); // errData ok
+        } else
+        if ((DateTime.getCurrentTimeMillis() - rs.loadTime) >= RESUME_TOKEN_MAX_AGE_MS) {
+            // reload the account/device
+            Print.logInfo("Expired resume token: " + StringTools.toHexString(token));
+            throw new PacketParseException(ServerErrors.NAK_ID_INVALID, null); // errData ok
+        }
+
+        /* set account/device (validated as for a normal identification) */
+        this._setAccountId(ipAddr, rs.accountId);
+        this._setDeviceId(ipAddr, rs.deviceId);
+        if (Encoding.IsEncodingAscii(rs.encoding) == Encoding.IsEncodingAscii(this.encoding)) {
+            // keep any encoding negotiated in a previous session
+            this.encoding = rs.encoding;
+        }
+        this.resumedByToken = true;
+        this.identLoadTime  = rs.loadTime;
+        Print.logInfo("Resumed by token: " + this.deviceId.getAccountName() + "/" + this.deviceId.getDeviceName());
+
+    }
+
+    /* returns the time the current account/device were loaded */
+    private long _getIdentLoadTime()
+    {
+        // resumed by token/Simplex cache, otherwise loaded by this session
+        return (this.identLoadTime > 0L)? this.identLoadTime : DateTime.getCurrentTimeMillis();
+    }
+
+    /* create a resume token for the identified device, returns the SET_PROPERTY packet */
+    private Packet _createResumeTokenPacket()
+    {
+        ExpiringCache<String,ResumeState> cache = ResumeTokenCache;
+        long now = DateTime.getCurrentTimeMillis();
+        long loadTime = this._getIdentLoadTime();
+        if ((cache == null) || this.identError || (this.deviceId == null) || (this.accountId == null)) {
+            return null;
+        } else
+        if (!this.isDuplex() && !UDP_RETURN_RESPONSE) {
+            // the client would never receive the token
+            return null;
+        } else
+        if ((now - loadTime) >= RESUME_TOKEN_MAX_AGE_MS) {
+            // the client must identify itself normally, to reload the account/device
+            return null;
+        }
+        byte token[] = new byte[RESUME_TOKEN_LENGTH];
+        ResumeTokenRandom.nextBytes(token);
+        ResumeState rs = new ResumeState();
+        rs.accountId = this.accountId;
+        rs.deviceId  = this.deviceId;
+        rs.encoding  = this.encoding;
+        rs.loadTime  = loadTime;
+        cache.put(StringTools.toHexString(token), rs);
+        return Packet.createServerSetPropertyPacket(PropCodes.PROP_COMM_RESUME_TOKEN, token, token.length);
+    }
+
     // ------------------------------------------------------------------------
 
     private void loadAccountId(String ipAddr, String acctName)
@@ -568,6 +1178,195 @@ public class DMTPClientPacketHandler
         }
         return devId.saveEvent(event);
     }
+
+    /* record the result of saving an event (updates the last valid event, or error packet) */
+    private void _recordEventResult(Event evData, int err)
+    {
+        if (err == ServerErrors.NAK_OK) {
+            // this event insertion was successful
+            this.lastValidEvent = evData;
+            if (this.firstValidEvent == null) { this.firstValidEvent = evData; }
+            this.ackWindowCount++;
+        } else
+        if (err == ServerErrors.NAK_DUPLICATE_EVENT) {
+            // this record already exists (not a critical error)
+            // duplicate events are quietly ignored
+            this.lastValidEvent = evData;
+            if (this.firstValidEvent == null) { this.firstValidEvent = evData; }
+            this.ackWindowCount++;
+        } else {
+            // A critical error occurred inserting this event. 
+            // One of the following:
+            //    ServerErrors.NAK_EXCESSIVE_EVENTS
+            //    ServerErrors.NAK_EVENT_ERROR
+            Print.logError("Event insertion [" + StringTools.toHexString(err,16) + "] " + ServerErrors.getErrorDescription(err));
+            Packet packet = evData.getPacket();
+            long seq    = evData.getSequence();
+            int  seqLen = evData.getSequenceLength();
+            PacketParseException ppe = null;
+            if ((seq >= 0L) && (seqLen > 0)) {
+                Payload p = new Payload();
+                p.writeULong(seq, seqLen);
+                byte errData[] = p.getBytes();
+                ppe = new PacketParseException(err, packet, errData); // sequence
+            } else {
+                ppe = new PacketParseException(err, packet); // errData ok
+            }
+            this.eventErrorPacket = ppe.createServerErrorPacket();
+        }
+    }
+
+    /* set the mid-block ACK window requested by the client (PROP_COMM_ACK_WINDOW) */
+    private void _setAckWindow(byte propVal[])
+    {
+        if (!this.isDuplex() || this.batchSession || ((AckWindowEvents <= 0) && (AckWindowMS <= 0L))) {
+            // not supported (the client would not receive the ACKs before the end of the block)
+            Print.logDebug("Mid-block ACK window not enabled");
+            return;
+        }
+        Payload p = new Payload(propVal);
+        int  events     = (int)p.readULong(2, 0L);
+        long intervalMS = p.readULong(2, 0L) * 1000L;
+        this.ackWindowEvents = ((events     > 0 ) && ((AckWindowEvents <= 0) || (events     < AckWindowEvents)))? events     : AckWindowEvents;
+        this.ackWindowMS     = ((intervalMS > 0L) && ((AckWindowMS     <= 0L) || (intervalMS < AckWindowMS    )))? intervalMS : AckWindowMS;
+        this.ackWindowTime   = DateTime.getCurrentTimeMillis();
+        Print.logInfo("Mid-block ACK window: events=" + this.ackWindowEvents + " interval=" + this.ackWindowMS + "ms");
+    }
+
+    /* return a cumulative ACK for the saved events, if the ACK window has been reached */
+    private Packet _createWindowAck()
+    {
+        if ((this.ackWindowEvents <= 0) && (this.ackWindowMS <= 0L)) {
+            return null;
+        }
+        long now = DateTime.getCurrentTimeMillis();
+        Event ackEvent;
+        synchronized (this.eventQueue) { // saved events may be recorded by the event pipeline
+            ackEvent = this.lastValidEvent;
+            if ((this.ackWindowCount <= 0) || (ackEvent == null) || (ackEvent.getSequenceLength() <= 0)) {
+                // nothing new to acknowledge (events without a sequence are acknowledged at end-of-block)
+                return null;
+            } else
+            if (((this.ackWindowEvents > 0) && (this.ackWindowCount >= this.ackWindowEvents)) ||
+                ((this.ackWindowMS > 0L) && ((now - this.ackWindowTime) >= this.ackWindowMS))) {
+                this.ackWindowCount = 0;
+            } else {
+                return null;
+            }
+        }
+        this.ackWindowTime = now;
+        Packet ackPkt = Packet.createServerPacket(Packet.PKT_SERVER_ACK);
+        ackPkt.getPayload(true).writeLong(ackEvent.getSequence(), ackEvent.getSequenceLength());
+        return ackPkt;
+    }
+
+    /* hold a Simplex ACK+EOT response for coalescing, returns true if held */
+    private boolean _coalesceAck(java.util.List<Packet> resp, Event ackFirst, Event ackLast)
+    {
+        AckCoalescer coalescer = UdpAckCoalescer;
+        if ((coalescer == null) || this.isDuplex() || !UDP_RETURN_RESPONSE || (this.deviceId == null)) {
+            return false;
+        }
+        String key = this._getShardKey();
+        ServerSocketThread.SessionInfo session = this.getSessionInfo();
+        DMTPServer server = DMTPServer.getInstance();
+        ServerSocketThread sst = ((server != null) && (session != null))? server.getUdpListener(session.getLocalPort()) : null;
+        int seqLen = (ackLast != null)? ackLast.getSequenceLength() : 0;
+        if ((resp.size() != 2) || (ackFirst == null) || (seqLen <= 0) || (ackFirst.getSequenceLength() != seqLen) || (sst == null)) {
+            // only a plain ACK+EOT is coalesced, anything else is sent after any held ACK
+            coalescer.flush(key);
+            return false;
+        }
+        int port = (this.getResponsePort() > 0)? this.getResponsePort() : session.getRemotePort();
+        InetSocketAddress to = new InetSocketAddress(this.inetAddress, port);
+        coalescer.hold(key, sst, to, this.encoding, seqLen, ackFirst.getSequence(), ackLast.getSequence());
+        return true;
+    }
+
+    /* return the ingest shard key for the current device */
+    private String _getShardKey()
+    {
+        return (this.deviceId != null)? (this.deviceId.getAccountName() + "/" + this.deviceId.getDeviceName()) : null;
+    }
+
+    /* queue an event for persistence by the event pipeline */
+    private void _queueEvent(Event evData)
+    {
+        boolean startWriter = false;
+        synchronized (this.eventQueue) {
+            while (this.eventQueue.size() >= MAX_QUEUED_EVENTS) {
+                // the writer has fallen behind, wait for room in the queue
+                try { this.eventQueue.wait(); } catch (InterruptedException ie) { break; }
+            }
+            this.eventQueue.add(evData);
+            if (!this.eventWriterActive) {
+                this.eventWriterActive = true;
+                startWriter = true;
+            }
+        }
+        if (startWriter) {
+            // at most one writer per session, so events are saved in order
+            Runnable writer = new Runnable() {
+                public void run() {
+                    DMTPClientPacketHandler.this._saveQueuedEvents();
+                }
+            };
+            ShardedExecutor shards = IngestShards;
+            ThreadPool      pool   = EventPersistPool;
+            if (shards != null) {
+                shards.run(this._getShardKey(), writer);
+            } else
+            if (pool != null) {
+                pool.run(writer);
+            } else {
+                writer.run();
+            }
+        }
+    }
+
+    /* save queued events, until the queue is empty (runs in an event pipeline thread) */
+    private void _saveQueuedEvents()
+    {
+        while (true) {
+            Event evData = null;
+            boolean skip = false;
+            synchronized (this.eventQueue) {
+                if (this.eventQueue.isEmpty()) {
+                    this.eventWriterActive = false;
+                    this.eventQueue.notifyAll();
+                    return;
+                }
+                evData = this.eventQueue.get(0);
+                skip = (this.eventErrorPacket != null); // ignore events following an error
+            }
+            int err = ServerErrors.NAK_OK;
+            if (!skip) {
+                try {
+                    err = this._handleEvent(evData);
+                } catch (Throwable th) {
+                    Print.logException("Event insertion", th);
+                    err = ServerErrors.NAK_EVENT_ERROR;
+                }
+            }
+            synchronized (this.eventQueue) {
+                if (!skip) {
+                    this._recordEventResult(evData, err);
+                }
+                this.eventQueue.remove(0);
+                this.eventQueue.notifyAll(); // room in queue
+            }
+        }
+    }
+
+    /* wait for all queued events to be saved */
+    private void _awaitQueuedEvents()
+    {
+        synchronized (this.eventQueue) {
+            while (this.eventWriterActive) {
+                try { this.eventQueue.wait(); } catch (InterruptedException ie) { break; }
+            }
+        }
+    }
    
     // ------------------------------------------------------------------------
 
@@ -607,45 +1406,27 @@ public class DMTPClientPacketHandler
                 throw ppe;
             }
             
-            /* check for errors */
+            /* save event */
+            if ((IngestShards != null) || (EventPersistPool != null)) {
+                // queue for persistence, and continue reading
+                this._queueEvent(evData);
+            } else
             if (this.eventErrorPacket == null) {
                 // no errors received during this block, so far
-                int err = this._handleEvent(evData);
-                if (err == ServerErrors.NAK_OK) {
-                    // this event insertion was successful
-                    this.lastValidEvent = evData;
-                } else
-                if (err == ServerErrors.NAK_DUPLICATE_EVENT) {
-                    // this record already exists (not a critical error)
-                    // duplicate events are quietly ignored
-                    this.lastValidEvent = evData;
-                } else {
-                    // A critical error occurred inserting this event. 
-                    // One of the following:
-                    //    ServerErrors.NAK_EXCESSIVE_EVENTS
-                    //    ServerErrors.NAK_EVENT_ERROR
-                    Print.logError("Event insertion [" + StringTools.toHexString(err,16) + "] " + ServerErrors.getErrorDescription(err));
-                    long seq    = evData.getSequence();
-                    int  seqLen = evData.getSequenceLength();
-                    PacketParseException ppe = null;
-                    if ((seq >= 0L) && (seqLen > 0)) {
-                        Payload p = new Payload();
-                        p.writeULong(seq, seqLen);
-                        byte errData[] = p.getBytes();
-                        ppe = new PacketParseException(err, packet, errData); // sequence
-                    } else {
-                        ppe = new PacketParseException(err, packet); // errData ok
-                    }
-                    this.eventErrorPacket = ppe.createServerErrorPacket();
-                }
-                
+                this._recordEventResult(evData, this._handleEvent(evData));
             } else {
                 // ignore this event
             }
             
-            return null;
+            /* cumulative ACK, if the client's ACK window has been reached */
+            Packet ackPkt = this._createWindowAck();
+            return (ackPkt != null)? new Packet[] { ackPkt } : null;
         }
 
+        /* wait for queued events before handling any other packet type */
+        // (the end-of-block acknowledges only events which have been saved)
+        this._awaitQueuedEvents();
+
         /* handle specific packet type */
         Payload payload = packet.getPayload(true);
         switch (packet.getPacketType()) {
@@ -672,7 +1453,10 @@ public class DMTPClientPacketHandler
                     }
                 }
                 this.fletcher.reset();
+                boolean blockError = (this.eventErrorPacket != null);
                 // acknowledge sent events
+                Event ackFirst = this.firstValidEvent;
+                Event ackLast  = this.lastValidEvent;
                 if (this.lastValidEvent != null) {
                     // at least 1 event has been received
                     Packet ackPkt = Packet.createServerPacket(Packet.PKT_SERVER_ACK);
@@ -682,8 +1466,11 @@ public class DMTPClientPacketHandler
                         ackPkt.getPayload(true).writeLong(seq, seqLen);
                     }
                     resp.add(ackPkt);
+                    this.ackWindowCount  = 0;
+                    this.ackWindowTime   = DateTime.getCurrentTimeMillis();
                     this.eventBlockCount = 0;
                     this.lastValidEvent  = null;
+                    this.firstValidEvent = null;
                 }
                 // send any event parsing error packet
                 if (this.eventErrorPacket != null) {
@@ -720,11 +1507,24 @@ public class DMTPClientPacketHandler
                         // (this section will be exectued at-most once per session, and only if duplex)
                         this.expectEventTemplate = false; 
                     }
+                } else
+                if (this._keepSessionOpen(blockError)) {
+                    // persistent session, the client may speak whenever it has something to say
+                    Packet sfPkt = Packet.createServerPacket(Packet.PKT_SERVER_EOB_SPEAK_FREELY);
+                    resp.add(sfPkt);
+                    this.speakFreely = true;
                 } else {
+                    Packet tokenPkt = this._createResumeTokenPacket();
+                    if (tokenPkt != null) {
+                        resp.add(tokenPkt);
+                    }
                     Packet eotPkt = Packet.createServerPacket(Packet.PKT_SERVER_EOT);
                     resp.add(eotPkt);
                     this._setTerminateSession(); // success
                     // we're done communicating with this client
+                    if (this._coalesceAck(resp, ackFirst, ackLast)) {
+                        return null; // ACK held by the coalescer
+                    }
                 }
                 return (Packet[])ListTools.toArray(resp, Packet.class);
             }
@@ -736,7 +1536,9 @@ public class DMTPClientPacketHandler
                     // typically this should be 6 bytes, but we attempt to read 20 in case
                     // the client wishes to provide additional information.
                     byte uniqId[] = payload.readBytes(20);
-                    this.loadUniqueID(ipAddr, uniqId);
+                    if (!this._isResumedIdentity("u:" + StringTools.toHexString(uniqId))) {
+                        this.loadUniqueID(ipAddr, uniqId);
+                    }
                 } catch (PacketParseException ppe) {
                     ppe.setTerminate();
                     throw ppe;
@@ -749,7 +1551,9 @@ public class DMTPClientPacketHandler
                 // lookup account
                 try {
                     String acctName = payload.readString(20);
-                    this.loadAccountId(ipAddr, acctName);
+                    if (!this._isResumedIdentity("a:" + acctName)) {
+                        this.loadAccountId(ipAddr, acctName);
+                    }
                 } catch (PacketParseException ppe) {
                     ppe.setTerminate();
                     throw ppe;
@@ -762,6 +1566,9 @@ public class DMTPClientPacketHandler
                 // lookup device
                 try {
                     String devName = payload.readString(20);
+                    if (this._isResumedIdentity("d:" + devName)) {
+                        // already identified
+                    } else
                     if (this.accountId != null) {
                         // normal Account/Device name lookup
                         this.loadDeviceId(ipAddr, devName);
@@ -776,10 +1583,28 @@ public class DMTPClientPacketHandler
                 break;
             }
 
+            /* client sent resume token */
+            case Packet.PKT_CLIENT_RESUME_TOKEN: {
+                // bind cached account/device
+                try {
+                    byte token[] = payload.readBytes(16);
+                    if (!this._isResumedIdentity("t:" + StringTools.toHexString(token))) {
+                        this.loadResumeToken(ipAddr, token);
+                    }
+                } catch (PacketParseException ppe) {
+                    ppe.setTerminate();
+                    throw ppe;
+                }
+                break;
+            }
+
             /* client sent property value */
             case Packet.PKT_CLIENT_PROPERTY_VALUE: {
                 int  propKey   = (int)payload.readULong(2);
                 byte propVal[] = payload.readBytes(255);
+                if (propKey == PropCodes.PROP_COMM_ACK_WINDOW) {
+                    this._setAckWindow(propVal);
+                }
                 // save property value sent by client, for later analysis
                 this.getDeviceId().handleProperty(propKey, propVal);
                 break;
@@ -855,10 +1680,54 @@ public class DMTPClientPacketHandler
     
     // ------------------------------------------------------------------------
 
+    /* inflate and handle the packets in a compressed block container */
+    private Packet[] _parseCompressedBlock(String ipAddr, byte block[])
+    {
+        java.util.List<Packet> resp = new Vector<Packet>();
+        if ((this.encoding == Encoding.ENCODING_UNKNOWN) && (block[0] != Encoding.AsciiEncodingChar)) {
+            // respond to a binary container in binary, until the contained packets establish the encoding
+            this.encoding = Encoding.ENCODING_BINARY;
+        }
+        try {
+            byte data[] = Packet.inflateCompressedBlock(block, MAX_INFLATED_LENGTH);
+            Print.logDebug("Compressed block: " + block.length + " ==> " + data.length + " bytes");
+            int ofs = 0;
+            while ((ofs < data.length) && !this.terminateSession()) {
+                if ((data[ofs] == '\r') || (data[ofs] == '\n')) {
+                    // skip line terminators between packets
+                    ofs++;
+                    continue;
+                }
+                int len = Packet.getPacketLength(data, ofs);
+                if ((len <= 0) || Packet.isCompressedBlock(data, ofs, data.length)) {
+                    // truncated (or nested container)
+                    Packet cause = new Packet(null, true, Packet.HEADER_BASIC, Packet.PKT_CLIENT_COMPRESSED_BLOCK);
+                    throw new PacketParseException(ServerErrors.NAK_PACKET_LENGTH, cause); // errData ok
+                }
+                byte pkt[] = new byte[len];
+                System.arraycopy(data, ofs, pkt, 0, len);
+                ofs += len;
+                Packet p[] = this._parsePacket(ipAddr, pkt);
+                if (p != null) {
+                    ListTools.toList(p, resp);
+                }
+            }
+        } catch (PacketParseException ppe) {
+            Print.logError("Invalid compressed block: " + ServerErrors.getErrorDescription(ppe.getErrorCode()));
+            resp.add(ppe.createServerErrorPacket());
+        }
+        return !resp.isEmpty()? ListTools.toArray(resp, Packet.class) : null;
+    }
+
     private Packet[] _parsePacket(String ipAddr, byte pkt[])
     {
         // 'pkt' always represents a single packet
         
+        /* compressed block container */
+        if ((CompressedBlockMaxLength > 0) && Packet.isCompressedBlock(pkt, 0, pkt.length)) {
+            return this._parseCompressedBlock(ipAddr, pkt);
+        }
+        
         /* Running Fletcher checksum */
         this.fletcher.runningChecksum(pkt);
 
@@ -903,6 +1772,7 @@ public class DMTPClientPacketHandler
             /* terminate? */
             if (ppe.terminateSession()) {
                 this._setTerminateSession(); // error
+                this.identError = true; // do not cache this session
             }
 
             /* avoid duplicate NAK_FORMAT_NOT_RECOGNIZED error codes */
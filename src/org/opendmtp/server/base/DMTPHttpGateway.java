@@ -0,0 +1,301 @@
+// ----------------------------------------------------------------------------
+// Copyright 2006-2010, GeoTelematic Solutions, Inc.
+// All rights reserved
+// ----------------------------------------------------------------------------
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+// http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+//
+// ----------------------------------------------------------------------------
+// Change History:
+//  2026/10/17
+//     -Initial release
+// ----------------------------------------------------------------------------
+package org.opendmtp.server.base;
+
+import java.lang.*;
+import java.util.*;
+import java.util.concurrent.*;
+import java.io.*;
+import java.net.*;
+
+import com.sun.net.httpserver.*;
+
+import org.opengts.util.*;
+
+import org.opendmtp.codes.*;
+
+/**
+*** DMTP-over-HTTP ingest gateway.<br>
+*** Each HTTP POST carries a complete client session: any number of concatenated
+*** DMTP packets (binary, and/or '$' ASCII lines terminated by CR/LF), typically the
+*** identification packets, a backlog of events, and an end-of-block.  The packets
+*** are handled by a <code>DMTPClientPacketHandler</code> exactly as for a Duplex
+*** connection, and all response packets are returned in the HTTP response body.
+**/
+
+public class DMTPHttpGateway
+{
+
+    // ------------------------------------------------------------------------
+
+    public  static final String DFT_CONTEXT_PATH        = "/dmtp";
+    public  static final int    DFT_THREADS             = 4;
+    public  static final int    DFT_MAX_BODY_LENGTH     = 1024 * 1024;
+
+    private static final int    MAX_ASCII_LINE_LENGTH   = 600;
+    private static final int    MAX_ASCII_BLOCK_LENGTH  = 6 + ((0xFFFF + 2) / 3) * 4 + 3; // Base64 compressed block
+
+    // ------------------------------------------------------------------------
+
+    private int                 port            = 0;
+    private String              contextPath     = DFT_CONTEXT_PATH;
+    private int                 threadCount     = DFT_THREADS;
+    private int                 maxBodyLength   = DFT_MAX_BODY_LENGTH;
+    private IPRateLimiter       rateLimiter     = null;
+
+    private HttpServer          httpServer      = null;
+    private ExecutorService     executor        = null;
+
+    /**
+    *** Constructor
+    *** @param port           The HTTP listen port
+    *** @param threadCount    The number of request handling threads
+    *** @param maxBodyLength  The maximum accepted request body length
+    **/
+    public DMTPHttpGateway(int port, int threadCount, int maxBodyLength)
+    {
+        this.port          = port;
+        this.threadCount   = (threadCount   > 0)? threadCount   : DFT_THREADS;
+        this.maxBodyLength = (maxBodyLength > 0)? maxBodyLength : DFT_MAX_BODY_LENGTH;
+    }
+
+    // ------------------------------------------------------------------------
+
+    /**
+    *** Sets the request context path (default "/dmtp")
+    *** @param path  The context path
+    **/
+    public void setContextPath(String path)
+    {
+        this.contextPath = StringTools.isBlank(path)? DFT_CONTEXT_PATH : path;
+    }
+
+    /**
+    *** Sets the per source address rate limiter (requests exceeding their rate
+    *** receive "429 Too Many Requests")
+    *** @param rl  The rate limiter (null for no rate limit)
+    **/
+    public void setRateLimiter(IPRateLimiter rl)
+    {
+        this.rateLimiter = rl;
+    }
+
+    /**
+    *** Gets the HTTP listen port
+    *** @return The HTTP listen port
+    **/
+    public int getPort()
+    {
+        return (this.httpServer != null)? this.httpServer.getAddress().getPort() : this.port;
+    }
+
+    // ------------------------------------------------------------------------
+
+    /**
+    *** Starts the HTTP listener
+    *** @throws IOException if the listen port cannot be bound
+    **/
+    public synchronized void start()
+        throws IOException
+    {
+        if (this.httpServer == null) {
+            this.httpServer = HttpServer.create(new InetSocketAddress(this.port), 0);
+            this.httpServer.createContext(this.contextPath, new HttpHandler() {
+                public void handle(HttpExchange exchange) throws IOException {
+                    DMTPHttpGateway.this._handle(exchange);
+                }
+            });
+            this.executor = Executors.newFixedThreadPool(this.threadCount);
+            this.httpServer.setExecutor(this.executor);
+            this.httpServer.start();
+            Print.logInfo("DMTP: Starting HTTP gateway on port " + this.getPort() + " [path=" + this.contextPath + ", threads=" + this.threadCount + "] ...");
+        }
+    }
+
+    /**
+    *** Stops the HTTP listener
+    **/
+    public synchronized void stop()
+    {
+        if (this.httpServer != null) {
+            Print.logInfo("DMTP: Stopping HTTP gateway on port " + this.getPort());
+            this.httpServer.stop(0);
+            this.executor.shutdown();
+            this.httpServer = null;
+            this.executor   = null;
+        }
+    }
+
+    // ------------------------------------------------------------------------
+
+    /* handle HTTP request */
+    private void _handle(HttpExchange exchange)
+        throws IOException
+    {
+        try {
+
+            /* POST only */
+            if (!exchange.getRequestMethod().equalsIgnoreCase("POST")) {
+                exchange.getResponseHeaders().set("Allow", "POST");
+                this._sendResponse(exchange, 405, null, null);
+                return;
+            }
+
+            /* rate limit */
+            InetAddress ipAddr = exchange.getRemoteAddress().getAddress();
+            if ((this.rateLimiter != null) && !this.rateLimiter.tryAcquire(ipAddr)) {
+                this._sendResponse(exchange, 429, null, null);
+                return;
+            }
+
+            /* read request body */
+            byte body[] = this._readBody(exchange.getRequestBody());
+            if (body == null) {
+                Print.logWarn("HTTP request body exceeds maximum length: " + ipAddr);
+                this._sendResponse(exchange, 413, null, null);
+                return;
+            }
+
+            /* handle packets */
+            byte resp[] = this._handlePackets(ipAddr, body);
+            boolean isAscii = (resp.length > 0) && (resp[0] == Encoding.AsciiEncodingChar);
+            this._sendResponse(exchange, 200, (isAscii? "text/plain" : "application/octet-stream"), resp);
+
+        } catch (Throwable t) {
+            Print.logException("HTTP gateway error", t);
+            this._sendResponse(exchange, 500, null, null);
+        } finally {
+            exchange.close();
+        }
+    }
+
+    /* read the request body (returns null if the maximum length is exceeded) */
+    private byte[] _readBody(InputStream input)
+        throws IOException
+    {
+        ByteArrayOutputStream baos = new ByteArrayOutputStream();
+        byte buf[] = new byte[4096];
+        for (;;) {
+            int n = input.read(buf);
+            if (n < 0) {
+                break;
+            }
+            baos.write(buf, 0, n);
+            if (baos.size() > this.maxBodyLength) {
+                return null;
+            }
+        }
+        return baos.toByteArray();
+    }
+
+    /* send the HTTP response */
+    private void _sendResponse(HttpExchange exchange, int status, String contentType, byte body[])
+        throws IOException
+    {
+        int len = (body != null)? body.length : 0;
+        if (contentType != null) {
+            exchange.getResponseHeaders().set("Content-Type", contentType);
+        }
+        exchange.sendResponseHeaders(status, ((len > 0)? len : -1));
+        if (len > 0) {
+            OutputStream output = exchange.getResponseBody();
+            output.write(body, 0, len);
+            output.flush();
+        }
+    }
+
+    // ------------------------------------------------------------------------
+
+    /* run the packets through a new client session, return the concatenated responses */
+    private byte[] _handlePackets(InetAddress ipAddr, byte body[])
+        throws Exception
+    {
+        DMTPClientPacketHandler handler = new DMTPClientPacketHandler();
+        handler.setBatchSession(true);
+        handler.sessionStarted(ipAddr, true, false); // Duplex
+        ByteArrayOutputStream resp = new ByteArrayOutputStream();
+        Throwable err = null;
+        try {
+            int ofs = 0;
+            while ((ofs < body.length) && !handler.terminateSession()) {
+
+                /* skip line terminators between packets */
+                byte b = body[ofs];
+                if ((b == '\r') || (b == '\n')) {
+                    ofs++;
+                    continue;
+                }
+
+                /* frame packet */
+                int len;
+                int next;
+                if (b == Encoding.AsciiEncodingChar) {
+                    // ASCII: through end of line
+                    int eol = ofs;
+                    while ((eol < body.length) && (body[eol] != '\r') && (body[eol] != '\n')) { eol++; }
+                    len  = eol - ofs;
+                    next = eol;
+                    int maxLen = Packet.isCompressedBlock(body, ofs, body.length)? MAX_ASCII_BLOCK_LENGTH : MAX_ASCII_LINE_LENGTH;
+                    if (len > maxLen) {
+                        throw new IOException("ASCII packet exceeds maximum length [@ " + ofs + "]");
+                    }
+                } else {
+                    // binary: header + payload length
+                    if ((body.length - ofs) < Packet.MIN_HEADER_LENGTH) {
+                        throw new IOException("Truncated packet header [@ " + ofs + "]");
+                    }
+                    if (Packet.isCompressedBlock(body, ofs, body.length)) {
+                        // compressed block: 2 byte length
+                        if ((body.length - ofs) < Packet.COMPRESSED_BLOCK_HEADER_LENGTH) {
+                            throw new IOException("Truncated packet header [@ " + ofs + "]");
+                        }
+                        len  = Packet.COMPRESSED_BLOCK_HEADER_LENGTH + ((((int)body[ofs + 2] & 0xFF) << 8) | ((int)body[ofs + 3] & 0xFF));
+                    } else {
+                        len  = Packet.MIN_HEADER_LENGTH + ((int)body[ofs + 2] & 0xFF);
+                    }
+                    next = ofs + len;
+                    if (next > body.length) {
+                        throw new IOException("Truncated packet [@ " + ofs + "]");
+                    }
+                }
+                byte pkt[] = new byte[len];
+                System.arraycopy(body, ofs, pkt, 0, len);
+                ofs = next;
+
+                /* handle packet */
+                byte r[] = handler.getHandlePacket(pkt);
+                if ((r != null) && (r.length > 0)) {
+                    resp.write(r, 0, r.length);
+                }
+
+            }
+        } catch (Throwable t) {
+            err = t;
+            Print.logWarn("HTTP session error: " + t);
+        } finally {
+            handler.sessionTerminated(err, body.length, resp.size());
+        }
+        return resp.toByteArray();
+    }
+
+}
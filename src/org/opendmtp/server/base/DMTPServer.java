@@ -31,6 +31,15 @@
 //     -Added support for gracefully shutting down the server
 //  2008/05/14  Martin D. Flynn
 //     -Added support allowing/disabling first session custom event packet negotiation
+//  2026/10/17
+//     -Replaced fixed MAX_PORTS listener arrays with a listener registry supporting
+//      runtime add/remove of ports, each with its own ListenerProfile
+//     -Added optional DMTP-over-HTTP ingest gateway (see 'startHttpGateway')
+//     -Added optional connection storm control (see 'setStormControl')
+//     -The source address rate limiter is shared by all listeners (see 'setRateLimit')
+//     -The admission controller is shared by all listeners (see 'setAdmissionLimits')
+//     -The TLS session cache settings are server wide (see 'setTLSSessionCache')
+//     -TCP listener receive buffer sizes are set before binding the listening socket
 // ----------------------------------------------------------------------------
 package org.opendmtp.server.base;
 
@@ -38,10 +47,13 @@ import java.lang.*;
 import java.util.*;
 import java.io.*;
 import java.net.*;
+import java.nio.channels.*;
 import java.sql.*;
+import javax.net.ssl.SSLContext;
 
 import org.opengts.util.*;
 
+import org.opendmtp.codes.*;
 import org.opendmtp.server.db.*;
 
 public class DMTPServer
@@ -50,7 +62,6 @@ public class DMTPServer
     // ------------------------------------------------------------------------
 
     //public static final int DEFAULT_PORT    = 31000;
-    public static final int MAX_PORTS       = 4;
     
     // ------------------------------------------------------------------------
     // DMTPServer is a singleton
@@ -66,11 +77,23 @@ public class DMTPServer
     public static DMTPServer createTrackSocketHandler(int port[])
         throws Throwable
     {
+        return DMTPServer.createTrackSocketHandler(port, null);
+    }
+        
+    public static DMTPServer createTrackSocketHandler(int port[], ListenerProfile profile[])
+        throws Throwable
+    {
+        // 'profile[i]' is used for 'port[i]' (the default profile is used if null)
         if (trackTcpInstance == null) {
-            trackTcpInstance = new DMTPServer(port);
+            trackTcpInstance = new DMTPServer(port, profile);
         }
         return trackTcpInstance;
     }
+    
+    public static DMTPServer getInstance()
+    {
+        return trackTcpInstance;
+    }
 
     // ------------------------------------------------------------------------
 
@@ -86,6 +109,191 @@ public class DMTPServer
     
     // ------------------------------------------------------------------------
 
+    private static int tcpSelectorCount = 0;
+    public static void setTcpSelectorCount(int count)
+    {
+        // '0' indicates that each TCP session is handled by its own thread
+        DMTPServer.tcpSelectorCount = (count > 0)? count : 0;
+    }
+    public static int getTcpSelectorCount()
+    {
+        return DMTPServer.tcpSelectorCount;
+    }
+    
+    private static int udpReceiverCount = 0;
+    public static void setUdpReceiverCount(int count)
+    {
+        // '0' indicates that UDP datagrams are received on a single DatagramSocket
+        DMTPServer.udpReceiverCount = (count > 0)? count : 0;
+    }
+    public static int getUdpReceiverCount()
+    {
+        return DMTPServer.udpReceiverCount;
+    }
+    
+    private static int udpSendQueueSize = 0;
+    public static void setUdpSendQueueSize(int size)
+    {
+        // '0' indicates that UDP responses are sent synchronously by the session
+        DMTPServer.udpSendQueueSize = (size > 0)? size : 0;
+    }
+    public static int getUdpSendQueueSize()
+    {
+        return DMTPServer.udpSendQueueSize;
+    }
+    
+    private static boolean useVirtualThreads = false;
+    public static void setVirtualThreads(boolean state)
+    {
+        // run each TCP/UDP session in its own virtual thread (ignored for non-blocking TCP)
+        DMTPServer.useVirtualThreads = state;
+    }
+    public static boolean getVirtualThreads()
+    {
+        return DMTPServer.useVirtualThreads;
+    }
+    
+    private static int sessionThreadMax = 0;
+    public static void setMaximumSessionThreads(int max)
+    {
+        // '0' indicates that the session thread pool is unbounded
+        DMTPServer.sessionThreadMax = (max > 0)? max : 0;
+    }
+    public static int getMaximumSessionThreads()
+    {
+        return DMTPServer.sessionThreadMax;
+    }
+    
+    private static int sessionPendingMax = 0;
+    public static void setMaximumPendingSessions(int max)
+    {
+        // clients waiting for a session thread when the pool is full (others are closed)
+        DMTPServer.sessionPendingMax = (max > 0)? max : 0;
+    }
+    public static int getMaximumPendingSessions()
+    {
+        return DMTPServer.sessionPendingMax;
+    }
+    
+    private static long sessionThreadIdleTimeout = ServerSocketThread.DFT_IDLE_THREAD_TIMEOUT_MS;
+    public static void setSessionThreadIdleTimeout(long timeout)
+    {
+        // time an unused session thread is retained in the pool
+        DMTPServer.sessionThreadIdleTimeout = timeout;
+    }
+    public static long getSessionThreadIdleTimeout()
+    {
+        return DMTPServer.sessionThreadIdleTimeout;
+    }
+    
+    private static int tlsSessionCacheSize  = 10000;
+    private static int tlsSessionTimeoutSec = 24 * 60 * 60;
+    public static void setTLSSessionCache(int cacheSize, int timeoutSec)
+    {
+        // cached sessions allow reconnecting devices to resume without a full handshake
+        // (server wide, all TLS listeners share the default SSLContext session cache)
+        DMTPServer.tlsSessionCacheSize  = cacheSize;
+        DMTPServer.tlsSessionTimeoutSec = timeoutSec;
+    }
+    
+    // ------------------------------------------------------------------------
+
+    public static ListenerProfile getDefaultProfile()
+    {
+        // a new profile initialized from the current global settings
+        ListenerProfile lp = new ListenerProfile("default");
+        lp.setTcpTimeouts(DMTPServer.tcpTimeout_idle, DMTPServer.tcpTimeout_packet, DMTPServer.tcpTimeout_session);
+        lp.setUdpTimeouts(DMTPServer.udpTimeout_idle, DMTPServer.udpTimeout_packet, DMTPServer.udpTimeout_session);
+        lp.setTcpSelectorCount(DMTPServer.tcpSelectorCount);
+        lp.setUdpReceiverCount(DMTPServer.udpReceiverCount);
+        lp.setUdpSendQueueSize(DMTPServer.udpSendQueueSize);
+        lp.setVirtualThreads(DMTPServer.useVirtualThreads);
+        lp.setSessionThreads(DMTPServer.sessionThreadMax, DMTPServer.sessionPendingMax, DMTPServer.sessionThreadIdleTimeout);
+        return lp;
+    }
+    
+    // ------------------------------------------------------------------------
+
+    private static AdmissionController admissionController = null;
+    public static void setAdmissionLimits(int maxSessions, int maxBacklog, double maxHeapUsage)
+    {
+        // new clients are rejected at accept time when any limit is reached ('0' for no limit)
+        // shared by all listeners, the session/backlog limits apply to the server wide totals
+        if ((maxSessions > 0) || (maxBacklog > 0) || (maxHeapUsage > 0.0)) {
+            DMTPServer.admissionController = new AdmissionController(
+                ((maxSessions  > 0  )? maxSessions  : 0  ), 
+                ((maxBacklog   > 0  )? maxBacklog   : 0  ), 
+                ((maxHeapUsage > 0.0)? maxHeapUsage : 0.0));
+        } else {
+            DMTPServer.admissionController = null;
+        }
+    }
+
+    private static IPRateLimiter rateLimiter = null;
+    public static void setRateLimit(double perMinute, int burst, int buckets)
+    {
+        // per source address connection rate, checked before any session state is created ('0' for no limit)
+        // shared by all listeners (TCP/UDP, all ports) and the HTTP gateway, the limit is server wide
+        if (perMinute > 0.0) {
+            DMTPServer.rateLimiter = new IPRateLimiter(
+                perMinute / 60.0, ((burst > 1)? burst : 1), 
+                ((buckets > 0)? buckets : IPRateLimiter.DFT_WIDTH), IPRateLimiter.DFT_DEPTH);
+        } else {
+            DMTPServer.rateLimiter = null;
+        }
+    }
+
+    private static AcceptStormDetector stormDetector      = null;
+    private static boolean             stormSetFailDelay  = false;
+    public static void setStormControl(int tripPerSec, double admitPerSec, long maxRetryDelaySec, boolean setFailureDelay)
+    {
+        // shared by all TCP listeners, a reconnect storm is server wide ('0' to disable)
+        DMTPServer.stormDetector     = (tripPerSec > 0)? new AcceptStormDetector(tripPerSec, admitPerSec, maxRetryDelaySec) : null;
+        DMTPServer.stormSetFailDelay = setFailureDelay;
+    }
+    public static AcceptStormDetector getStormDetector()
+    {
+        return DMTPServer.stormDetector;
+    }
+
+    /* rejected TCP clients are sent an 'excessive connections' NAK */
+    private static final AdmissionController.RejectHandler RejectHandler = new AdmissionController.RejectHandler() {
+        private byte nakExcessive[] = null;
+        public byte[] getRejectResponse(int reason, InetAddress ipAddr) {
+            AcceptStormDetector sd = DMTPServer.stormDetector;
+            if ((reason == AdmissionController.REJECT_STORM) && (sd != null)) {
+                // staggered retry: the NAK includes the retry delay (seconds), optionally
+                // preceded by setting the client's connection failure delay to the same value
+                long delaySec = sd.getRetryDelay(ipAddr);
+                ByteArrayOutputStream baos = new ByteArrayOutputStream();
+                if (DMTPServer.stormSetFailDelay) {
+                    Packet prop = Packet.createServerSetPropertyPacket(PropCodes.PROP_COMM_FAILURE_DELAY, new long[] { delaySec, delaySec });
+                    if (prop != null) {
+                        byte b[] = prop.encode(Encoding.ENCODING_BINARY);
+                        baos.write(b, 0, b.length);
+                    }
+                }
+                Payload p = new Payload();
+                p.writeULong((long)ServerErrors.NAK_EXCESSIVE_CONNECTIONS, 2);
+                p.writeULong(0L, 1); // header
+                p.writeULong(0L, 1); // type
+                p.writeULong(Math.min(delaySec, 0xFFFFL), 2);
+                Packet nak = Packet.createServerPacket(Packet.PKT_SERVER_ERROR, p);
+                byte b[] = nak.encode(Encoding.ENCODING_BINARY);
+                baos.write(b, 0, b.length);
+                return baos.toByteArray();
+            }
+            if (this.nakExcessive == null) {
+                // client encoding is not yet known, binary is always supported
+                Packet nak = Packet.createServerErrorPacket(ServerErrors.NAK_EXCESSIVE_CONNECTIONS, null);
+                this.nakExcessive = nak.encode(Encoding.ENCODING_BINARY);
+            }
+            return this.nakExcessive;
+        }
+    };
+
+    // ------------------------------------------------------------------------
+
     private static long tcpTimeout_idle     = 10000L;
     public static void setTcpIdleTimeout(long timeout)
     {
@@ -150,25 +358,40 @@ public class DMTPServer
 
     // ------------------------------------------------------------------------
 
+    private static DMTPHttpGateway httpGateway = null;
+    public static synchronized void startHttpGateway(int port, int threads, int maxBodyLength)
+        throws IOException
+    {
+        // batched packet ingest over HTTP POST (source address rate limit applies per request)
+        if ((DMTPServer.httpGateway == null) && (port > 0)) {
+            DMTPHttpGateway gw = new DMTPHttpGateway(port, threads, maxBodyLength);
+            gw.setRateLimiter(DMTPServer.rateLimiter);
+            gw.start();
+            DMTPServer.httpGateway = gw;
+        }
+    }
+
+    // ------------------------------------------------------------------------
+
     public static void shutdown() 
     {
-    	if (trackTcpInstance != null) {
-    		try {
-	    		for (int i = 0; i < trackTcpInstance.tcpThread.length; i++) {
-	    			if (trackTcpInstance.tcpThread[i] != null) {
-	    				trackTcpInstance.tcpThread[i].shutdown();
-	    			}
-	    		}
-	    		for (int i = 0; i < trackTcpInstance.udpThread.length; i++) {
-	    			if (trackTcpInstance.udpThread[i] != null) {
-	    				trackTcpInstance.udpThread[i].shutdown();
-	    			}
-	    		}
-    		} catch (Throwable e) {
-    			Print.logException("Error shutting down server", e);
-    		}
-	    	trackTcpInstance = null;
-    	}
+        synchronized (DMTPServer.class) {
+            if (DMTPServer.httpGateway != null) {
+                DMTPServer.httpGateway.stop();
+                DMTPServer.httpGateway = null;
+            }
+        }
+        if (trackTcpInstance != null) {
+            try {
+                int port[] = trackTcpInstance.getListenerPorts();
+                for (int i = 0; i < port.length; i++) {
+                    trackTcpInstance.removeListener(port[i]);
+                }
+            } catch (Throwable e) {
+                Print.logException("Error shutting down server", e);
+            }
+            trackTcpInstance = null;
+        }
     }
 
     // ------------------------------------------------------------------------
@@ -196,20 +419,35 @@ public class DMTPServer
     // ------------------------------------------------------------------------
     // ------------------------------------------------------------------------
 
-    private ServerSocketThread tcpThread[] = new ServerSocketThread[MAX_PORTS];
-    private int                tcpCount    = 0;
+    /* TCP/UDP listeners on a single port */
+    private static class Listener
+    {
+        private ListenerProfile    profile = null;
+        private ServerSocketThread tcp     = null;
+        private ServerSocketThread udp     = null;
+        public Listener(ListenerProfile profile) {
+            this.profile = profile;
+        }
+        public void shutdown() {
+            if ((this.tcp != null) && (this.tcp.getTLSStats() != null)) {
+                Print.logInfo("DMTP: TLS handshakes on port " + this.tcp.getLocalPort() + ": " + this.tcp.getTLSStats());
+            }
+            if (this.tcp != null) { this.tcp.shutdown(); }
+            if (this.udp != null) { this.udp.shutdown(); }
+        }
+    }
 
-    private ServerSocketThread udpThread[] = new ServerSocketThread[MAX_PORTS];
-    private int                udpCount    = 0;
+    private Map<Integer,Listener> listeners = new OrderedMap<Integer,Listener>();
 
     // ------------------------------------------------------------------------
 
-    private DMTPServer(int port[])
+    private DMTPServer(int port[], ListenerProfile profile[])
         throws Throwable
     {
         if ((port != null) && (port.length > 0)) {
             for (int i = 0; i < port.length; i++) {
-                this.startPortListeners(port[i]);
+                ListenerProfile lp = ((profile != null) && (i < profile.length))? profile[i] : null;
+                this.addListener(port[i], lp);
             }
         } else {
             throw new Exception("No ports specified");
@@ -218,30 +456,144 @@ public class DMTPServer
 
     // ------------------------------------------------------------------------
 
-    private void startPortListeners(int port)
+    /**
+    *** Starts TCP and UDP listeners on the specified port
+    *** @param port     The port
+    *** @param profile  The listener tuning profile (null for the default profile)
+    **/
+    public void addListener(int port, ListenerProfile profile)
         throws Throwable
     {
-        if ((port > 0) && (port <= 65535)) {
-            this.startTCP(port);
-            this.startUDP(port);
-        } else {
+        if ((port <= 0) || (port > 65535)) {
             throw new Exception("Invalid port number: " + port);
         }
+        ListenerProfile lp = (profile != null)? profile : DMTPServer.getDefaultProfile();
+        synchronized (this.listeners) {
+            Integer key = new Integer(port);
+            if (this.listeners.containsKey(key)) {
+                throw new Exception("Port is already in use: " + port);
+            }
+            Listener listener = new Listener(lp);
+            try {
+                listener.tcp = this.startTCP(port, lp);
+                if (!lp.isTLS()) {
+                    listener.udp = this.startUDP(port, lp);
+                }
+            } catch (Throwable t) {
+                listener.shutdown();
+                throw t;
+            }
+            this.listeners.put(key, listener);
+        }
+    }
+
+    /**
+    *** Stops the TCP and UDP listeners on the specified port.  Sessions in progress
+    *** on the port are closed.
+    *** @param port  The port
+    *** @return True if listeners were found on the port
+    **/
+    public boolean removeListener(int port)
+    {
+        Listener listener;
+        synchronized (this.listeners) {
+            listener = this.listeners.remove(new Integer(port));
+        }
+        if (listener != null) {
+            Print.logInfo("DMTP: Stopping listeners on port " + port);
+            listener.shutdown();
+            return true;
+        } else {
+            return false;
+        }
     }
 
-    private void startTCP(int port)
+    /**
+    *** Gets the ports on which listeners are running
+    *** @return The listener ports
+    **/
+    public int[] getListenerPorts()
+    {
+        synchronized (this.listeners) {
+            int port[] = new int[this.listeners.size()];
+            int n = 0;
+            for (Iterator<Integer> i = this.listeners.keySet().iterator(); i.hasNext();) {
+                port[n++] = i.next().intValue();
+            }
+            return port;
+        }
+    }
+
+    /**
+    *** Gets the tuning profile of the listeners on the specified port
+    *** @param port  The port
+    *** @return The profile, or null if there are no listeners on the port
+    **/
+    public ListenerProfile getListenerProfile(int port)
+    {
+        synchronized (this.listeners) {
+            Listener listener = this.listeners.get(new Integer(port));
+            return (listener != null)? listener.profile : null;
+        }
+    }
+
+    /**
+    *** Gets the UDP listener on the specified port
+    *** @param port  The port
+    *** @return The UDP listener, or null if there is no UDP listener on the port
+    **/
+    public ServerSocketThread getUdpListener(int port)
+    {
+        synchronized (this.listeners) {
+            Listener listener = this.listeners.get(new Integer(port));
+            return (listener != null)? listener.udp : null;
+        }
+    }
+
+    /**
+    *** Gets the TLS handshake counters (full vs. resumed) of the listener on the specified port
+    *** @param port  The port
+    *** @return The TLS handshake counters, or null if the port does not have a 
+    ***         non-blocking TLS listener
+    **/
+    public TLSChannel.Stats getTLSStats(int port)
+    {
+        synchronized (this.listeners) {
+            Listener listener = this.listeners.get(new Integer(port));
+            return ((listener != null) && (listener.tcp != null))? listener.tcp.getTLSStats() : null;
+        }
+    }
+
+    // ------------------------------------------------------------------------
+
+    private ServerSocketThread startTCP(int port, ListenerProfile lp)
         throws Throwable
     {
         ServerSocketThread sst = null;
-        
-        /* too many ports? */
-        if (this.tcpCount >= this.tcpThread.length) {
-            throw new Exception("Too many TCP connection listeners");
-        }
-        
+
         /* create server socket */
         try {
-            sst = new ServerSocketThread(port);
+            if (lp.isTLS()) {
+                // keystore is specified with "javax.net.ssl.keyStore"/"javax.net.ssl.keyStorePassword"
+                SSLContext sslContext = SSLContext.getDefault();
+                TLSChannel.setSessionCache(sslContext, DMTPServer.tlsSessionCacheSize, DMTPServer.tlsSessionTimeoutSec);
+                if (lp.getTcpSelectorCount() > 0) {
+                    // non-blocking TLS sessions (SSLEngine)
+                    ServerSocketChannel ssc = ServerSocketThread.createServerSocketChannel(null, port, lp.getReceiveBufferSize());
+                    sst = new ServerSocketThread(ssc, lp.getTcpSelectorCount(), sslContext);
+                } else {
+                    // thread per session (SSLServerSocket)
+                    sst = new ServerSocketThread(ServerSocketThread.createServerSocket(null, port, lp.getReceiveBufferSize(), true));
+                }
+            } else
+            if (lp.getTcpSelectorCount() > 0) {
+                // non-blocking sessions
+                ServerSocketChannel ssc = ServerSocketThread.createServerSocketChannel(null, port, lp.getReceiveBufferSize());
+                sst = new ServerSocketThread(ssc, lp.getTcpSelectorCount());
+            } else {
+                // thread per session
+                sst = new ServerSocketThread(ServerSocketThread.createServerSocket(null, port, lp.getReceiveBufferSize(), false));
+            }
         } catch (Throwable t) { // trap any server exception
             Print.logException("ServerSocket error", t);
             throw t;
@@ -251,35 +603,53 @@ public class DMTPServer
         sst.setTextPackets(false);
         sst.setBackspaceChar(null); // no backspaces allowed
         sst.setLineTerminatorChar(new int[] { '\r' });
-        sst.setMaximumPacketLength(600);
+        sst.setMaximumPacketLength(lp.getMaximumPacketLength());
         sst.setMinimumPacketLength(Packet.MIN_HEADER_LENGTH);
-        sst.setIdleTimeout(DMTPServer.tcpTimeout_idle);         // time between packets
-        sst.setPacketTimeout(DMTPServer.tcpTimeout_packet);     // time from start of packet to packet completion
-        sst.setSessionTimeout(DMTPServer.tcpTimeout_session);   // time for entire session
-        sst.setLingerTimeoutSec(5);
+        sst.setIdleTimeout(lp.getTcpIdleTimeout());         // time between packets
+        sst.setPacketTimeout(lp.getTcpPacketTimeout());     // time from start of packet to packet completion
+        sst.setSessionTimeout(lp.getTcpSessionTimeout());   // time for entire session
+        sst.setLingerTimeoutSec(lp.getLingerTimeoutSec());
+        sst.setCloseDelay(lp.getCloseDelay());
+        sst.setSocketBufferSizes(lp.getReceiveBufferSize(), lp.getSendBufferSize());
+        sst.setSocketOptions(lp.getTcpNoDelay(), lp.getKeepAlive());
         sst.setTerminateOnTimeout(true);
+        sst.setVirtualThreads(lp.getVirtualThreads());
+        sst.setMaximumSessionThreads(lp.getMaximumSessionThreads());
+        sst.setMaximumPendingClients(lp.getMaximumPendingSessions());
+        sst.setIdleThreadTimeout(lp.getSessionThreadIdleTimeout());
+        sst.setRateLimiter(DMTPServer.rateLimiter);
+        sst.setAdmissionController(DMTPServer.admissionController);
+        sst.setRejectHandler(DMTPServer.RejectHandler);
+        sst.setStormDetector(DMTPServer.stormDetector);
         sst.setClientPacketHandlerClass(DMTPClientPacketHandler.class);
 
         /* start thread */
-        Print.logInfo("DMTP: Starting TCP listener thread on port " + port + " [timeout=" + sst.getSessionTimeout() + "ms] ...");
+        Print.logInfo("DMTP: Starting " + (lp.isTLS()?"TLS":"TCP") + " listener thread on port " + port + " [timeout=" + sst.getSessionTimeout() + "ms, selectors=" + lp.getTcpSelectorCount() + ", profile=" + lp.getName() + "] ...");
         sst.start();
-        this.tcpThread[this.tcpCount++] = sst;
+        return sst;
 
     }
 
-    private void startUDP(int port)
+    private ServerSocketThread startUDP(int port, ListenerProfile lp)
         throws Throwable
     {
         ServerSocketThread sst = null;
-        
-        /* too many ports? */
-        if (this.udpCount >= this.udpThread.length) {
-            throw new Exception("Too many UDP connection listeners");
-        }
 
         /* create server socket */
         try {
-            sst = new ServerSocketThread(new DatagramSocket(port));
+            if (lp.getUdpReceiverCount() > 0) {
+                // multiple receivers (SO_REUSEPORT)
+                DatagramChannel dcs[] = ServerSocketThread.createDatagramChannels(null, port, lp.getUdpReceiverCount());
+                for (int i = 0; i < dcs.length; i++) {
+                    DMTPServer.setDatagramBufferSizes(dcs[i].socket(), lp);
+                }
+                sst = new ServerSocketThread(dcs, lp.getUdpReceiverCount());
+            } else {
+                // single receiver
+                DatagramSocket ds = new DatagramSocket(port);
+                DMTPServer.setDatagramBufferSizes(ds, lp);
+                sst = new ServerSocketThread(ds);
+            }
         } catch (Throwable t) { // trap any server exception
             Print.logException("ServerSocket error", t);
             throw t;
@@ -289,22 +659,40 @@ public class DMTPServer
         sst.setTextPackets(false);
         sst.setBackspaceChar(null); // no backspaces allowed
         sst.setLineTerminatorChar(new int[] { '\r' });
-        sst.setMaximumPacketLength(600);
+        sst.setMaximumPacketLength(lp.getMaximumPacketLength());
         sst.setMinimumPacketLength(Packet.MIN_HEADER_LENGTH);
-        sst.setIdleTimeout(DMTPServer.udpTimeout_idle);
-        sst.setPacketTimeout(DMTPServer.udpTimeout_packet);
-        sst.setSessionTimeout(DMTPServer.udpTimeout_session);
+        sst.setIdleTimeout(lp.getUdpIdleTimeout());
+        sst.setPacketTimeout(lp.getUdpPacketTimeout());
+        sst.setSessionTimeout(lp.getUdpSessionTimeout());
         sst.setTerminateOnTimeout(true);
+        sst.setVirtualThreads(lp.getVirtualThreads());
+        sst.setMaximumSessionThreads(lp.getMaximumSessionThreads());
+        sst.setMaximumPendingClients(lp.getMaximumPendingSessions());
+        sst.setIdleThreadTimeout(lp.getSessionThreadIdleTimeout());
+        sst.setDatagramSendQueueSize(lp.getUdpSendQueueSize());
+        sst.setRateLimiter(DMTPServer.rateLimiter);
+        sst.setAdmissionController(DMTPServer.admissionController);
         
         /* session timeout */
         // This should be AccountID dependent
         sst.setClientPacketHandlerClass(DMTPClientPacketHandler.class);
 
         /* start thread */
-        Print.logInfo("DMTP: Starting UDP listener thread on port " + port + " [timeout=" + sst.getSessionTimeout() + "ms] ...");
+        Print.logInfo("DMTP: Starting UDP listener thread on port " + port + " [timeout=" + sst.getSessionTimeout() + "ms, receivers=" + lp.getUdpReceiverCount() + ", profile=" + lp.getName() + "] ...");
         sst.start();
-        this.udpThread[this.udpCount++] = sst;
+        return sst;
+
+    }
 
+    private static void setDatagramBufferSizes(DatagramSocket ds, ListenerProfile lp)
+        throws SocketException
+    {
+        if (lp.getReceiveBufferSize() > 0) {
+            ds.setReceiveBufferSize(lp.getReceiveBufferSize());
+        }
+        if (lp.getSendBufferSize() > 0) {
+            ds.setSendBufferSize(lp.getSendBufferSize());
+        }
     }
 
     // ------------------------------------------------------------------------
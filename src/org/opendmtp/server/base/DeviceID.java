@@ -30,6 +30,8 @@
 //     -'getPendingPackets' now returns a 'PacketList' object
 //  2008/01/10  Martin D. Flynn
 //     -Added 'saveSessionStatistics' method for recording device connection information.
+//  2026/10/17
+//     -Added learned latency profile
 // ----------------------------------------------------------------------------
 package org.opendmtp.server.base;
 
@@ -64,6 +66,7 @@ public class DeviceID
     //      - Duplex connection profile mask
     //      - Max duplex connections per unit time
     //      - Max duplex connections per minute (0..3)
+    //      - Latency profile
     // - DeviceIDErrors (logged errors)
     //      - AccountID name [key]
     //      - DeviceID name [key]
@@ -81,6 +84,7 @@ public class DeviceID
     private DeviceDB            db = null;
     private AccountID           accountId = null;
     private ValidateConnection  connectionValidator = null;
+    private LatencyProfile      latencyProfile = null;
  
     // ------------------------------------------------------------------------
     
@@ -276,6 +280,24 @@ public class DeviceID
         
     }
 
+    // ------------------------------------------------------------------------
+    // Latency profile
+
+    public LatencyProfile getLatencyProfile()
+    {
+        if (this.latencyProfile == null) {
+            this.latencyProfile = new LatencyProfile(this.db.getLatencyProfile());
+        }
+        return this.latencyProfile;
+    }
+    
+    public void saveLatencyProfile()
+    {
+        if ((this.latencyProfile != null) && this.latencyProfile.hasChanged()) {
+            this.db.setLatencyProfile(this.latencyProfile.encode());
+        }
+    }
+
     // ------------------------------------------------------------------------
     // Encoding
 
@@ -0,0 +1,254 @@
+// ----------------------------------------------------------------------------
+// Copyright 2006-2010, GeoTelematic Solutions, Inc.
+// All rights reserved
+// ----------------------------------------------------------------------------
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+// http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+//
+// ----------------------------------------------------------------------------
+// Change History:
+//  2026/10/17
+//     -Initial release
+// ----------------------------------------------------------------------------
+package org.opendmtp.server.base;
+
+import java.lang.*;
+import java.util.*;
+
+import org.opengts.util.*;
+
+/**
+*** Learned inter-packet latency of a device.<br>
+*** Two smoothed (EWMA) estimates are kept, each with a mean deviation, in the same
+*** manner as a TCP retransmission timer: the gap between consecutive client packets
+*** within a block, and the delay between a server response and the next client
+*** packet (round trip).  Timeouts derived from these are "mean + 4 deviations".
+*** Each estimate keeps its own sample count, and is only used once it has observed
+*** the minimum number of samples.
+*** The profile is persisted with the device record as a small byte array.
+**/
+
+public class LatencyProfile
+{
+
+    // ------------------------------------------------------------------------
+
+    private static final int    VERSION                 = 2;
+    private static final int    ENCODED_LENGTH          = 1 + (2 * 2) + (4 * 4);
+
+    /* number of samples required before an estimate is used */
+    public  static final int    MIN_SAMPLES             = 4;
+
+    /* deviation multiplier */
+    private static final int    DEVIATION_K             = 4;
+
+    // ------------------------------------------------------------------------
+
+    private int     gapCount        = 0;    // packet gap (within a block), saturates at 0xFFFF
+    private long    gapMeanMS       = 0L;
+    private long    gapDevMS        = 0L;
+
+    private int     rttCount        = 0;    // response round trip, saturates at 0xFFFF
+    private long    rttMeanMS       = 0L;
+    private long    rttDevMS        = 0L;
+
+    private boolean changed         = false;
+
+    /**
+    *** Constructor
+    **/
+    public LatencyProfile()
+    {
+        super();
+    }
+
+    /**
+    *** Constructor
+    *** @param profile  A profile previously returned by <code>encode()</code> (may be null/empty).
+    ***                 A profile of a prior version is discarded and relearned.
+    **/
+    public LatencyProfile(byte profile[])
+    {
+        this();
+        if ((profile != null) && (profile.length >= ENCODED_LENGTH) && ((profile[0] & 0xFF) == VERSION)) {
+            Payload p = new Payload(profile);
+            p.readULong(1, 0L); // version
+            this.gapCount    = (int)p.readULong(2, 0L);
+            this.rttCount    = (int)p.readULong(2, 0L);
+            this.gapMeanMS   = p.readULong(4, 0L);
+            this.gapDevMS    = p.readULong(4, 0L);
+            this.rttMeanMS   = p.readULong(4, 0L);
+            this.rttDevMS    = p.readULong(4, 0L);
+        }
+    }
+
+    // ------------------------------------------------------------------------
+
+    /**
+    *** Encodes this profile for storage with the device record
+    *** @return The encoded profile
+    **/
+    public byte[] encode()
+    {
+        Payload p = new Payload();
+        p.writeULong(VERSION, 1);
+        p.writeULong(this.gapCount, 2);
+        p.writeULong(this.rttCount, 2);
+        p.writeULong(this.gapMeanMS, 4);
+        p.writeULong(this.gapDevMS, 4);
+        p.writeULong(this.rttMeanMS, 4);
+        p.writeULong(this.rttDevMS, 4);
+        return p.getBytes();
+    }
+
+    /**
+    *** Returns true if this profile has changed since it was created
+    *** @return True if this profile has changed
+    **/
+    public boolean hasChanged()
+    {
+        return this.changed;
+    }
+
+    // ------------------------------------------------------------------------
+
+    /**
+    *** Gets the number of packet gap samples observed
+    *** @return The number of samples (saturates at 65535)
+    **/
+    public int getPacketGapCount()
+    {
+        return this.gapCount;
+    }
+
+    /**
+    *** Gets the number of response round trip samples observed
+    *** @return The number of samples (saturates at 65535)
+    **/
+    public int getResponseDelayCount()
+    {
+        return this.rttCount;
+    }
+
+    /**
+    *** Returns true if enough samples of both estimates have been observed to derive timeouts
+    *** @return True if the estimates are usable
+    **/
+    public boolean isValid()
+    {
+        return (this.gapCount >= MIN_SAMPLES) && (this.rttCount >= MIN_SAMPLES);
+    }
+
+    /* update the specified mean/deviation pair, returns the new pair */
+    private static long[] _update(long mean, long dev, long sampleMS, boolean first)
+    {
+        if (first) {
+            // first sample (RFC 6298)
+            return new long[] { sampleMS, sampleMS / 2L };
+        } else {
+            // dev = 3/4 dev + 1/4 |mean - sample|;  mean = 7/8 mean + 1/8 sample
+            long err = Math.abs(mean - sampleMS);
+            return new long[] { ((mean * 7L) + sampleMS) / 8L, ((dev * 3L) + err) / 4L };
+        }
+    }
+
+    /**
+    *** Adds an observed gap between consecutive client packets within a block
+    *** @param gapMS  The packet gap in milliseconds
+    **/
+    public void addPacketGap(long gapMS)
+    {
+        if (gapMS < 0L) { return; }
+        long v[] = _update(this.gapMeanMS, this.gapDevMS, gapMS, (this.gapCount == 0));
+        this.gapMeanMS = v[0];
+        this.gapDevMS  = v[1];
+        if (this.gapCount < 0xFFFF) { this.gapCount++; }
+        this.changed = true;
+    }
+
+    /**
+    *** Adds an observed delay between a server response and the next client packet
+    *** @param rttMS  The response round trip in milliseconds
+    **/
+    public void addResponseDelay(long rttMS)
+    {
+        if (rttMS < 0L) { return; }
+        long v[] = _update(this.rttMeanMS, this.rttDevMS, rttMS, (this.rttCount == 0));
+        this.rttMeanMS = v[0];
+        this.rttDevMS  = v[1];
+        if (this.rttCount < 0xFFFF) { this.rttCount++; }
+        this.changed = true;
+    }
+
+    // ------------------------------------------------------------------------
+
+    /**
+    *** Gets the learned idle timeout (the time to wait for the next client packet, which
+    *** may be the client reply to a server response)
+    *** @param minMS  The minimum idle timeout
+    *** @param maxMS  The maximum idle timeout (<= 0 for no maximum)
+    *** @return The idle timeout in milliseconds, or '-1' if not enough round trip samples
+    ***         have been observed
+    **/
+    public long getIdleTimeout(long minMS, long maxMS)
+    {
+        if (this.rttCount < MIN_SAMPLES) {
+            return -1L;
+        }
+        long rttMS = this.rttMeanMS + (DEVIATION_K * this.rttDevMS);
+        if (this.gapCount >= MIN_SAMPLES) {
+            long gapMS = this.gapMeanMS + (DEVIATION_K * this.gapDevMS);
+            return _bound(Math.max(gapMS, rttMS), minMS, maxMS);
+        }
+        return _bound(rttMS, minMS, maxMS);
+    }
+
+    /**
+    *** Gets the learned packet timeout (the time to wait for the remainder of a packet)
+    *** @param minMS  The minimum packet timeout
+    *** @param maxMS  The maximum packet timeout (<= 0 for no maximum)
+    *** @return The packet timeout in milliseconds, or '-1' if not enough packet gap samples
+    ***         have been observed
+    **/
+    public long getPacketTimeout(long minMS, long maxMS)
+    {
+        if (this.gapCount < MIN_SAMPLES) {
+            return -1L;
+        }
+        // a packet is delivered faster than the gap between packets
+        long gapMS = this.gapMeanMS + (DEVIATION_K * this.gapDevMS);
+        return _bound(gapMS, minMS, maxMS);
+    }
+
+    private static long _bound(long v, long minMS, long maxMS)
+    {
+        if ((maxMS > 0L) && (v > maxMS)) { v = maxMS; }
+        if (v < minMS) { v = minMS; }
+        return v;
+    }
+
+    // ------------------------------------------------------------------------
+
+    /**
+    *** Returns a String representation of this profile
+    *** @return A String representation of this profile
+    **/
+    public String toString()
+    {
+        StringBuffer sb = new StringBuffer();
+        sb.append("gap=").append(this.gapMeanMS).append("/").append(this.gapDevMS).append("[").append(this.gapCount).append("]");
+        sb.append(" rtt=").append(this.rttMeanMS).append("/").append(this.rttDevMS).append("[").append(this.rttCount).append("]");
+        return sb.toString();
+    }
+
+}
@@ -0,0 +1,371 @@
+// ----------------------------------------------------------------------------
+// Copyright 2006-2010, GeoTelematic Solutions, Inc.
+// All rights reserved
+// ----------------------------------------------------------------------------
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+// http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+//
+// ----------------------------------------------------------------------------
+// Description:
+//  Per-port listener tuning profile (timeouts, packet length, worker pool,
+//  buffer sizes, socket options)
+// ----------------------------------------------------------------------------
+// Change History:
+//  2026/10/17
+//     -Initial release
+// ----------------------------------------------------------------------------
+package org.opendmtp.server.base;
+
+import java.lang.*;
+import java.util.*;
+
+import org.opengts.util.*;
+
+/**
+*** Tuning profile for the TCP/UDP listeners on a single port.  Each listener
+*** registered with DMTPServer carries its own profile, allowing (for example)
+*** slow 2G devices and fast LTE devices to be served from separately tuned ports.
+**/
+
+public class ListenerProfile
+{
+
+    // ------------------------------------------------------------------------
+
+    public static final String KEY_TCP_IDLE_TIMEOUT     = "tcpIdleTimeout";
+    public static final String KEY_TCP_PACKET_TIMEOUT   = "tcpPacketTimeout";
+    public static final String KEY_TCP_SESSION_TIMEOUT  = "tcpSessionTimeout";
+    public static final String KEY_UDP_IDLE_TIMEOUT     = "udpIdleTimeout";
+    public static final String KEY_UDP_PACKET_TIMEOUT   = "udpPacketTimeout";
+    public static final String KEY_UDP_SESSION_TIMEOUT  = "udpSessionTimeout";
+    public static final String KEY_MAX_PACKET_LENGTH    = "maxPacketLength";
+    public static final String KEY_TCP_SELECTORS        = "tcpSelectors";
+    public static final String KEY_UDP_RECEIVERS        = "udpReceivers";
+    public static final String KEY_UDP_SEND_QUEUE       = "udpSendQueue";
+    public static final String KEY_VIRTUAL_THREADS      = "virtualThreads";
+    public static final String KEY_THREAD_MAX           = "sessionThreads.max";
+    public static final String KEY_THREAD_PENDING       = "sessionThreads.pending";
+    public static final String KEY_THREAD_IDLE          = "sessionThreads.idleTimeout";
+    public static final String KEY_RECEIVE_BUFFER       = "receiveBufferSize";
+    public static final String KEY_SEND_BUFFER          = "sendBufferSize";
+    public static final String KEY_TCP_NODELAY          = "tcpNoDelay";
+    public static final String KEY_KEEP_ALIVE           = "keepAlive";
+    public static final String KEY_LINGER_TIMEOUT       = "lingerTimeout";
+    public static final String KEY_CLOSE_DELAY          = "closeDelay";
+    public static final String KEY_TLS                  = "tls";
+
+    // ------------------------------------------------------------------------
+
+    private String  name                    = "default";
+
+    private long    tcpIdleTimeout          = 10000L;
+    private long    tcpPacketTimeout        = 4000L;
+    private long    tcpSessionTimeout       = 15000L;
+    private long    udpIdleTimeout          = 5000L;
+    private long    udpPacketTimeout        = 4000L;
+    private long    udpSessionTimeout       = 60000L;
+    private int     maxPacketLength         = 600;
+
+    private int     tcpSelectorCount        = 0;
+    private int     udpReceiverCount        = 0;
+    private int     udpSendQueueSize        = 0;
+    private boolean virtualThreads          = false;
+    private int     sessionThreadMax        = 0;
+    private int     sessionPendingMax       = 0;
+    private long    sessionThreadIdleTimeout = ServerSocketThread.DFT_IDLE_THREAD_TIMEOUT_MS;
+
+    private int     receiveBufferSize       = 0;    // '0' for the OS default
+    private int     sendBufferSize          = 0;    // '0' for the OS default
+    private boolean tcpNoDelay              = false;
+    private boolean keepAlive               = false;
+    private int     lingerTimeoutSec        = 5;
+    private long    closeDelayMS            = ServerSocketThread.DFT_CLOSE_DELAY_MS;
+
+    private boolean tls                     = false;
+
+    /**
+    *** Constructor
+    *** @param name  The profile name
+    **/
+    public ListenerProfile(String name)
+    {
+        this.name = (name != null)? name : "";
+    }
+
+    /**
+    *** Copy constructor
+    *** @param name    The profile name
+    *** @param parent  The profile from which all settings are copied
+    **/
+    public ListenerProfile(String name, ListenerProfile parent)
+    {
+        this(name);
+        if (parent != null) {
+            this.tcpIdleTimeout           = parent.tcpIdleTimeout;
+            this.tcpPacketTimeout         = parent.tcpPacketTimeout;
+            this.tcpSessionTimeout        = parent.tcpSessionTimeout;
+            this.udpIdleTimeout           = parent.udpIdleTimeout;
+            this.udpPacketTimeout         = parent.udpPacketTimeout;
+            this.udpSessionTimeout        = parent.udpSessionTimeout;
+            this.maxPacketLength          = parent.maxPacketLength;
+            this.tcpSelectorCount         = parent.tcpSelectorCount;
+            this.udpReceiverCount         = parent.udpReceiverCount;
+            this.udpSendQueueSize         = parent.udpSendQueueSize;
+            this.virtualThreads           = parent.virtualThreads;
+            this.sessionThreadMax         = parent.sessionThreadMax;
+            this.sessionPendingMax        = parent.sessionPendingMax;
+            this.sessionThreadIdleTimeout = parent.sessionThreadIdleTimeout;
+            this.receiveBufferSize        = parent.receiveBufferSize;
+            this.sendBufferSize           = parent.sendBufferSize;
+            this.tcpNoDelay               = parent.tcpNoDelay;
+            this.keepAlive                = parent.keepAlive;
+            this.lingerTimeoutSec         = parent.lingerTimeoutSec;
+            this.closeDelayMS             = parent.closeDelayMS;
+            this.tls                      = parent.tls;
+        }
+    }
+
+    // ------------------------------------------------------------------------
+
+    /**
+    *** Overrides the settings of this profile with any values found in the runtime
+    *** configuration under the specified key prefix (ie. "dmtp.listener.31100.")
+    *** @param prefix  The runtime configuration key prefix
+    *** @return This profile
+    **/
+    public ListenerProfile loadConfig(String prefix)
+    {
+        String p = StringTools.trim(prefix);
+        this.tcpIdleTimeout           = RTConfig.getLong(   p + KEY_TCP_IDLE_TIMEOUT   , this.tcpIdleTimeout);
+        this.tcpPacketTimeout         = RTConfig.getLong(   p + KEY_TCP_PACKET_TIMEOUT , this.tcpPacketTimeout);
+        this.tcpSessionTimeout        = RTConfig.getLong(   p + KEY_TCP_SESSION_TIMEOUT, this.tcpSessionTimeout);
+        this.udpIdleTimeout           = RTConfig.getLong(   p + KEY_UDP_IDLE_TIMEOUT   , this.udpIdleTimeout);
+        this.udpPacketTimeout         = RTConfig.getLong(   p + KEY_UDP_PACKET_TIMEOUT , this.udpPacketTimeout);
+        this.udpSessionTimeout        = RTConfig.getLong(   p + KEY_UDP_SESSION_TIMEOUT, this.udpSessionTimeout);
+        this.maxPacketLength          = RTConfig.getInt(    p + KEY_MAX_PACKET_LENGTH  , this.maxPacketLength);
+        this.tcpSelectorCount         = RTConfig.getInt(    p + KEY_TCP_SELECTORS      , this.tcpSelectorCount);
+        this.udpReceiverCount         = RTConfig.getInt(    p + KEY_UDP_RECEIVERS      , this.udpReceiverCount);
+        this.udpSendQueueSize         = RTConfig.getInt(    p + KEY_UDP_SEND_QUEUE     , this.udpSendQueueSize);
+        this.virtualThreads           = RTConfig.getBoolean(p + KEY_VIRTUAL_THREADS    , this.virtualThreads);
+        this.sessionThreadMax         = RTConfig.getInt(    p + KEY_THREAD_MAX         , this.sessionThreadMax);
+        this.sessionPendingMax        = RTConfig.getInt(    p + KEY_THREAD_PENDING     , this.sessionPendingMax);
+        this.sessionThreadIdleTimeout = RTConfig.getLong(   p + KEY_THREAD_IDLE        , this.sessionThreadIdleTimeout);
+        this.receiveBufferSize        = RTConfig.getInt(    p + KEY_RECEIVE_BUFFER     , this.receiveBufferSize);
+        this.sendBufferSize           = RTConfig.getInt(    p + KEY_SEND_BUFFER        , this.sendBufferSize);
+        this.tcpNoDelay               = RTConfig.getBoolean(p + KEY_TCP_NODELAY        , this.tcpNoDelay);
+        this.keepAlive                = RTConfig.getBoolean(p + KEY_KEEP_ALIVE         , this.keepAlive);
+        this.lingerTimeoutSec         = RTConfig.getInt(    p + KEY_LINGER_TIMEOUT     , this.lingerTimeoutSec);
+        this.closeDelayMS             = RTConfig.getLong(   p + KEY_CLOSE_DELAY        , this.closeDelayMS);
+        this.tls                      = RTConfig.getBoolean(p + KEY_TLS                , this.tls);
+        return this;
+    }
+
+    // ------------------------------------------------------------------------
+
+    public String getName()
+    {
+        return this.name;
+    }
+
+    // ------------------------------------------------------------------------
+
+    public void setTcpTimeouts(long idleMS, long packetMS, long sessionMS)
+    {
+        this.tcpIdleTimeout    = idleMS;
+        this.tcpPacketTimeout  = packetMS;
+        this.tcpSessionTimeout = sessionMS;
+    }
+    public long getTcpIdleTimeout()
+    {
+        return this.tcpIdleTimeout;
+    }
+    public long getTcpPacketTimeout()
+    {
+        return this.tcpPacketTimeout;
+    }
+    public long getTcpSessionTimeout()
+    {
+        return this.tcpSessionTimeout;
+    }
+
+    public void setUdpTimeouts(long idleMS, long packetMS, long sessionMS)
+    {
+        this.udpIdleTimeout    = idleMS;
+        this.udpPacketTimeout  = packetMS;
+        this.udpSessionTimeout = sessionMS;
+    }
+    public long getUdpIdleTimeout()
+    {
+        return this.udpIdleTimeout;
+    }
+    public long getUdpPacketTimeout()
+    {
+        return this.udpPacketTimeout;
+    }
+    public long getUdpSessionTimeout()
+    {
+        return this.udpSessionTimeout;
+    }
+
+    public void setMaximumPacketLength(int len)
+    {
+        this.maxPacketLength = len;
+    }
+    public int getMaximumPacketLength()
+    {
+        return this.maxPacketLength;
+    }
+
+    // ------------------------------------------------------------------------
+
+    public void setTcpSelectorCount(int count)
+    {
+        // '0' indicates that each TCP session is handled by its own thread
+        this.tcpSelectorCount = (count > 0)? count : 0;
+    }
+    public int getTcpSelectorCount()
+    {
+        return this.tcpSelectorCount;
+    }
+
+    public void setUdpReceiverCount(int count)
+    {
+        // '0' indicates that UDP datagrams are received on a single DatagramSocket
+        this.udpReceiverCount = (count > 0)? count : 0;
+    }
+    public int getUdpReceiverCount()
+    {
+        return this.udpReceiverCount;
+    }
+
+    public void setUdpSendQueueSize(int size)
+    {
+        // '0' indicates that UDP responses are sent synchronously by the session
+        this.udpSendQueueSize = (size > 0)? size : 0;
+    }
+    public int getUdpSendQueueSize()
+    {
+        return this.udpSendQueueSize;
+    }
+
+    public void setVirtualThreads(boolean state)
+    {
+        this.virtualThreads = state;
+    }
+    public boolean getVirtualThreads()
+    {
+        return this.virtualThreads;
+    }
+
+    public void setSessionThreads(int max, int pending, long idleTimeoutMS)
+    {
+        this.sessionThreadMax         = (max     > 0)? max     : 0;
+        this.sessionPendingMax        = (pending > 0)? pending : 0;
+        this.sessionThreadIdleTimeout = idleTimeoutMS;
+    }
+    public int getMaximumSessionThreads()
+    {
+        return this.sessionThreadMax;
+    }
+    public int getMaximumPendingSessions()
+    {
+        return this.sessionPendingMax;
+    }
+    public long getSessionThreadIdleTimeout()
+    {
+        return this.sessionThreadIdleTimeout;
+    }
+
+    // ------------------------------------------------------------------------
+
+    public void setBufferSizes(int receiveSize, int sendSize)
+    {
+        this.receiveBufferSize = (receiveSize > 0)? receiveSize : 0;
+        this.sendBufferSize    = (sendSize    > 0)? sendSize    : 0;
+    }
+    public int getReceiveBufferSize()
+    {
+        return this.receiveBufferSize;
+    }
+    public int getSendBufferSize()
+    {
+        return this.sendBufferSize;
+    }
+
+    public void setTcpNoDelay(boolean state)
+    {
+        this.tcpNoDelay = state;
+    }
+    public boolean getTcpNoDelay()
+    {
+        return this.tcpNoDelay;
+    }
+
+    public void setKeepAlive(boolean state)
+    {
+        this.keepAlive = state;
+    }
+    public boolean getKeepAlive()
+    {
+        return this.keepAlive;
+    }
+
+    public void setLingerTimeoutSec(int sec)
+    {
+        this.lingerTimeoutSec = sec;
+    }
+    public int getLingerTimeoutSec()
+    {
+        return this.lingerTimeoutSec;
+    }
+
+    public void setCloseDelay(long delayMS)
+    {
+        this.closeDelayMS = delayMS;
+    }
+    public long getCloseDelay()
+    {
+        return this.closeDelayMS;
+    }
+
+    // ------------------------------------------------------------------------
+
+    public void setTLS(boolean state)
+    {
+        // TLS listeners accept TCP only (no UDP listener is started)
+        this.tls = state;
+    }
+    public boolean isTLS()
+    {
+        return this.tls;
+    }
+
+    // ------------------------------------------------------------------------
+
+    public String toString()
+    {
+        StringBuffer sb = new StringBuffer();
+        sb.append(this.name).append(" [");
+        sb.append("tcp=").append(this.tcpIdleTimeout).append("/").append(this.tcpPacketTimeout).append("/").append(this.tcpSessionTimeout).append("ms");
+        sb.append(", udp=").append(this.udpIdleTimeout).append("/").append(this.udpPacketTimeout).append("/").append(this.udpSessionTimeout).append("ms");
+        sb.append(", maxPacket=").append(this.maxPacketLength);
+        sb.append(", selectors=").append(this.tcpSelectorCount);
+        sb.append(", receivers=").append(this.udpReceiverCount);
+        sb.append(", sendQueue=").append(this.udpSendQueueSize);
+        sb.append(", threads=").append(this.sessionThreadMax).append("/").append(this.sessionPendingMax);
+        sb.append(", tls=").append(this.tls);
+        sb.append("]");
+        return sb.toString();
+    }
+
+}
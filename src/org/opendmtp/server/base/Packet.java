@@ -36,6 +36,10 @@
 //     -Added 'createServerSetPropertyPacket' methods.
 //  2007/01/10  Martin D. Flynn
 //     -Added 'createServerGetFilePacket' method
+//  2026/10/17
+//     -Added 'PKT_CLIENT_RESUME_TOKEN' identification packet
+//     -Added 'PKT_CLIENT_COMPRESSED_BLOCK' container, and 'inflateCompressedBlock'
+//     -Fixed 'getPacketLength' to return the length of a 3 byte packet at the end of the data
 // ----------------------------------------------------------------------------
 package org.opendmtp.server.base;
 
@@ -43,6 +47,7 @@ import java.lang.*;
 import java.util.*;
 import java.io.*;
 import java.net.*;
+import java.nio.*;
 import java.sql.*;
 
 import org.opengts.util.*;
@@ -73,10 +78,17 @@ public class Packet
     public static final int     PKT_CLIENT_EOB_DONE         = 0x00;    // End of block/transmission, "no more to say"
     public static final int     PKT_CLIENT_EOB_MORE         = 0x01;    // End of block/transmission, "I have more to say"
     
+    // compressed block container (see Encoding.SUPPORTED_ENCODING_DEFLATE)
+    //   Binary: 0xE0 0x0C <2 byte length> <zlib deflated packets>
+    //   ASCII : $E00C=<Base64 zlib deflated packets>[*<checksum>]
+    public static final int     PKT_CLIENT_COMPRESSED_BLOCK = 0x0C;    // Deflate compressed block of packets
+    public static final int     COMPRESSED_BLOCK_HEADER_LENGTH = 4;
+    
     // identification packets
     public static final int     PKT_CLIENT_UNIQUE_ID        = 0x11;    // Unique identifier
     public static final int     PKT_CLIENT_ACCOUNT_ID       = 0x12;    // Account identifier
     public static final int     PKT_CLIENT_DEVICE_ID        = 0x13;    // Device identifier
+    public static final int     PKT_CLIENT_RESUME_TOKEN     = 0x14;    // Resume token (see PropCodes.PROP_COMM_RESUME_TOKEN)
 
     // standard fixed format event packets
     public static final int     PKT_CLIENT_FIXED_FMT_STD    = 0x30;    // Standard GPS
@@ -228,6 +240,13 @@ public class Packet
         }
     );
 
+    private static PayloadTemplate ClientTemplate_Resume_Token = new PayloadTemplate(
+        Packet.PKT_CLIENT_RESUME_TOKEN,
+        new PayloadTemplate.Field[] {
+            new PayloadTemplate.Field(PayloadTemplate.FIELD_BINARY      , false, 0, 16), // token
+        }
+    );
+
     private static PayloadTemplate ClientTemplate_ProvertyValue = new PayloadTemplate(
         Packet.PKT_CLIENT_PROPERTY_VALUE,
         new PayloadTemplate.Field[] {
@@ -276,6 +295,7 @@ public class Packet
         ClientTemplate_Unique_ID,
         ClientTemplate_Account_ID,
         ClientTemplate_Device_ID,
+        ClientTemplate_Resume_Token,
         ClientTemplate_ProvertyValue,
         ClientTemplate_CustomDef,
         ClientTemplate_Diagnostic,
@@ -713,9 +733,10 @@ public class Packet
     public boolean isIdentType()
     {
         int t = this.getPacketType();
-        return (t == PKT_CLIENT_UNIQUE_ID ) || 
-               (t == PKT_CLIENT_ACCOUNT_ID) ||
-               (t == PKT_CLIENT_DEVICE_ID );
+        return (t == PKT_CLIENT_UNIQUE_ID   ) || 
+               (t == PKT_CLIENT_ACCOUNT_ID  ) ||
+               (t == PKT_CLIENT_DEVICE_ID   ) ||
+               (t == PKT_CLIENT_RESUME_TOKEN);
     }
 
     public boolean isEventType()
@@ -829,6 +850,23 @@ public class Packet
         return this.encode(this.getEncoding());
     }
     
+    public int encode(ByteBuffer bb, int encoding)
+    {
+        // encodes this packet at the current position of the specified buffer
+        // (BufferOverflowException if the buffer does not have sufficient space)
+        int startPos = bb.position();
+        if (encoding == Encoding.ENCODING_BINARY) {
+            Payload payload = this.getPayload(true);
+            bb.put((byte)(this.header & 0xFF));
+            bb.put((byte)(this.type & 0xFF));
+            bb.put((byte)(payload.getSize() & 0xFF));
+            payload.getBytes(bb);
+        } else {
+            bb.put(this.encode(encoding));
+        }
+        return bb.position() - startPos;
+    }
+
     public byte[] encode(int encoding)
     {
         byte payload[] = this.getPayload(true).getBytes();
@@ -1047,7 +1085,7 @@ public class Packet
         
         /* validate offset/length */
         int dataLen = data.length;
-        if (dataOfs + 3 >= dataLen) {
+        if (dataOfs + 3 > dataLen) {
             //Print.logError("Must have at least 3 bytes in packet");
             return -1;
         }
@@ -1091,4 +1129,85 @@ public class Packet
     
     // ------------------------------------------------------------------------
 
+    /* return true if the data at the specified offset is a compressed block container */
+    public static boolean isCompressedBlock(byte data[], int dataOfs, int dataLen)
+    {
+        if ((data == null) || ((dataOfs + 2) > dataLen)) {
+            return false;
+        } else
+        if (data[dataOfs] == Encoding.AsciiEncodingChar) {
+            // "$E00C"
+            return ((dataOfs + 5) <= dataLen) && 
+                StringTools.toStringValue(data, dataOfs + 1, 4).equalsIgnoreCase("E00C");
+        } else {
+            return (((int)data[dataOfs] & 0xFF) == HEADER_BASIC) && 
+                (((int)data[dataOfs + 1] & 0xFF) == PKT_CLIENT_COMPRESSED_BLOCK);
+        }
+    }
+    
+    /* return the inflated packets contained in the compressed block container */
+    public static byte[] inflateCompressedBlock(byte pkt[], int maxInflatedLen)
+        throws PacketParseException
+    {
+        Packet cause = new Packet(null, true, HEADER_BASIC, PKT_CLIENT_COMPRESSED_BLOCK);
+        
+        /* compressed data */
+        byte deflated[] = null;
+        if ((pkt.length > 0) && (pkt[0] == Encoding.AsciiEncodingChar)) {
+            // "$E00C=<Base64>[*XX]"
+            int pLen = 1, cksumActual = 0, cksumTest = -1;
+            for (;(pLen < pkt.length) && (pkt[pLen] != Encoding.AsciiEndOfLineChar); pLen++) {
+                if (pkt[pLen] == Encoding.AsciiChecksumChar) {
+                    cksumTest = StringTools.parseHexInt(StringTools.toStringValue(pkt, pLen + 1, 2), -1);
+                    break;
+                }
+                cksumActual = (cksumActual ^ pkt[pLen]) & 0xFF;
+            }
+            if ((cksumTest >= 0) && (cksumTest != cksumActual)) {
+                throw new PacketParseException(ServerErrors.NAK_PACKET_CHECKSUM, cause); // errData ok
+            } else
+            if ((pLen < 6) || (pkt[5] != Encoding.ENCODING_BASE64_CHAR)) {
+                throw new PacketParseException(ServerErrors.NAK_PACKET_ENCODING, cause); // errData ok
+            }
+            deflated = org.opengts.util.Base64.decode(StringTools.toStringValue(pkt, 6, pLen - 6));
+        } else {
+            // 0xE0 0x0C <length> <data>
+            int len = (pkt.length >= COMPRESSED_BLOCK_HEADER_LENGTH)? ((((int)pkt[2] & 0xFF) << 8) | ((int)pkt[3] & 0xFF)) : -1;
+            if ((COMPRESSED_BLOCK_HEADER_LENGTH + len) != pkt.length) {
+                throw new PacketParseException(ServerErrors.NAK_PACKET_LENGTH, cause); // errData ok
+            }
+            deflated = new byte[len];
+            System.arraycopy(pkt, COMPRESSED_BLOCK_HEADER_LENGTH, deflated, 0, len);
+        }
+        
+        /* inflate */
+        java.util.zip.Inflater inflater = new java.util.zip.Inflater();
+        try {
+            inflater.setInput(deflated);
+            ByteArrayOutputStream baos = new ByteArrayOutputStream(deflated.length * 4);
+            byte buf[] = new byte[1024];
+            while (!inflater.finished()) {
+                int n = inflater.inflate(buf);
+                if ((n == 0) && (inflater.needsInput() || inflater.needsDictionary())) {
+                    // truncated data
+                    throw new PacketParseException(ServerErrors.NAK_PACKET_PAYLOAD, cause); // errData ok
+                }
+                baos.write(buf, 0, n);
+                if (baos.size() > maxInflatedLen) {
+                    Print.logError("Inflated block exceeds maximum length: " + maxInflatedLen);
+                    throw new PacketParseException(ServerErrors.NAK_PACKET_PAYLOAD, cause); // errData ok
+                }
+            }
+            return baos.toByteArray();
+        } catch (java.util.zip.DataFormatException dfe) {
+            Print.logError("Invalid compressed block: " + dfe.getMessage());
+            throw new PacketParseException(ServerErrors.NAK_PACKET_PAYLOAD, cause); // errData ok
+        } finally {
+            inflater.end();
+        }
+        
+    }
+    
+    // ------------------------------------------------------------------------
+
 }
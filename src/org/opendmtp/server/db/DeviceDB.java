@@ -23,6 +23,8 @@
 //     -Added handler methods for errors, diagnostics, and properties.
 //  2007/12/04  Martin D. Flynn
 //     -'getPendingPackets' now returns a 'PacketList' object
+//  2026/10/17
+//     -Added get/set of the learned latency profile
 // ----------------------------------------------------------------------------
 package org.opendmtp.server.db;
 
@@ -88,6 +90,10 @@ public interface DeviceDB
     public long getLastDuplexConnectionTime();
     public void setLastDuplexConnectionTime(long connectTime);
     
+    // get/set the learned inter-packet latency profile (see 'LatencyProfile')
+    public byte[] getLatencyProfile();
+    public void setLatencyProfile(byte[] profile);
+    
     // set/get supported packet encodings
     public boolean supportsEncoding(int encoding);
     public void removeEncoding(int encoding);
@@ -29,6 +29,8 @@
 //     -Minor timestamp formatting argument change for new DateTime API.
 //  2007/12/04  Martin D. Flynn
 //     -'getPendingPackets' now returns a 'PacketList' object
+//  2026/10/17
+//     -Added latency profile (retained in memory for the life of the server)
 // ----------------------------------------------------------------------------
 package org.opendmtp.server_file;
 
@@ -92,6 +94,10 @@ public class DeviceDBImpl
     // ------------------------------------------------------------------------
 
     private static HashMap<Integer,PayloadTemplate> customPayloadTemplates = new HashMap<Integer,PayloadTemplate>();
+
+    // The file datastore has no device table, so learned latency profiles are
+    // retained in memory by "account/device".
+    private static HashMap<String,byte[]> latencyProfiles = new HashMap<String,byte[]>();
     
     // ------------------------------------------------------------------------
     
@@ -246,6 +252,22 @@ public class DeviceDBImpl
 
     // ------------------------------------------------------------------------
 
+    public byte[] getLatencyProfile()
+    {
+        synchronized (latencyProfiles) {
+            return latencyProfiles.get(this.getAccountName() + "/" + this.getDeviceName());
+        }
+    }
+
+    public void setLatencyProfile(byte[] profile)
+    {
+        synchronized (latencyProfiles) {
+            latencyProfiles.put(this.getAccountName() + "/" + this.getDeviceName(), profile);
+        }
+    }
+
+    // ------------------------------------------------------------------------
+
     public boolean supportsEncoding(int encoding)
     {
         return ((SUPPORTED_ENCODING & encoding) != 0);
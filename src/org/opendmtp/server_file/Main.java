@@ -51,6 +51,48 @@ public class Main
     // ------------------------------------------------------------------------
     
     public static final String DMTP_PORT        = "dmtp.port";
+    public static final String DMTP_LISTENERS   = "dmtp.listeners";
+    public static final String DMTP_LISTENER_   = "dmtp.listener.";
+    public static final String DMTP_SELECTORS   = "dmtp.tcpSelectors";
+    public static final String DMTP_RECEIVERS   = "dmtp.udpReceivers";
+    public static final String DMTP_SEND_QUEUE  = "dmtp.udpSendQueue";
+    public static final String DMTP_UDP_RESPONSE = "dmtp.udpReturnResponse";
+    public static final String DMTP_UDP_COALESCE = "dmtp.udpAckCoalesce";
+    public static final String DMTP_VIRTUAL     = "dmtp.virtualThreads";
+    public static final String DMTP_THREAD_MAX  = "dmtp.sessionThreads.max";
+    public static final String DMTP_PENDING_MAX = "dmtp.sessionThreads.pending";
+    public static final String DMTP_THREAD_IDLE = "dmtp.sessionThreads.idleTimeout";
+    public static final String DMTP_TLS_CACHE   = "dmtp.tls.sessionCacheSize";
+    public static final String DMTP_TLS_TIMEOUT = "dmtp.tls.sessionTimeout";
+    public static final String DMTP_UDP_CACHE   = "dmtp.udpSessionCache.size";
+    public static final String DMTP_UDP_CACHE_IDLE = "dmtp.udpSessionCache.idleTimeout";
+    public static final String DMTP_UDP_CACHE_AGE  = "dmtp.udpSessionCache.maxAge";
+    public static final String DMTP_TOKEN_CACHE    = "dmtp.resumeTokens.size";
+    public static final String DMTP_TOKEN_IDLE     = "dmtp.resumeTokens.idleTimeout";
+    public static final String DMTP_TOKEN_MAX_AGE  = "dmtp.resumeTokens.maxAge";
+    public static final String DMTP_ACK_EVENTS     = "dmtp.ackWindow.events";
+    public static final String DMTP_ACK_INTERVAL   = "dmtp.ackWindow.interval";
+    public static final String DMTP_COMPRESSED_MAX = "dmtp.compressedBlock.maxLength";
+    public static final String DMTP_ADMIT_SESSIONS = "dmtp.admission.maxSessions";
+    public static final String DMTP_ADMIT_BACKLOG  = "dmtp.admission.maxBacklog";
+    public static final String DMTP_ADMIT_HEAP     = "dmtp.admission.maxHeapPercent";
+    public static final String DMTP_RATE_LIMIT     = "dmtp.ipRateLimit.perMinute";
+    public static final String DMTP_RATE_BURST     = "dmtp.ipRateLimit.burst";
+    public static final String DMTP_RATE_BUCKETS   = "dmtp.ipRateLimit.buckets";
+    public static final String DMTP_STORM_TRIP     = "dmtp.storm.acceptRate";
+    public static final String DMTP_STORM_ADMIT    = "dmtp.storm.admitRate";
+    public static final String DMTP_STORM_DELAY    = "dmtp.storm.maxRetryDelay";
+    public static final String DMTP_STORM_PROPERTY = "dmtp.storm.setFailureDelay";
+    public static final String DMTP_EVENT_PIPELINE = "dmtp.eventPipeline.threads";
+    public static final String DMTP_INGEST_SHARDS  = "dmtp.ingestShards";
+    public static final String DMTP_ADAPT_TIMEOUT  = "dmtp.adaptiveTimeout";
+    public static final String DMTP_ADAPT_MIN_IDLE = "dmtp.adaptiveTimeout.minIdle";
+    public static final String DMTP_ADAPT_MIN_PKT  = "dmtp.adaptiveTimeout.minPacket";
+    public static final String DMTP_PERSISTENT     = "dmtp.persistentSessions";
+    public static final String DMTP_PENDING_POLL   = "dmtp.persistentSessions.pendingPoll";
+    public static final String DMTP_HTTP_PORT      = "dmtp.http.port";
+    public static final String DMTP_HTTP_THREADS   = "dmtp.http.threads";
+    public static final String DMTP_HTTP_MAX_BODY  = "dmtp.http.maxBody";
 
     // ------------------------------------------------------------------------
     
@@ -72,6 +114,27 @@ public class Main
         return port;
     }
 
+    private static int[] _serverPorts()
+    {
+        int ports[] = RTConfig.getIntArray(DMTP_LISTENERS, null);
+        if ((RTConfig.getInt(ARG_PORT,-1) > 0) || (ports == null) || (ports.length == 0)) {
+            ports = new int[] { _serverPort() };
+        }
+        return ports;
+    }
+
+    private static ListenerProfile[] _serverProfiles(int ports[])
+    {
+        // per-port overrides of the default profile, ie. "dmtp.listener.31100.tcpIdleTimeout=30000"
+        ListenerProfile dft = DMTPServer.getDefaultProfile();
+        ListenerProfile profiles[] = new ListenerProfile[ports.length];
+        for (int i = 0; i < ports.length; i++) {
+            String prefix = DMTP_LISTENER_ + ports[i] + ".";
+            profiles[i] = new ListenerProfile(String.valueOf(ports[i]), dft).loadConfig(prefix);
+        }
+        return profiles;
+    }
+
     // ------------------------------------------------------------------------
     
     private static void usage()
@@ -92,6 +155,46 @@ public class Main
         
         /* runtime default properties */
         RTKey.addRuntimeEntry(new RTKey.Entry(DMTP_PORT, DEFAULT_DATA_PORT, "DMTP service port"));
+        RTKey.addRuntimeEntry(new RTKey.Entry(DMTP_SELECTORS, 0, "DMTP non-blocking TCP selector threads"));
+        RTKey.addRuntimeEntry(new RTKey.Entry(DMTP_RECEIVERS, 0, "DMTP UDP receiver threads (SO_REUSEPORT)"));
+        RTKey.addRuntimeEntry(new RTKey.Entry(DMTP_UDP_RESPONSE, false, "DMTP return responses to Simplex/UDP clients"));
+        RTKey.addRuntimeEntry(new RTKey.Entry(DMTP_UDP_COALESCE, 0L, "DMTP window for coalescing Simplex/UDP ACKs from the same device (ms, 0 to disable)"));
+        RTKey.addRuntimeEntry(new RTKey.Entry(DMTP_SEND_QUEUE, 0, "DMTP UDP responses queued for the datagram sender (0 to send synchronously)"));
+        RTKey.addRuntimeEntry(new RTKey.Entry(DMTP_VIRTUAL, false, "DMTP virtual thread per session"));
+        RTKey.addRuntimeEntry(new RTKey.Entry(DMTP_THREAD_MAX, 0, "DMTP maximum session threads"));
+        RTKey.addRuntimeEntry(new RTKey.Entry(DMTP_PENDING_MAX, 0, "DMTP maximum clients waiting for a session thread"));
+        RTKey.addRuntimeEntry(new RTKey.Entry(DMTP_UDP_CACHE, 0, "DMTP maximum cached Simplex/UDP sessions"));
+        RTKey.addRuntimeEntry(new RTKey.Entry(DMTP_UDP_CACHE_IDLE, 300000L, "DMTP cached Simplex/UDP session idle timeout (ms)"));
+        RTKey.addRuntimeEntry(new RTKey.Entry(DMTP_UDP_CACHE_AGE, 3600000L, "DMTP maximum age of the account/device in a cached Simplex/UDP session (ms)"));
+        RTKey.addRuntimeEntry(new RTKey.Entry(DMTP_TOKEN_CACHE, 0, "DMTP maximum cached session resume tokens (0 to disable)"));
+        RTKey.addRuntimeEntry(new RTKey.Entry(DMTP_TOKEN_IDLE, 86400000L, "DMTP unused session resume token expiry (ms)"));
+        RTKey.addRuntimeEntry(new RTKey.Entry(DMTP_TOKEN_MAX_AGE, 3600000L, "DMTP maximum age of the account/device bound to resume tokens (ms)"));
+        RTKey.addRuntimeEntry(new RTKey.Entry(DMTP_ACK_EVENTS, 0, "DMTP maximum saved events between mid-block ACKs (0 for no limit)"));
+        RTKey.addRuntimeEntry(new RTKey.Entry(DMTP_ACK_INTERVAL, 0L, "DMTP maximum time between mid-block ACKs (ms, 0 for no limit)"));
+        RTKey.addRuntimeEntry(new RTKey.Entry(DMTP_COMPRESSED_MAX, 0, "DMTP maximum compressed block container length (0 to disable)"));
+        RTKey.addRuntimeEntry(new RTKey.Entry(DMTP_THREAD_IDLE, ServerSocketThread.DFT_IDLE_THREAD_TIMEOUT_MS, "DMTP idle session thread timeout (ms)"));
+        RTKey.addRuntimeEntry(new RTKey.Entry(DMTP_TLS_CACHE, 10000, "DMTP TLS session cache size, all TLS listeners (0 for unlimited)"));
+        RTKey.addRuntimeEntry(new RTKey.Entry(DMTP_TLS_TIMEOUT, 86400, "DMTP TLS cached session timeout, all TLS listeners (sec)"));
+        RTKey.addRuntimeEntry(new RTKey.Entry(DMTP_ADMIT_SESSIONS, 0, "DMTP active sessions above which new clients are rejected"));
+        RTKey.addRuntimeEntry(new RTKey.Entry(DMTP_ADMIT_BACKLOG, 0, "DMTP waiting clients above which new clients are rejected"));
+        RTKey.addRuntimeEntry(new RTKey.Entry(DMTP_ADMIT_HEAP, 0, "DMTP heap usage (percent) above which new clients are rejected"));
+        RTKey.addRuntimeEntry(new RTKey.Entry(DMTP_RATE_LIMIT, 0, "DMTP connections per minute allowed from each source address"));
+        RTKey.addRuntimeEntry(new RTKey.Entry(DMTP_RATE_BURST, 5, "DMTP connection burst allowed from each source address"));
+        RTKey.addRuntimeEntry(new RTKey.Entry(DMTP_RATE_BUCKETS, IPRateLimiter.DFT_WIDTH, "DMTP source address rate limit buckets (per row)"));
+        RTKey.addRuntimeEntry(new RTKey.Entry(DMTP_STORM_TRIP, 0, "DMTP connections per second which start a connection storm (0 to disable)"));
+        RTKey.addRuntimeEntry(new RTKey.Entry(DMTP_STORM_ADMIT, 50, "DMTP connections per second admitted during a connection storm"));
+        RTKey.addRuntimeEntry(new RTKey.Entry(DMTP_STORM_DELAY, 3600L, "DMTP maximum retry delay assigned to clients rejected during a storm (sec)"));
+        RTKey.addRuntimeEntry(new RTKey.Entry(DMTP_STORM_PROPERTY, false, "DMTP set the connection failure delay property of clients rejected during a storm"));
+        RTKey.addRuntimeEntry(new RTKey.Entry(DMTP_EVENT_PIPELINE, 0, "DMTP event persistence threads (0 to save events in the session thread)"));
+        RTKey.addRuntimeEntry(new RTKey.Entry(DMTP_INGEST_SHARDS, 0, "DMTP device affinity ingest shards (0 to disable, -1 for one per processor)"));
+        RTKey.addRuntimeEntry(new RTKey.Entry(DMTP_ADAPT_TIMEOUT, false, "DMTP per-device timeouts learned from packet latency"));
+        RTKey.addRuntimeEntry(new RTKey.Entry(DMTP_ADAPT_MIN_IDLE, 2000L, "DMTP minimum learned idle timeout (ms)"));
+        RTKey.addRuntimeEntry(new RTKey.Entry(DMTP_ADAPT_MIN_PKT, 1000L, "DMTP minimum learned packet timeout (ms)"));
+        RTKey.addRuntimeEntry(new RTKey.Entry(DMTP_PERSISTENT, false, "DMTP keep Duplex sessions open (speak freely)"));
+        RTKey.addRuntimeEntry(new RTKey.Entry(DMTP_PENDING_POLL, 5000L, "DMTP pending packet check interval for open sessions (ms)"));
+        RTKey.addRuntimeEntry(new RTKey.Entry(DMTP_HTTP_PORT, 0, "DMTP HTTP ingest gateway port (0 to disable)"));
+        RTKey.addRuntimeEntry(new RTKey.Entry(DMTP_HTTP_THREADS, DMTPHttpGateway.DFT_THREADS, "DMTP HTTP ingest gateway threads"));
+        RTKey.addRuntimeEntry(new RTKey.Entry(DMTP_HTTP_MAX_BODY, DMTPHttpGateway.DFT_MAX_BODY_LENGTH, "DMTP HTTP ingest gateway maximum request length"));
 
         /* configure server for File data store */
         DBConfig.init(argv,false);
@@ -103,8 +206,31 @@ public class Main
 
         /* start server */
         if (RTConfig.getBoolean(ARG_START,false)) {
+            DMTPServer.setTcpSelectorCount(RTConfig.getInt(DMTP_SELECTORS,0));
+            DMTPServer.setUdpReceiverCount(RTConfig.getInt(DMTP_RECEIVERS,0));
+            DMTPServer.setUdpSendQueueSize(RTConfig.getInt(DMTP_SEND_QUEUE,0));
+            DMTPClientPacketHandler.setUdpReturnResponse(RTConfig.getBoolean(DMTP_UDP_RESPONSE,false));
+            DMTPClientPacketHandler.setUdpAckCoalescing(RTConfig.getLong(DMTP_UDP_COALESCE,0L));
+            DMTPServer.setVirtualThreads(RTConfig.getBoolean(DMTP_VIRTUAL,false));
+            DMTPServer.setMaximumSessionThreads(RTConfig.getInt(DMTP_THREAD_MAX,0));
+            DMTPServer.setMaximumPendingSessions(RTConfig.getInt(DMTP_PENDING_MAX,0));
+            DMTPClientPacketHandler.setSimplexSessionCache(RTConfig.getInt(DMTP_UDP_CACHE,0), RTConfig.getLong(DMTP_UDP_CACHE_IDLE,300000L), RTConfig.getLong(DMTP_UDP_CACHE_AGE,3600000L));
+            DMTPClientPacketHandler.setResumeTokens(RTConfig.getInt(DMTP_TOKEN_CACHE,0), RTConfig.getLong(DMTP_TOKEN_IDLE,86400000L), RTConfig.getLong(DMTP_TOKEN_MAX_AGE,3600000L));
+            DMTPClientPacketHandler.setAckWindow(RTConfig.getInt(DMTP_ACK_EVENTS,0), RTConfig.getLong(DMTP_ACK_INTERVAL,0L));
+            DMTPClientPacketHandler.setCompressedBlocks(RTConfig.getInt(DMTP_COMPRESSED_MAX,0));
+            DMTPClientPacketHandler.setEventPipelineThreads(RTConfig.getInt(DMTP_EVENT_PIPELINE,0));
+            DMTPClientPacketHandler.setIngestShards(RTConfig.getInt(DMTP_INGEST_SHARDS,0));
+            DMTPClientPacketHandler.setAdaptiveTimeouts(RTConfig.getBoolean(DMTP_ADAPT_TIMEOUT,false), RTConfig.getLong(DMTP_ADAPT_MIN_IDLE,2000L), RTConfig.getLong(DMTP_ADAPT_MIN_PKT,1000L));
+            DMTPClientPacketHandler.setPersistentSessions(RTConfig.getBoolean(DMTP_PERSISTENT,false), RTConfig.getLong(DMTP_PENDING_POLL,5000L));
+            DMTPServer.setSessionThreadIdleTimeout(RTConfig.getLong(DMTP_THREAD_IDLE,ServerSocketThread.DFT_IDLE_THREAD_TIMEOUT_MS));
+            DMTPServer.setTLSSessionCache(RTConfig.getInt(DMTP_TLS_CACHE,10000), RTConfig.getInt(DMTP_TLS_TIMEOUT,86400));
+            DMTPServer.setRateLimit(RTConfig.getInt(DMTP_RATE_LIMIT,0), RTConfig.getInt(DMTP_RATE_BURST,5), RTConfig.getInt(DMTP_RATE_BUCKETS,IPRateLimiter.DFT_WIDTH));
+            DMTPServer.setStormControl(RTConfig.getInt(DMTP_STORM_TRIP,0), (double)RTConfig.getInt(DMTP_STORM_ADMIT,50), RTConfig.getLong(DMTP_STORM_DELAY,3600L), RTConfig.getBoolean(DMTP_STORM_PROPERTY,false));
+            DMTPServer.setAdmissionLimits(RTConfig.getInt(DMTP_ADMIT_SESSIONS,0), RTConfig.getInt(DMTP_ADMIT_BACKLOG,0), (double)RTConfig.getInt(DMTP_ADMIT_HEAP,0) / 100.0);
             try {
-                DMTPServer.createTrackSocketHandler(Main._serverPort());
+                int ports[] = Main._serverPorts();
+                DMTPServer.createTrackSocketHandler(ports, Main._serverProfiles(ports));
+                DMTPServer.startHttpGateway(RTConfig.getInt(DMTP_HTTP_PORT,0), RTConfig.getInt(DMTP_HTTP_THREADS,DMTPHttpGateway.DFT_THREADS), RTConfig.getInt(DMTP_HTTP_MAX_BODY,DMTPHttpGateway.DFT_MAX_BODY_LENGTH));
             } catch (Throwable t) { // trap any server exception
                 Print.logError("Error: " + t);
             }
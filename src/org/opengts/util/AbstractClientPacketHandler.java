@@ -30,6 +30,7 @@
 package org.opengts.util;
 
 import java.net.*;
+import java.nio.*;
 import javax.net.*;
 
 //import javax.net.ssl.*;
@@ -161,6 +162,54 @@ public abstract class AbstractClientPacketHandler
 
     // ------------------------------------------------------------------------
 
+    /**
+    *** Gets the idle timeout for this session.  The returned value may change over 
+    *** the life of the session, and is only used to shorten the server idle timeout.
+    *** @return The idle timeout in milliseconds, or '-1' to use the server idle timeout
+    **/
+    public long getIdleTimeout()
+    {
+        // '-1' indicates that 'ServerSocketThread' should be used
+        return -1L;
+    }
+
+    /**
+    *** Gets the packet timeout for this session.  The returned value may change over 
+    *** the life of the session, and is only used to shorten the server packet timeout.
+    *** @return The packet timeout in milliseconds, or '-1' to use the server packet timeout
+    **/
+    public long getPacketTimeout()
+    {
+        // '-1' indicates that 'ServerSocketThread' should be used
+        return -1L;
+    }
+
+    // ------------------------------------------------------------------------
+
+    /**
+    *** Gets the interval at which <code>getIdlePacket</code> is called while the 
+    *** session is waiting for the client to send a packet
+    *** @return The idle poll interval in milliseconds (<= 0 for no polling)
+    **/
+    public long getIdlePollInterval()
+    {
+        return -1L;
+    }
+
+    /**
+    *** Called periodically (see <code>getIdlePollInterval</code>) while the session is
+    *** waiting for the client to send a packet.  Returns any unsolicited packet to send
+    *** to the client.
+    *** @return The packet to send to the client, or null if there is nothing to send
+    **/
+    public byte[] getIdlePacket()
+        throws Exception
+    {
+        return null;
+    }
+
+    // ------------------------------------------------------------------------
+
     public int getActualPacketLength(byte packet[], int packetLen) 
     {
         return this.isTextPackets? PACKET_LEN_ASCII_LINE_TERMINATOR : packetLen;
@@ -171,6 +220,20 @@ public abstract class AbstractClientPacketHandler
     public abstract byte[] getHandlePacket(byte cmd[]) 
         throws Exception;
 
+    /**
+    *** Process packet and return the response as a list of buffers, which are sent
+    *** to the client in a single (gathering) write.  The default implementation
+    *** wraps the response returned by <code>getHandlePacket</code>.
+    *** @param cmd  The packet
+    *** @return The response buffers (may be null)
+    **/
+    public ByteBuffer[] getHandlePacketBuffers(byte cmd[]) 
+        throws Exception
+    {
+        byte resp[] = this.getHandlePacket(cmd);
+        return ((resp != null) && (resp.length > 0))? new ByteBuffer[] { ByteBuffer.wrap(resp) } : null;
+    }
+
     // ------------------------------------------------------------------------
 
     public boolean terminateSession() 
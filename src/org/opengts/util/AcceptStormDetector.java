@@ -0,0 +1,216 @@
+// ----------------------------------------------------------------------------
+// Copyright 2006-2010, GeoTelematic Solutions, Inc.
+// All rights reserved
+// ----------------------------------------------------------------------------
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+// http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+//
+// ----------------------------------------------------------------------------
+// Description:
+//  Connection storm detection, and smoothed admission during a storm
+// ----------------------------------------------------------------------------
+// Change History:
+//  2026/10/17
+//     -Initial release
+// ----------------------------------------------------------------------------
+package org.opengts.util;
+
+import java.util.*;
+import java.net.*;
+
+/**
+*** Detects connection storms (ie. a large number of clients reconnecting at once after
+*** a network outage) from the rate at which connections are accepted.<br>
+*** A storm starts when the number of connections accepted within one second exceeds
+*** the trip rate, and ends when the accept rate over a completed window falls below
+*** half the trip rate (or a full second passes without connections).  During a storm, clients are admitted at a smoothed rate (evenly spaced, with
+*** a small burst allowance), and each rejected client is assigned the next free retry
+*** slot at that same rate, so that rejected clients can be told to return at staggered
+*** times rather than all retrying together.
+**/
+
+public class AcceptStormDetector
+{
+
+    // ------------------------------------------------------------------------
+
+    private static final long   WINDOW_MS               = 1000L;
+
+    // ------------------------------------------------------------------------
+
+    private int                 tripPerSec              = 0;
+    private double              admitIntervalMS         = 0.0;
+    private double              burstToleranceMS        = 0.0;
+    private long                maxRetryDelayMS         = 0L;
+
+    private long                windowStart             = 0L;
+    private int                 windowCount             = 0;
+
+    private boolean             storm                   = false;
+    private double              admitTAT                = 0.0;      // admission "theoretical arrival time"
+    private double              retrySlotTime           = 0.0;      // last assigned retry slot
+
+    private long                stormCount              = 0L;
+    private long                admitCount              = 0L;
+    private long                rejectCount             = 0L;
+
+    /**
+    *** Constructor
+    *** @param tripPerSec        The connections per second above which a storm starts
+    *** @param admitPerSec       The connections per second admitted during a storm
+    *** @param maxRetryDelaySec  The maximum retry delay assigned to a rejected client
+    **/
+    public AcceptStormDetector(int tripPerSec, double admitPerSec, long maxRetryDelaySec)
+    {
+        double admit = (admitPerSec > 0.0)? admitPerSec : 1.0;
+        this.tripPerSec       = (tripPerSec > 0)? tripPerSec : 1;
+        this.admitIntervalMS  = 1000.0 / admit;
+        this.burstToleranceMS = this.admitIntervalMS * Math.max(1.0, Math.floor(admit / 10.0)); // 100ms of admissions
+        this.maxRetryDelayMS  = (maxRetryDelaySec > 0L)? (maxRetryDelaySec * 1000L) : 3600000L;
+    }
+
+    // ------------------------------------------------------------------------
+
+    /**
+    *** Records a newly accepted connection, and returns true if it should be admitted
+    *** @return True if the connection is admitted, false if it should be rejected
+    ***         (a storm is in progress and the smoothed admission rate has been reached)
+    **/
+    public boolean tryAdmit()
+    {
+        long now = DateTime.getCurrentTimeMillis();
+        boolean started = false, ended = false;
+        long rate = 0L;
+        boolean admit;
+        synchronized (this) {
+
+            /* arrival rate */
+            long elapsed = now - this.windowStart;
+            if ((elapsed >= WINDOW_MS) || (elapsed < 0L)) {
+                // window complete (a full idle window has passed if 2 windows have elapsed)
+                rate = ((elapsed > 0L) && (elapsed < (2L * WINDOW_MS)))? ((this.windowCount * 1000L) / elapsed) : 0L;
+                if (this.storm && (rate < (this.tripPerSec / 2))) {
+                    this.storm = false;
+                    ended = true;
+                }
+                this.windowStart = now;
+                this.windowCount = 0;
+            }
+            this.windowCount++;
+            if (!this.storm && (this.windowCount > this.tripPerSec)) {
+                this.storm         = true;
+                this.admitTAT      = (double)now;
+                this.retrySlotTime = (double)now;
+                this.stormCount++;
+                rate      = this.windowCount;
+                started   = true;
+            }
+
+            /* smoothed admission */
+            if (!this.storm) {
+                admit = true;
+            } else
+            if ((this.admitTAT - (double)now) <= this.burstToleranceMS) {
+                this.admitTAT = Math.max(this.admitTAT, (double)now) + this.admitIntervalMS;
+                admit = true;
+            } else {
+                admit = false;
+            }
+            if (admit) { this.admitCount++; } else { this.rejectCount++; }
+
+        }
+
+        /* log transitions only */
+        if (started) {
+            Print.logWarn("Connection storm detected [" + rate + "/sec], admitting " + StringTools.format(1000.0 / this.admitIntervalMS, "0.0") + "/sec");
+        } else
+        if (ended) {
+            Print.logInfo("Connection storm ended [" + rate + "/sec]");
+        }
+        return admit;
+
+    }
+
+    /**
+    *** Assigns a retry delay to a rejected client.  Successive rejected clients are given
+    *** successive retry slots at the admission rate (so that they return no faster than
+    *** they can be admitted), plus a per-client jitter derived from the client address.
+    *** @param ipAddr  The client address (may be null)
+    *** @return The retry delay in seconds
+    **/
+    public long getRetryDelay(InetAddress ipAddr)
+    {
+        long now = DateTime.getCurrentTimeMillis();
+        double slot;
+        synchronized (this) {
+            this.retrySlotTime = Math.max(this.retrySlotTime, Math.max((double)now, this.admitTAT)) + this.admitIntervalMS;
+            slot = this.retrySlotTime;
+        }
+        long delayMS = (long)(slot - (double)now);
+        // jitter up to 1/8 of the delay (minimum 10 seconds)
+        long jitterMS = Math.max(10000L, delayMS / 8L);
+        int h = (ipAddr != null)? Arrays.hashCode(ipAddr.getAddress()) : (int)now;
+        h ^= (h >>> 16);
+        h *= 0x85EBCA6B;
+        h ^= (h >>> 13);
+        delayMS += (long)(h & 0x7FFFFFFF) % jitterMS;
+        if (delayMS > this.maxRetryDelayMS) {
+            delayMS = this.maxRetryDelayMS;
+        }
+        return (delayMS + 999L) / 1000L;
+    }
+
+    // ------------------------------------------------------------------------
+
+    /**
+    *** Returns true if a storm is in progress
+    *** @return True if a storm is in progress
+    **/
+    public synchronized boolean isStorm()
+    {
+        return this.storm;
+    }
+
+    /**
+    *** Gets the number of storms detected
+    *** @return The number of storms detected
+    **/
+    public synchronized long getStormCount()
+    {
+        return this.stormCount;
+    }
+
+    /**
+    *** Gets the number of connections rejected during storms
+    *** @return The number of rejected connections
+    **/
+    public synchronized long getRejectCount()
+    {
+        return this.rejectCount;
+    }
+
+    /**
+    *** Returns a String representation of this detector's state
+    *** @return A String representation of this detector's state
+    **/
+    public synchronized String toString()
+    {
+        StringBuffer sb = new StringBuffer();
+        sb.append("storm=").append(this.storm);
+        sb.append(" storms=").append(this.stormCount);
+        sb.append(" admitted=").append(this.admitCount);
+        sb.append(" rejected=").append(this.rejectCount);
+        return sb.toString();
+    }
+
+}
@@ -0,0 +1,291 @@
+// ----------------------------------------------------------------------------
+// Copyright 2006-2010, GeoTelematic Solutions, Inc.
+// All rights reserved
+// ----------------------------------------------------------------------------
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+// http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+//
+// ----------------------------------------------------------------------------
+// Description:
+//  Admission control (load shedding) for new client connections
+// ----------------------------------------------------------------------------
+// Change History:
+//  2026/10/17
+//     -Initial release
+//     -Added REJECT_STORM (see 'AcceptStormDetector')
+//     -Session/backlog limits may apply to the total of several listeners (see 'addListener')
+// ----------------------------------------------------------------------------
+package org.opengts.util;
+
+import java.util.*;
+import java.net.*;
+
+/**
+*** Decides whether a new client connection should be admitted, based on the number
+*** of active sessions, the number of clients waiting for a session (backlog), and
+*** the current heap occupancy.<br>
+*** Checks are intended to be made in the accept path, before any client session
+*** state has been created, so that a rejected connection costs very little.<br>
+*** A single controller may be shared by several listeners, in which case the session
+*** and backlog limits apply to the total of all listeners.
+**/
+
+public class AdmissionController
+{
+
+    // ------------------------------------------------------------------------
+
+    public static final int     ADMIT                   = 0;
+    public static final int     REJECT_SESSIONS         = 1;    // too many active sessions
+    public static final int     REJECT_BACKLOG          = 2;    // too many waiting clients
+    public static final int     REJECT_MEMORY           = 3;    // heap occupancy too high
+    public static final int     REJECT_STORM            = 4;    // connection storm, over smoothed admission rate
+
+    private static final int    REASON_COUNT            = 5;
+
+    /**
+    *** Gets a short description of the specified admission result
+    *** @param reason  The admission result
+    *** @return The description
+    **/
+    public static String getReasonDescription(int reason)
+    {
+        switch (reason) {
+            case ADMIT          : return "admit";
+            case REJECT_SESSIONS: return "active sessions";
+            case REJECT_BACKLOG : return "session backlog";
+            case REJECT_MEMORY  : return "heap usage";
+            case REJECT_STORM   : return "connection storm";
+            default             : return "unknown";
+        }
+    }
+
+    // ------------------------------------------------------------------------
+
+    /**
+    *** RejectHandler: supplies the response sent to a rejected client
+    **/
+    public interface RejectHandler
+    {
+
+        /**
+        *** Returns the bytes to send to a rejected client before the connection
+        *** is closed.
+        *** @param reason  The rejection reason
+        *** @param ipAddr  The client address
+        *** @return The response bytes, or null to close without a response
+        **/
+        public byte[] getRejectResponse(int reason, InetAddress ipAddr);
+
+    }
+
+    // ------------------------------------------------------------------------
+
+    private static final long   DFT_HEAP_CHECK_INTERVAL_MS  = 250L;
+
+    private int                 maxActiveSessions       = 0;        // <= 0 for unlimited
+    private int                 maxBacklog              = 0;        // <= 0 for unlimited
+    private double              maxHeapUsage            = 0.0;      // <= 0 for no limit
+
+    private long                heapCheckIntervalMS     = DFT_HEAP_CHECK_INTERVAL_MS;
+    private long                lastHeapCheckTime       = 0L;
+    private double              lastHeapUsage           = 0.0;
+    private long                memoryUsage[]           = new long[3];
+
+    private long                rejectCount[]           = new long[REASON_COUNT];
+    private int                 lastResult              = ADMIT;
+
+    private java.util.List<ServerSocketThread> listeners = new Vector<ServerSocketThread>();
+
+    /**
+    *** Constructor
+    *** @param maxActiveSessions  The maximum number of active sessions (<= 0 for unlimited)
+    *** @param maxBacklog         The maximum number of clients waiting for a session (<= 0 for unlimited)
+    *** @param maxHeapUsage       The maximum heap occupancy, as a fraction of the maximum
+    ***                           heap size [0.0 .. 1.0] (<= 0 for no limit)
+    **/
+    public AdmissionController(int maxActiveSessions, int maxBacklog, double maxHeapUsage)
+    {
+        this.maxActiveSessions = maxActiveSessions;
+        this.maxBacklog        = maxBacklog;
+        this.maxHeapUsage      = maxHeapUsage;
+    }
+
+    // ------------------------------------------------------------------------
+
+    /**
+    *** Gets the maximum number of active sessions
+    *** @return The maximum number of active sessions (<= 0 for unlimited)
+    **/
+    public int getMaximumActiveSessions()
+    {
+        return this.maxActiveSessions;
+    }
+
+    /**
+    *** Gets the maximum number of clients waiting for a session
+    *** @return The maximum backlog (<= 0 for unlimited)
+    **/
+    public int getMaximumBacklog()
+    {
+        return this.maxBacklog;
+    }
+
+    /**
+    *** Gets the maximum heap occupancy
+    *** @return The maximum heap occupancy fraction (<= 0 for no limit)
+    **/
+    public double getMaximumHeapUsage()
+    {
+        return this.maxHeapUsage;
+    }
+
+    /**
+    *** Sets the minimum interval between heap occupancy samples
+    *** @param intervalMS  The heap check interval in milliseconds
+    **/
+    public void setHeapCheckInterval(long intervalMS)
+    {
+        this.heapCheckIntervalMS = intervalMS;
+    }
+
+    // ------------------------------------------------------------------------
+
+    /**
+    *** Gets the current heap occupancy (sampled at most once per heap check interval)
+    *** @return The heap occupancy as a fraction of the maximum heap size
+    **/
+    public synchronized double getHeapUsage()
+    {
+        long now = DateTime.getCurrentTimeMillis();
+        if ((now - this.lastHeapCheckTime) >= this.heapCheckIntervalMS) {
+            OSTools.getMemoryUsage(this.memoryUsage);
+            long maxMem  = this.memoryUsage[0];
+            long usedMem = this.memoryUsage[1] - this.memoryUsage[2];
+            if ((maxMem <= 0L) || (maxMem == Long.MAX_VALUE)) {
+                maxMem = this.memoryUsage[1]; // no maximum, use current heap size
+            }
+            this.lastHeapUsage     = (maxMem > 0L)? ((double)usedMem / (double)maxMem) : 0.0;
+            this.lastHeapCheckTime = now;
+        }
+        return this.lastHeapUsage;
+    }
+
+    /**
+    *** Adds a listener whose active sessions and backlog count toward the limits
+    *** @param sst  The listener
+    **/
+    public void addListener(ServerSocketThread sst)
+    {
+        if ((sst != null) && !this.listeners.contains(sst)) {
+            this.listeners.add(sst);
+        }
+    }
+
+    /**
+    *** Removes a listener (ie. when the listener is shut down)
+    *** @param sst  The listener
+    **/
+    public void removeListener(ServerSocketThread sst)
+    {
+        this.listeners.remove(sst);
+    }
+
+    /**
+    *** Checks whether a new client should be admitted, based on the total number of
+    *** active sessions and backlog of all listeners using this controller
+    *** @return ADMIT, or the rejection reason
+    **/
+    public int checkAdmission()
+    {
+        int activeSessions = 0, backlog = 0;
+        ServerSocketThread sst[] = this.listeners.toArray(new ServerSocketThread[0]);
+        for (int i = 0; i < sst.length; i++) {
+            activeSessions += sst[i].getActiveSessionCount();
+            backlog        += sst[i].getSessionBacklog();
+        }
+        return this.checkAdmission(activeSessions, backlog);
+    }
+
+    /**
+    *** Checks whether a new client should be admitted
+    *** @param activeSessions  The current number of active sessions
+    *** @param backlog         The current number of clients waiting for a session
+    *** @return ADMIT, or the rejection reason
+    **/
+    public int checkAdmission(int activeSessions, int backlog)
+    {
+        int result = ADMIT;
+        if ((this.maxActiveSessions > 0) && (activeSessions >= this.maxActiveSessions)) {
+            result = REJECT_SESSIONS;
+        } else
+        if ((this.maxBacklog > 0) && (backlog >= this.maxBacklog)) {
+            result = REJECT_BACKLOG;
+        } else
+        if ((this.maxHeapUsage > 0.0) && (this.getHeapUsage() >= this.maxHeapUsage)) {
+            result = REJECT_MEMORY;
+        }
+        this.recordResult(result);
+        return result;
+    }
+
+    /**
+    *** Records the result of an admission check made by the caller
+    *** @param result  ADMIT, or the rejection reason
+    **/
+    public void recordResult(int result)
+    {
+        int prevResult;
+        synchronized (this) {
+            if ((result > ADMIT) && (result < REASON_COUNT)) {
+                this.rejectCount[result]++;
+            }
+            prevResult = this.lastResult;
+            this.lastResult = result;
+        }
+        // log transitions only (rejections may occur at a very high rate)
+        if (result != prevResult) {
+            if (result != ADMIT) {
+                Print.logWarn("Rejecting new clients: " + getReasonDescription(result));
+            } else {
+                Print.logInfo("Admitting new clients (was rejecting: " + getReasonDescription(prevResult) + ")");
+            }
+        }
+    }
+
+    // ------------------------------------------------------------------------
+
+    /**
+    *** Gets the number of clients rejected for the specified reason
+    *** @param reason  The rejection reason
+    *** @return The number of rejected clients
+    **/
+    public synchronized long getRejectCount(int reason)
+    {
+        return ((reason > ADMIT) && (reason < REASON_COUNT))? this.rejectCount[reason] : 0L;
+    }
+
+    /**
+    *** Gets the total number of rejected clients
+    *** @return The total number of rejected clients
+    **/
+    public synchronized long getRejectCount()
+    {
+        long total = 0L;
+        for (int i = 0; i < this.rejectCount.length; i++) {
+            total += this.rejectCount[i];
+        }
+        return total;
+    }
+
+}
@@ -0,0 +1,142 @@
+// ----------------------------------------------------------------------------
+// Copyright 2006-2010, GeoTelematic Solutions, Inc.
+// All rights reserved
+// ----------------------------------------------------------------------------
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+// http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+//
+// ----------------------------------------------------------------------------
+// Description:
+//  Pool of fixed-size reusable ByteBuffers
+// ----------------------------------------------------------------------------
+// Change History:
+//  2026/10/17
+//     -Initial release
+// ----------------------------------------------------------------------------
+package org.opengts.util;
+
+import java.util.*;
+import java.nio.*;
+
+/**
+*** A pool of fixed-size (optionally direct) ByteBuffers.<br>
+*** Buffers are obtained with <code>acquire</code> and must be returned with
+*** <code>release</code> once the caller has finished with the contents.  At most
+*** 'maxPooled' released buffers are retained, any others are left to the garbage
+*** collector.  If the pool is empty, a new buffer is allocated.
+**/
+
+public class ByteBufferPool
+{
+
+    // ------------------------------------------------------------------------
+
+    private int                     bufferSize      = 0;
+    private boolean                 isDirect        = false;
+    private int                     maxPooled       = 0;
+
+    private LinkedList<ByteBuffer>  freeList        = new LinkedList<ByteBuffer>();
+    private long                    allocCount      = 0L;
+
+    /**
+    *** Constructor
+    *** @param bufferSize  The size of each buffer
+    *** @param maxPooled   The maximum number of released buffers retained
+    *** @param isDirect    True to allocate direct buffers
+    **/
+    public ByteBufferPool(int bufferSize, int maxPooled, boolean isDirect)
+    {
+        this.bufferSize = (bufferSize > 0)? bufferSize : 1;
+        this.maxPooled  = (maxPooled  > 0)? maxPooled  : 0;
+        this.isDirect   = isDirect;
+    }
+
+    // ------------------------------------------------------------------------
+
+    /**
+    *** Gets the size of the buffers in this pool
+    *** @return The buffer size
+    **/
+    public int getBufferSize()
+    {
+        return this.bufferSize;
+    }
+
+    /**
+    *** Returns true if this pool allocates direct buffers
+    *** @return True if this pool allocates direct buffers
+    **/
+    public boolean isDirect()
+    {
+        return this.isDirect;
+    }
+
+    /**
+    *** Gets the number of buffers currently available in the pool
+    *** @return The number of available buffers
+    **/
+    public int getAvailableCount()
+    {
+        synchronized (this.freeList) {
+            return this.freeList.size();
+        }
+    }
+
+    /**
+    *** Gets the total number of buffers allocated by this pool
+    *** @return The number of allocated buffers
+    **/
+    public long getAllocatedCount()
+    {
+        synchronized (this.freeList) {
+            return this.allocCount;
+        }
+    }
+
+    // ------------------------------------------------------------------------
+
+    /**
+    *** Obtains a cleared buffer from the pool (allocating a new buffer if necessary)
+    *** @return The buffer
+    **/
+    public ByteBuffer acquire()
+    {
+        synchronized (this.freeList) {
+            if (!this.freeList.isEmpty()) {
+                ByteBuffer bb = this.freeList.removeLast();
+                bb.clear();
+                return bb;
+            }
+            this.allocCount++;
+        }
+        return this.isDirect?
+            ByteBuffer.allocateDirect(this.bufferSize) :
+            ByteBuffer.allocate(this.bufferSize);
+    }
+
+    /**
+    *** Returns the specified buffer to the pool
+    *** @param bb  The buffer to return (buffers not allocated by this pool are ignored)
+    **/
+    public void release(ByteBuffer bb)
+    {
+        if ((bb != null) && (bb.capacity() == this.bufferSize) && (bb.isDirect() == this.isDirect)) {
+            synchronized (this.freeList) {
+                if (this.freeList.size() < this.maxPooled) {
+                    this.freeList.add(bb);
+                }
+            }
+        }
+    }
+
+}
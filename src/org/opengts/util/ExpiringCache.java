@@ -0,0 +1,188 @@
+// ----------------------------------------------------------------------------
+// Copyright 2006-2010, GeoTelematic Solutions, Inc.
+// All rights reserved
+// ----------------------------------------------------------------------------
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+// http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+//
+// ----------------------------------------------------------------------------
+// Description:
+//  Size bounded cache with idle-time expiration
+// ----------------------------------------------------------------------------
+// Change History:
+//  2026/10/17
+//     -Initial release
+// ----------------------------------------------------------------------------
+package org.opengts.util;
+
+import java.util.*;
+
+/**
+*** A size bounded LRU cache whose entries expire when they have not been accessed
+*** within the idle timeout.<br>
+*** When the cache is full, the least recently accessed entry is evicted.  Expired
+*** entries are never returned, and are purged as new entries are added.
+**/
+
+public class ExpiringCache<K,V>
+{
+
+    // ------------------------------------------------------------------------
+
+    private static class Entry<V>
+    {
+        private V    value      = null;
+        private long accessTime = 0L;
+        public Entry(V value, long accessTime) {
+            this.value      = value;
+            this.accessTime = accessTime;
+        }
+    }
+
+    // ------------------------------------------------------------------------
+
+    private int                         maxSize         = 0;
+    private long                        idleTimeoutMS   = 0L;
+    private LinkedHashMap<K,Entry<V>>   cacheMap        = null;
+
+    /**
+    *** Constructor
+    *** @param maxSize        The maximum number of entries
+    *** @param idleTimeoutMS  The time after which an unaccessed entry expires
+    ***                       (<= 0 for no idle expiration)
+    **/
+    public ExpiringCache(int maxSize, long idleTimeoutMS)
+    {
+        this.maxSize       = (maxSize > 0)? maxSize : 1;
+        this.idleTimeoutMS = idleTimeoutMS;
+        this.cacheMap      = new LinkedHashMap<K,Entry<V>>(16, 0.75F, true) { // access order
+            protected boolean removeEldestEntry(Map.Entry<K,Entry<V>> eldest) {
+                return (this.size() > ExpiringCache.this.maxSize);
+            }
+        };
+    }
+
+    // ------------------------------------------------------------------------
+
+    /**
+    *** Gets the maximum number of entries
+    *** @return The maximum number of entries
+    **/
+    public int getMaximumSize()
+    {
+        return this.maxSize;
+    }
+
+    /**
+    *** Gets the idle timeout
+    *** @return The idle timeout in milliseconds
+    **/
+    public long getIdleTimeout()
+    {
+        return this.idleTimeoutMS;
+    }
+
+    /**
+    *** Returns true if the specified entry access time has expired
+    **/
+    private boolean _isExpired(Entry<V> entry, long nowMS)
+    {
+        return (this.idleTimeoutMS > 0L) && ((nowMS - entry.accessTime) >= this.idleTimeoutMS);
+    }
+
+    // ------------------------------------------------------------------------
+
+    /**
+    *** Gets the cached value for the specified key
+    *** @param key  The key
+    *** @return The cached value, or null if not cached or expired
+    **/
+    public synchronized V get(K key)
+    {
+        Entry<V> entry = this.cacheMap.get(key);
+        if (entry == null) {
+            return null;
+        }
+        long nowMS = DateTime.getCurrentTimeMillis();
+        if (this._isExpired(entry, nowMS)) {
+            this.cacheMap.remove(key);
+            return null;
+        }
+        entry.accessTime = nowMS;
+        return entry.value;
+    }
+
+    /**
+    *** Removes and returns the cached value for the specified key
+    *** @param key  The key
+    *** @return The removed value, or null if not cached or expired
+    **/
+    public synchronized V remove(K key)
+    {
+        Entry<V> entry = this.cacheMap.remove(key);
+        if ((entry == null) || this._isExpired(entry, DateTime.getCurrentTimeMillis())) {
+            return null;
+        }
+        return entry.value;
+    }
+
+    /**
+    *** Adds the specified value to the cache (replacing any existing value)
+    *** @param key    The key
+    *** @param value  The value
+    **/
+    public synchronized void put(K key, V value)
+    {
+        long nowMS = DateTime.getCurrentTimeMillis();
+        this._purgeExpired(nowMS);
+        this.cacheMap.put(key, new Entry<V>(value, nowMS));
+    }
+
+    /**
+    *** Removes all entries
+    **/
+    public synchronized void clear()
+    {
+        this.cacheMap.clear();
+    }
+
+    /**
+    *** Gets the number of entries in the cache (may include expired entries not yet purged)
+    *** @return The number of entries
+    **/
+    public synchronized int size()
+    {
+        return this.cacheMap.size();
+    }
+
+    /**
+    *** Removes all expired entries
+    **/
+    public synchronized void purgeExpired()
+    {
+        this._purgeExpired(DateTime.getCurrentTimeMillis());
+    }
+
+    private void _purgeExpired(long nowMS)
+    {
+        // entries are in access order, stop at the first unexpired entry
+        for (Iterator<Entry<V>> i = this.cacheMap.values().iterator(); i.hasNext();) {
+            if (this._isExpired(i.next(), nowMS)) {
+                i.remove();
+            } else {
+                break;
+            }
+        }
+    }
+
+}
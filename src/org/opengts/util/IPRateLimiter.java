@@ -0,0 +1,197 @@
+// ----------------------------------------------------------------------------
+// Copyright 2006-2010, GeoTelematic Solutions, Inc.
+// All rights reserved
+// ----------------------------------------------------------------------------
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+// http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+//
+// ----------------------------------------------------------------------------
+// Description:
+//  Per source address connection rate limiting
+// ----------------------------------------------------------------------------
+// Change History:
+//  2026/10/17
+//     -Initial release
+// ----------------------------------------------------------------------------
+package org.opengts.util;
+
+import java.util.*;
+import java.util.concurrent.atomic.*;
+import java.net.*;
+
+/**
+*** Lock-free, fixed memory, per source address token buckets.<br>
+*** Each address hashes to one bucket in each of 'depth' rows of 'width' buckets
+*** (a count-min sketch), so memory use is independent of the number of addresses.
+*** A bucket holds a single "theoretical arrival time" (the equivalent "generic
+*** cell rate" form of a token bucket), updated with compare-and-set.  Addresses
+*** sharing a bucket share its tokens, so a connection is allowed when the least
+*** loaded of its buckets conforms (collisions can only cause an address to be
+*** limited less, never more, than configured).
+**/
+
+public class IPRateLimiter
+{
+
+    // ------------------------------------------------------------------------
+
+    public  static final int    DFT_WIDTH               = 4096;
+    public  static final int    DFT_DEPTH               = 3;
+
+    private static final int    SEEDS[]                 = { 0x9E3779B9, 0x85EBCA6B, 0xC2B2AE35, 0x27D4EB2F, 0x165667B1 };
+
+    // ------------------------------------------------------------------------
+
+    private AtomicLongArray     buckets                 = null; // theoretical arrival time (microseconds)
+    private int                 width                   = 0;
+    private int                 depth                   = 0;
+    private int                 mask                    = 0;
+
+    private long                intervalUS              = 0L;   // microseconds per token
+    private long                burstUS                 = 0L;   // burst tolerance
+    private long                startNanos              = 0L;
+
+    private AtomicLong          allowCount              = new AtomicLong(0L);
+    private AtomicLong          rejectCount             = new AtomicLong(0L);
+
+    /**
+    *** Constructor
+    *** @param ratePerSec  The sustained number of connections allowed per second, per address
+    *** @param burst       The number of connections allowed in a burst, per address
+    **/
+    public IPRateLimiter(double ratePerSec, int burst)
+    {
+        this(ratePerSec, burst, DFT_WIDTH, DFT_DEPTH);
+    }
+
+    /**
+    *** Constructor
+    *** @param ratePerSec  The sustained number of connections allowed per second, per address
+    *** @param burst       The number of connections allowed in a burst, per address
+    *** @param width       The number of buckets per row (rounded up to a power of 2)
+    *** @param depth       The number of rows [1..5]
+    **/
+    public IPRateLimiter(double ratePerSec, int burst, int width, int depth)
+    {
+        int w = 1;
+        while (w < width) { w <<= 1; }
+        this.width      = w;
+        this.mask       = w - 1;
+        this.depth      = (depth < 1)? 1 : (depth > SEEDS.length)? SEEDS.length : depth;
+        this.buckets    = new AtomicLongArray(this.width * this.depth);
+        this.intervalUS = (ratePerSec > 0.0)? Math.max(1L, (long)(1000000.0 / ratePerSec)) : 1000000L;
+        this.burstUS    = this.intervalUS * (long)((burst > 1)? (burst - 1) : 0);
+        this.startNanos = System.nanoTime();
+    }
+
+    // ------------------------------------------------------------------------
+
+    /**
+    *** Gets the number of allowed connections
+    *** @return The number of allowed connections
+    **/
+    public long getAllowCount()
+    {
+        return this.allowCount.get();
+    }
+
+    /**
+    *** Gets the number of rejected connections
+    *** @return The number of rejected connections
+    **/
+    public long getRejectCount()
+    {
+        return this.rejectCount.get();
+    }
+
+    /**
+    *** Gets the amount of memory used by the buckets
+    *** @return The bucket memory size in bytes
+    **/
+    public int getMemorySize()
+    {
+        return this.width * this.depth * 8;
+    }
+
+    // ------------------------------------------------------------------------
+
+    /**
+    *** Returns the bucket index of the specified key in the specified row
+    **/
+    private int _index(byte key[], int row)
+    {
+        int h = SEEDS[row];
+        for (int i = 0; i < key.length; i++) {
+            h ^= (key[i] & 0xFF);
+            h *= 0x01000193; // FNV prime
+        }
+        // final avalanche (murmur3 fmix)
+        h ^= (h >>> 16);
+        h *= 0x85EBCA6B;
+        h ^= (h >>> 13);
+        h *= 0xC2B2AE35;
+        h ^= (h >>> 16);
+        return (row * this.width) + (h & this.mask);
+    }
+
+    /**
+    *** Takes a token for the specified address
+    *** @param ipAddr  The source address
+    *** @return True if the connection is allowed, false if the address has exceeded its rate
+    **/
+    public boolean tryAcquire(InetAddress ipAddr)
+    {
+        if (ipAddr == null) {
+            return true; // unknown source
+        }
+        return this.tryAcquire(ipAddr.getAddress());
+    }
+
+    /**
+    *** Takes a token for the specified key
+    *** @param key  The key bytes (ie. the source address)
+    *** @return True if the connection is allowed, false if the key has exceeded its rate
+    **/
+    public boolean tryAcquire(byte key[])
+    {
+        long now = (System.nanoTime() - this.startNanos) / 1000L;
+
+        /* find the least loaded bucket */
+        int  ndx[]  = new int[this.depth];
+        long minTAT = Long.MAX_VALUE;
+        for (int r = 0; r < this.depth; r++) {
+            ndx[r] = this._index(key, r);
+            long tat = this.buckets.get(ndx[r]);
+            if (tat < minTAT) { minTAT = tat; }
+        }
+        if ((Math.max(minTAT, now) - now) > this.burstUS) {
+            this.rejectCount.incrementAndGet();
+            return false;
+        }
+
+        /* take a token from each bucket */
+        for (int r = 0; r < this.depth; r++) {
+            while (true) {
+                long tat = this.buckets.get(ndx[r]);
+                long newTAT = Math.max(tat, now) + this.intervalUS;
+                if (this.buckets.compareAndSet(ndx[r], tat, newTAT)) {
+                    break;
+                }
+            }
+        }
+        this.allowCount.incrementAndGet();
+        return true;
+
+    }
+
+}
@@ -175,6 +175,67 @@ public class OSTools
     // ------------------------------------------------------------------------
     // ------------------------------------------------------------------------
 
+    private static boolean                  virtualThreadInit       = false;
+    private static java.lang.reflect.Method startVirtualThread      = null;
+
+    /**
+    *** Gets the "Thread.startVirtualThread" method, if supported by this JVM
+    **/
+    private static java.lang.reflect.Method _getStartVirtualThreadMethod()
+    {
+        synchronized (OSTools.LockObject) {
+            if (!OSTools.virtualThreadInit) {
+                OSTools.virtualThreadInit = true;
+                try {
+                    OSTools.startVirtualThread = Thread.class.getMethod("startVirtualThread", Runnable.class);
+                } catch (Throwable th) { // NoSuchMethodException
+                    // virtual threads not supported in this JVM
+                    OSTools.startVirtualThread = null;
+                }
+            }
+            return OSTools.startVirtualThread;
+        }
+    }
+
+    /**
+    *** Returns true if this JVM supports virtual threads
+    *** @return True if this JVM supports virtual threads
+    **/
+    public static boolean isVirtualThreadSupported()
+    {
+        return (OSTools._getStartVirtualThreadMethod() != null);
+    }
+
+    /**
+    *** Starts the specified Runnable in a new virtual thread.  If virtual threads are 
+    *** not supported by this JVM, a new platform thread is started instead.
+    *** @param job   The Runnable to start
+    *** @param name  The thread name
+    *** @return The started thread
+    **/
+    public static Thread startVirtualThread(Runnable job, String name)
+    {
+        java.lang.reflect.Method m = OSTools._getStartVirtualThreadMethod();
+        if (m != null) {
+            try {
+                Thread t = (Thread)m.invoke(null, new Object[] { job });
+                if (name != null) {
+                    t.setName(name);
+                }
+                return t;
+            } catch (Throwable th) {
+                Print.logException("Unable to start virtual thread", th);
+                // fall through
+            }
+        }
+        Thread t = (name != null)? new Thread(job, name) : new Thread(job);
+        t.start();
+        return t;
+    }
+
+    // ------------------------------------------------------------------------
+    // ------------------------------------------------------------------------
+
     /**
     *** Get the current memory usage (in number of bytes)
     *** @param L  The long array where the memory values will be placed.  If 'null',
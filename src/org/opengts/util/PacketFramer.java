@@ -0,0 +1,526 @@
+// ----------------------------------------------------------------------------
+// Copyright 2006-2010, GeoTelematic Solutions, Inc.
+// All rights reserved
+// ----------------------------------------------------------------------------
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+// http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+//
+// ----------------------------------------------------------------------------
+// Description:
+//  Buffered packet framing for 'ServerSocketThread' sessions
+// ----------------------------------------------------------------------------
+// Change History:
+//  2026/10/17
+//     -Initial release
+// ----------------------------------------------------------------------------
+package org.opengts.util;
+
+import java.io.*;
+import java.nio.*;
+import java.nio.channels.*;
+
+/**
+*** Slices complete packets from a buffer of received bytes.<br>
+*** Bytes are appended to an internal buffer in bulk (from a channel, stream, or
+*** byte array), and complete packets are then extracted using the same rules
+*** applied by <code>ServerSocketThread</code> when reading a byte at a time
+*** (ie. line terminators for text packets, and <code>getActualPacketLength</code>
+*** for binary packets).  Any number of packets may be extracted from a single read.
+*** A packet whose length is returned with <code>PACKET_LEN_EXTENDED_</code> or 
+*** <code>PACKET_LEN_EXTENDED_LINE_</code> may exceed the maximum packet length.
+**/
+
+public class PacketFramer
+{
+
+    // ------------------------------------------------------------------------
+
+    private static final int    DFT_BUFFER_SIZE         = 1024;
+
+    // ------------------------------------------------------------------------
+
+    private ClientPacketHandler clientHandler           = null;
+    private boolean             isTextPackets           = false;
+    private int                 minPacketLength         = 1;
+    private int                 maxPacketLength         = 1024;
+
+    private int                 lineTerminatorChar[]    = null;
+    private int                 backspaceChar[]         = null;
+    private int                 ignoreChar[]            = null;
+    private byte                packetTermPattern[]     = null;
+
+    /* received bytes not yet consumed */
+    private byte                input[]                 = null;
+    private int                 inputPos                = 0;
+    private int                 inputEnd                = 0;
+    private ByteBuffer          inputBuffer             = null;
+
+    /* packet currently being assembled */
+    private byte                packet[]                = null;
+    private int                 packetLen               = 0;
+    private boolean             packetStarted           = false;
+    private int                 minLen                  = 0;
+    private int                 maxLen                  = 0;
+    private int                 actualLen               = 0;
+    private boolean             isTextLine              = false;
+    private int                 pktState                = 0;
+
+    /**
+    *** Constructor
+    *** @param handler   The client packet handler (used to obtain actual packet lengths)
+    *** @param isText    True if packets are text lines
+    *** @param minLen    The minimum packet length
+    *** @param maxLen    The maximum packet length
+    **/
+    public PacketFramer(ClientPacketHandler handler, boolean isText, int minLen, int maxLen)
+    {
+        this(handler, isText, minLen, maxLen, DFT_BUFFER_SIZE);
+    }
+
+    /**
+    *** Constructor
+    *** @param handler   The client packet handler (used to obtain actual packet lengths)
+    *** @param isText    True if packets are text lines
+    *** @param minLen    The minimum packet length
+    *** @param maxLen    The maximum packet length
+    *** @param buffSize  The initial size of the receive buffer
+    **/
+    public PacketFramer(ClientPacketHandler handler, boolean isText, int minLen, int maxLen, int buffSize)
+    {
+        this.clientHandler   = handler;
+        this.isTextPackets   = isText;
+        this.maxPacketLength = (maxLen > 0)? maxLen : 1024;
+        this.minPacketLength = (minLen > 0)? minLen : 1;
+        this.input           = new byte[Math.max(buffSize, this.maxPacketLength)];
+        this.packet          = new byte[this.maxPacketLength];
+        this._resetPacket();
+    }
+
+    /**
+    *** Resets this framer for a new session, discarding any buffered data.
+    *** The receive buffer is retained for reuse.
+    *** @param handler   The client packet handler (used to obtain actual packet lengths)
+    *** @param isText    True if packets are text lines
+    *** @param minLen    The minimum packet length
+    *** @param maxLen    The maximum packet length
+    **/
+    public void reset(ClientPacketHandler handler, boolean isText, int minLen, int maxLen)
+    {
+        this.clientHandler   = handler;
+        this.isTextPackets   = isText;
+        this.maxPacketLength = (maxLen > 0)? maxLen : 1024;
+        this.minPacketLength = (minLen > 0)? minLen : 1;
+        if (this.input.length < this.maxPacketLength) {
+            this.input       = new byte[this.maxPacketLength];
+            this.inputBuffer = null;
+        }
+        if (this.packet.length < this.maxPacketLength) {
+            this.packet      = new byte[this.maxPacketLength];
+        }
+        this.inputPos = 0;
+        this.inputEnd = 0;
+        this._resetPacket();
+    }
+
+    // ------------------------------------------------------------------------
+
+    /**
+    *** Sets the line terminator characters
+    *** @param term The line terminator characters
+    **/
+    public void setLineTerminatorChar(int term[])
+    {
+        this.lineTerminatorChar = term;
+    }
+
+    /**
+    *** Sets the backspace characters (null if backspaces are not supported)
+    *** @param bs The backspace characters
+    **/
+    public void setBackspaceChar(int bs[])
+    {
+        this.backspaceChar = bs;
+    }
+
+    /**
+    *** Sets the characters to ignore
+    *** @param ic The characters to ignore
+    **/
+    public void setIgnoreChar(int ic[])
+    {
+        this.ignoreChar = ic;
+    }
+
+    /**
+    *** Sets the packet terminator pattern (binary packets only)
+    *** @param pktTerm The packet terminator pattern
+    **/
+    public void setPacketTerminatorPattern(byte pktTerm[])
+    {
+        this.packetTermPattern = !ListTools.isEmpty(pktTerm)? pktTerm : null;
+    }
+
+    private static boolean _contains(int list[], int ch)
+    {
+        if ((list != null) && (ch >= 0)) {
+            for (int i = 0; i < list.length; i++) {
+                if (list[i] == ch) {
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+
+    // ------------------------------------------------------------------------
+
+    /**
+    *** Reads as many bytes as are currently available from the specified channel
+    *** @param channel  The channel from which bytes are read
+    *** @return The number of bytes read, or -1 if the end of stream has been reached
+    **/
+    public int read(ReadableByteChannel channel)
+        throws IOException
+    {
+        this._makeRoom(1);
+        if (this.inputBuffer == null) {
+            this.inputBuffer = ByteBuffer.wrap(this.input);
+        }
+        this.inputBuffer.limit(this.input.length);
+        this.inputBuffer.position(this.inputEnd);
+        int n = channel.read(this.inputBuffer);
+        if (n > 0) {
+            this.inputEnd += n;
+        }
+        return n;
+    }
+
+    /**
+    *** Reads as many bytes as will fit in the receive buffer from the specified stream.
+    *** This call blocks until at least one byte is available (or the stream timeout
+    *** expires).
+    *** @param input  The stream from which bytes are read
+    *** @return The number of bytes read, or -1 if the end of stream has been reached
+    **/
+    public int read(InputStream input)
+        throws IOException
+    {
+        this._makeRoom(1);
+        int n = input.read(this.input, this.inputEnd, this.input.length - this.inputEnd);
+        if (n > 0) {
+            this.inputEnd += n;
+        }
+        return n;
+    }
+
+    /**
+    *** Appends the specified bytes to the receive buffer
+    *** @param b    The byte array
+    *** @param ofs  The offset of the first byte to append
+    *** @param len  The number of bytes to append
+    **/
+    public void put(byte b[], int ofs, int len)
+    {
+        if ((b != null) && (len > 0)) {
+            this._makeRoom(len);
+            System.arraycopy(b, ofs, this.input, this.inputEnd, len);
+            this.inputEnd += len;
+        }
+    }
+
+    /**
+    *** Appends the remaining bytes in the specified buffer to the receive buffer
+    *** @param bb   The byte buffer
+    **/
+    public void put(ByteBuffer bb)
+    {
+        int len = (bb != null)? bb.remaining() : 0;
+        if (len > 0) {
+            this._makeRoom(len);
+            bb.get(this.input, this.inputEnd, len);
+            this.inputEnd += len;
+        }
+    }
+
+    /**
+    *** Ensures that the receive buffer can hold at least 'len' more bytes
+    **/
+    private void _makeRoom(int len)
+    {
+        if (this.inputPos == this.inputEnd) {
+            // everything has been consumed, start over at the beginning of the buffer
+            this.inputPos = 0;
+            this.inputEnd = 0;
+        }
+        if ((this.input.length - this.inputEnd) >= len) {
+            // already have room
+            return;
+        }
+        int avail = this.inputEnd - this.inputPos;
+        if ((this.input.length - avail) >= len) {
+            // shift unconsumed bytes to the start of the buffer
+            System.arraycopy(this.input, this.inputPos, this.input, 0, avail);
+        } else {
+            // grow the buffer
+            byte newInput[] = new byte[Math.max(this.input.length * 2, avail + len)];
+            System.arraycopy(this.input, this.inputPos, newInput, 0, avail);
+            this.input = newInput;
+            this.inputBuffer = null;
+        }
+        this.inputPos = 0;
+        this.inputEnd = avail;
+    }
+
+    /**
+    *** Gets the number of received bytes which have not yet been consumed
+    *** @return The number of unconsumed bytes
+    **/
+    public int getBufferedLength()
+    {
+        return this.inputEnd - this.inputPos;
+    }
+
+    // ------------------------------------------------------------------------
+
+    /**
+    *** Returns true if at least one byte of the next packet has been received
+    *** @return True if a packet is in progress
+    **/
+    public boolean isPacketStarted()
+    {
+        return this.packetStarted;
+    }
+
+    /**
+    *** Gets the number of bytes saved so far in the packet currently being assembled
+    *** @return The current packet byte index
+    **/
+    public int getPacketByteIndex()
+    {
+        return this.packetLen;
+    }
+
+    /**
+    *** Returns a hex representation of the partial packet (for logging)
+    *** @return The partial packet as a String
+    **/
+    public String getPartialPacketString()
+    {
+        if (this.isTextPackets) {
+            return StringTools.toStringValue(this.packet, 0, this.packetLen);
+        } else {
+            return StringTools.toHexString(this.packet, 0, this.packetLen);
+        }
+    }
+
+    /**
+    *** Returns the bytes of the packet currently being assembled, and resets
+    *** the packet state.  Used when the packet is to be returned as-is (such as
+    *** at the end of a UDP datagram, or on a read timeout).
+    *** @return The partial packet
+    **/
+    public byte[] flushPacket()
+    {
+        byte p[] = new byte[this.packetLen];
+        System.arraycopy(this.packet, 0, p, 0, this.packetLen);
+        this._resetPacket();
+        return p;
+    }
+
+    private void _resetPacket()
+    {
+        this.packetLen     = 0;
+        this.packetStarted = false;
+        this.minLen        = this.minPacketLength;
+        this.maxLen        = this.maxPacketLength;
+        this.actualLen     = 0;
+        this.isTextLine    = false;
+        this.pktState      = 0;
+    }
+
+    // ------------------------------------------------------------------------
+
+    /**
+    *** Returns the next complete packet from the receive buffer, or null if
+    *** more bytes are required to complete the packet.
+    *** @return The next complete packet, or null
+    **/
+    public byte[] nextPacket()
+    {
+        boolean done = this.isTextPackets? this._frameLine() : this._framePacket();
+        if (done) {
+            return this.flushPacket();
+        } else {
+            return null;
+        }
+    }
+
+    /* text packet: read until EOL (see "ServerSessionThread.readLine") */
+    private boolean _frameLine()
+    {
+        while (this.inputPos < this.inputEnd) {
+            int ch = (int)this.input[this.inputPos++] & 0xFF;
+            this.packetStarted = true;
+
+            /* check special characters */
+            if (_contains(this.lineTerminatorChar, ch)) {
+                // end of line (typically '\n')
+                return true;
+            } else
+            if (_contains(this.ignoreChar, ch)) {
+                // ignore this character (typically '\r')
+                continue;
+            } else
+            if (_contains(this.backspaceChar, ch)) {
+                if (this.packetLen > 0) {
+                    this.packetLen--;
+                }
+                continue;
+            } else
+            if (ch < ' ') {
+                // ignore non-printable characters
+                if (ch != '\t') { // keep tab chars
+                    continue;
+                }
+            }
+
+            /* save byte */
+            this.packet[this.packetLen++] = (byte)ch;
+            if (this.packetLen >= this.maxPacketLength) {
+                // we've read all the bytes we can
+                return true;
+            }
+
+        }
+        return false;
+    }
+
+    /* binary packet: read until actual length (see "ServerSessionThread.readPacket") */
+    private boolean _framePacket()
+    {
+        while (this.inputPos < this.inputEnd) {
+            int maxLen = this.maxLen;
+            int lastByte = (int)this.input[this.inputPos++] & 0xFF;
+            this.packetStarted = true;
+
+            /* look for line terminator? */
+            if (this.isTextLine) {
+                if (_contains(this.lineTerminatorChar, lastByte)) {
+                    // end of line (typically '\n')
+                    return true;
+                } else
+                if (_contains(this.ignoreChar, lastByte)) {
+                    // ignore this character (typically '\r')
+                    continue;
+                }
+            }
+            this.packet[this.packetLen++] = (byte)lastByte;
+
+            /* check packet completion */
+            if (this.packetLen >= maxLen) {
+                // we've read all the bytes we can
+                return true;
+            } else
+            if (this.packetTermPattern != null) {
+                // check packet termination pattern
+                if (this.packetTermPattern[this.pktState] == (byte)lastByte) {
+                    this.pktState++;
+                    if (this.pktState >= this.packetTermPattern.length) {
+                        // we've matched the packet terminating pattern
+                        return true;
+                    }
+                } else {
+                    // back to initial state
+                    this.pktState = 0;
+                }
+            } else
+            if ((this.actualLen > 0) && (this.packetLen >= this.actualLen)) {
+                // we've read the bytes we expected to read
+                return true;
+            } else
+            if ((this.clientHandler != null) && (this.actualLen <= 0) && (this.packetLen >= this.minLen)) {
+                // get the actual/next expected packet length
+                int     pktLen  = this.clientHandler.getActualPacketLength(this.packet, this.packetLen);
+                int     extFlag = ServerSocketThread.PACKET_LEN_EXTENDED_ | ServerSocketThread.PACKET_LEN_EXTENDED_LINE_;
+                if ((pktLen > 0) && ((pktLen & extFlag) != 0)) {
+                    // the packet may exceed the maximum length
+                    int extLen = pktLen & 0xFFFF;
+                    if (extLen > this.maxLen) {
+                        this._extendPacket(extLen);
+                    }
+                    if ((pktLen & ServerSocketThread.PACKET_LEN_EXTENDED_LINE_) == 0) {
+                        pktLen = extLen; // actual length
+                    } else
+                    if (_contains(this.lineTerminatorChar, lastByte)) {
+                        // last byte was already a line terminator
+                        this.packetLen--; // remove terminator
+                        return true;
+                    } else {
+                        this.actualLen  = this.maxLen;
+                        this.isTextLine = true;
+                        continue;
+                    }
+                    maxLen = this.maxLen;
+                }
+                boolean actual  = (pktLen < ServerSocketThread.PACKET_LEN_INCREMENTAL_);
+                int     nextLen = actual? pktLen : (pktLen & 0xFFFF);
+                if (nextLen == this.packetLen) {
+                    // already have exactly what we need
+                    return true;
+                } else
+                if (nextLen == ServerSocketThread.PACKET_LEN_ASCII_LINE_TERMINATOR) {
+                    if (_contains(this.lineTerminatorChar, lastByte)) {
+                        // last byte was already a line terminator
+                        this.packetLen--; // remove terminator
+                        return true;
+                    } else {
+                        this.actualLen  = maxLen;
+                        this.isTextLine = true;
+                    }
+                } else
+                if (nextLen <= ServerSocketThread.PACKET_LEN_END_OF_STREAM) {
+                    // read the rest of the stream
+                    this.actualLen = maxLen;
+                } else
+                if (nextLen > maxLen) {
+                    // specified length is greater that the maximum
+                    Print.logStackTrace("Actual length [" + nextLen + "] > Maximum length [" + maxLen + "]");
+                    this.actualLen = maxLen;
+                } else
+                if (actual) {
+                    // read until actual size
+                    this.actualLen = nextLen;
+                } else {
+                    // reset minimum to next length
+                    this.minLen = nextLen;
+                }
+            }
+
+        }
+        return false;
+    }
+
+    /* raise the maximum length of the current packet */
+    private void _extendPacket(int len)
+    {
+        if (this.packet.length < len) {
+            byte newPacket[] = new byte[len];
+            System.arraycopy(this.packet, 0, newPacket, 0, this.packetLen);
+            this.packet = newPacket;
+        }
+        this.maxLen = len;
+    }
+
+    // ------------------------------------------------------------------------
+
+}
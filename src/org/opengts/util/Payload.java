@@ -243,6 +243,19 @@ public class Payload
         }
     }
     
+    /**
+    *** Copies the data currently in the payload into the specified buffer (at the 
+    *** buffer's current position)
+    *** @param bb  The destination buffer
+    *** @return The number of bytes copied
+    **/
+    public int getBytes(java.nio.ByteBuffer bb)
+    {
+        // copy the full payload (regardless of the state of 'this.index')
+        bb.put(this._getBytes(), 0, this.size);
+        return this.size;
+    }
+    
     // ------------------------------------------------------------------------
 
     /**
@@ -60,10 +60,15 @@ package org.opengts.util;
 import java.io.*;
 import java.util.*;
 import java.net.*;
+import java.nio.*;
+import java.nio.channels.*;
 import java.awt.event.*;
 import javax.net.*;
 
 import javax.net.ssl.SSLServerSocketFactory;
+import javax.net.ssl.SSLSocket;
+import javax.net.ssl.SSLContext;
+import javax.net.ssl.SSLEngine;
 
 public class ServerSocketThread
     extends Thread
@@ -90,6 +95,8 @@ public class ServerSocketThread
     public static final int         PACKET_LEN_MATCH_PATTERN            = -3; // not yet supported
 
     public static final int         PACKET_LEN_INCREMENTAL_             = 0x00010000;
+    public static final int         PACKET_LEN_EXTENDED_                = 0x00020000; // actual length, may exceed the maximum
+    public static final int         PACKET_LEN_EXTENDED_LINE_           = 0x00040000; // line terminated, up to the length
 
     // ------------------------------------------------------------------------
 
@@ -214,6 +221,72 @@ public class ServerSocketThread
         return ServerSocketThread.createDatagramSocket((InetAddress)null, port);
     }
 
+    /**
+    *** Creates 'count' DatagramChannels bound to the same local port with SO_REUSEPORT,
+    *** allowing the kernel to distribute incoming datagrams across the channels.  If
+    *** SO_REUSEPORT is not supported by this JVM/platform, a single DatagramChannel is
+    *** returned (which may be shared by multiple receiver threads).
+    *** @param bindAddr  The local bind address (null for the default bind address)
+    *** @param port      The local port
+    *** @param count     The number of DatagramChannels to create
+    *** @return The created DatagramChannels
+    **/
+    public static DatagramChannel[] createDatagramChannels(InetAddress bindAddr, int port, int count)
+        throws IOException
+    {
+        InetAddress bind = (bindAddr != null)? bindAddr : ServerSocketThread.getDefaultBindAddress();
+        SocketAddress sa = (bind != null)? new InetSocketAddress(bind,port) : new InetSocketAddress(port);
+        java.util.List<DatagramChannel> dcList = new Vector<DatagramChannel>();
+        try {
+            for (int i = 0; i < ((count > 1)? count : 1); i++) {
+                DatagramChannel dc = DatagramChannel.open();
+                if (!ServerSocketThread._setReusePort(dc)) {
+                    if (i == 0) {
+                        // SO_REUSEPORT not supported, use a single channel
+                        Print.logWarn("SO_REUSEPORT not supported (a single DatagramChannel will be shared)");
+                        dc.socket().bind(sa);
+                        dcList.add(dc);
+                    } else {
+                        dc.close();
+                    }
+                    break;
+                }
+                dc.socket().bind(sa);
+                dcList.add(dc);
+            }
+        } catch (IOException ioe) {
+            for (Iterator<DatagramChannel> i = dcList.iterator(); i.hasNext();) {
+                try { i.next().close(); } catch (IOException e) {}
+            }
+            throw ioe;
+        }
+        return dcList.toArray(new DatagramChannel[dcList.size()]);
+    }
+
+    /**
+    *** Sets the SO_REUSEPORT option on the specified (unbound) channel.  Reflection is
+    *** used since this option is not available on all JVMs.
+    *** @param channel  The unbound channel
+    *** @return True if SO_REUSEPORT was set
+    **/
+    private static boolean _setReusePort(Object channel)
+    {
+        try {
+            Class<?> netChannel = Class.forName("java.nio.channels.NetworkChannel");
+            Class<?> optClass   = Class.forName("java.net.SocketOption");
+            Object   reusePort  = Class.forName("java.net.StandardSocketOptions").getField("SO_REUSEPORT").get(null);
+            java.lang.reflect.Method supported = netChannel.getMethod("supportedOptions", new Class[0]);
+            if (!((Set)supported.invoke(channel, new Object[0])).contains(reusePort)) {
+                return false;
+            }
+            java.lang.reflect.Method setOpt = netChannel.getMethod("setOption", new Class[] { optClass, Object.class });
+            setOpt.invoke(channel, new Object[] { reusePort, Boolean.TRUE });
+            return true;
+        } catch (Throwable th) { // ClassNotFoundException, NoSuchFieldException, etc
+            return false;
+        }
+    }
+
     // ------------------------------------------------------------------------
 
     /**
@@ -227,6 +300,57 @@ public class ServerSocketThread
         return new ServerSocket(port, ListenBacklog, bind);
     }
 
+    /**
+    *** Creates a ServerSocket bound to the default local interface.  The receive buffer
+    *** size is set before binding, so that accepted sockets inherit it and buffers
+    *** larger than 64K can negotiate TCP window scaling.
+    *** @param receiveBufferSize  The receive buffer size (<= 0 for the OS default)
+    *** @param useSSL  True to create an SSLServerSocket
+    *** @return The created ServerSocket
+    **/
+    public static ServerSocket createServerSocket(InetAddress bindAddr, int port, int receiveBufferSize, boolean useSSL)
+        throws IOException
+    {
+        InetAddress bind = (bindAddr != null)? bindAddr : ServerSocketThread.getDefaultBindAddress();
+        ServerSocket ss = useSSL?
+            SSLServerSocketFactory.getDefault().createServerSocket() :
+            ServerSocketFactory   .getDefault().createServerSocket();
+        if (receiveBufferSize > 0) {
+            ss.setReceiveBufferSize(receiveBufferSize);
+        }
+        ss.bind(new InetSocketAddress(bind, port), ListenBacklog);
+        return ss;
+    }
+
+    /**
+    *** Creates a ServerSocketChannel bound to the default local interface
+    *** @return The created ServerSocketChannel
+    **/
+    public static ServerSocketChannel createServerSocketChannel(InetAddress bindAddr, int port)
+        throws IOException
+    {
+        return ServerSocketThread.createServerSocketChannel(bindAddr, port, 0);
+    }
+
+    /**
+    *** Creates a ServerSocketChannel bound to the default local interface.  The receive
+    *** buffer size is set before binding (see 'createServerSocket').
+    *** @param receiveBufferSize  The receive buffer size (<= 0 for the OS default)
+    *** @return The created ServerSocketChannel
+    **/
+    public static ServerSocketChannel createServerSocketChannel(InetAddress bindAddr, int port, int receiveBufferSize)
+        throws IOException
+    {
+        InetAddress bind = (bindAddr != null)? bindAddr : ServerSocketThread.getDefaultBindAddress();
+        ServerSocketChannel ssc = ServerSocketChannel.open();
+        ssc.socket().setReuseAddress(true);
+        if (receiveBufferSize > 0) {
+            ssc.socket().setReceiveBufferSize(receiveBufferSize);
+        }
+        ssc.socket().bind(new InetSocketAddress(bind, port), ListenBacklog);
+        return ssc;
+    }
+
     // ------------------------------------------------------------------------
     // ------------------------------------------------------------------------
 
@@ -243,15 +367,49 @@ public class ServerSocketThread
     // ------------------------------------------------------------------------
     // ------------------------------------------------------------------------
 
+    /* default time an idle session thread waits for a new client before exiting */
+    public static final long  DFT_IDLE_THREAD_TIMEOUT_MS    = 5L * 60L * 1000L;
+
+    /* default delay between TCP half-close (output shutdown) and socket close */
+    public static final long  DFT_CLOSE_DELAY_MS            = 1000L;
+
+    // ------------------------------------------------------------------------
+    // ------------------------------------------------------------------------
+
     private int                                 listenPort              = 0;
     private int                                 clientPort              = -1;  // use for UDP response connections only
     
     private InetAddress                         bindAddress             = null;
 
     private DatagramSocket                      datagramSocket          = null;
+    private DatagramChannel                     datagramChannels[]      = null;
+    private DatagramReceiver                    datagramReceivers[]     = null;
+    private DatagramSender                      datagramSender          = null;
+    private int                                 datagramSendQueueSize   = 0;    // '0' for synchronous responses
+    private ByteBufferPool                      datagramBufferPool      = null;
     private ServerSocket                        serverSocket            = null;
+    private ServerSocketChannel                 serverChannel           = null;
     
     private java.util.List<ServerSessionThread> clientThreadPool        = null;
+    private LinkedList<ServerSessionThread>     idleThreadQueue         = null;
+    private LinkedList<ClientSocket>            pendingClientQueue      = null;
+    private Object                              poolLock                = new Object();
+    private int                                 maxSessionThreads       = -1;   // unlimited
+    private int                                 minSessionThreads       = 0;
+    private int                                 maxPendingClients       = 0;
+    private long                                idleThreadTimeoutMS     = DFT_IDLE_THREAD_TIMEOUT_MS;
+    private boolean                             useVirtualThreads       = false;
+    private java.util.Set<ServerSessionThread>  virtualSessions         = null;
+    private SelectorLoop                        selectorLoops[]         = null;
+    private int                                 selectorIndex           = 0;
+    private int                                 channelSessionCount     = 0;
+    private SSLContext                          sslContext              = null;
+    private TLSChannel.Stats                    tlsStats                = null;
+
+    private IPRateLimiter                       rateLimiter             = null;
+    private AdmissionController                 admissionController     = null;
+    private AdmissionController.RejectHandler   rejectHandler           = null;
+    private AcceptStormDetector                 stormDetector           = null;
     
     private ClientPacketHandler                 clientPacketHandler     = null;
     private Class                               clientPacketHandlerClass = null;
@@ -261,6 +419,11 @@ public class ServerSocketThread
     private long                                packetTimeoutMS         = -1L;
     
     private int                                 lingerTimeoutSec        = 4;    // SO_LINGER timeout is in *Seconds*
+    private long                                closeDelayMS            = DFT_CLOSE_DELAY_MS;
+    private int                                 receiveBufferSize       = 0;    // OS default
+    private int                                 sendBufferSize          = 0;    // OS default
+    private boolean                             tcpNoDelay              = false;
+    private boolean                             keepAlive               = false;
 
     private int                                 maxReadLength           = -1;   // safety net only
     private int                                 minReadLength           = -1;
@@ -289,6 +452,9 @@ public class ServerSocketThread
     {
         this.bindAddress      = ServerSocketThread.getDefaultBindAddress();
         this.clientThreadPool = new Vector<ServerSessionThread>();
+        this.idleThreadQueue  = new LinkedList<ServerSessionThread>();
+        this.pendingClientQueue = new LinkedList<ClientSocket>();
+        this.virtualSessions  = Collections.synchronizedSet(new HashSet<ServerSessionThread>());
         this.actionListeners  = new Vector<ActionListener>();
     }
     
@@ -303,6 +469,28 @@ public class ServerSocketThread
         this.listenPort     = (ds != null)? ds.getLocalPort() : -1;
     }
 
+    /**
+    *** Constructor for multi-receiver UDP connections.  Each receiver thread reads
+    *** datagrams from one of the specified channels (channels are shared if there
+    *** are fewer channels than receivers) and handles the session inline.
+    *** @param dcs  The bound DatagramChannels (typically sharing a port via SO_REUSEPORT)
+    *** @param receiverCount  The number of receiver threads
+    **/
+    public ServerSocketThread(DatagramChannel dcs[], int receiverCount)
+    {
+        this();
+        this.datagramChannels  = dcs;
+        DatagramSocket ds      = ((dcs != null) && (dcs.length > 0))? dcs[0].socket() : null;
+        this.bindAddress       = (ds != null)? ds.getLocalAddress() : ServerSocketThread.getDefaultBindAddress();
+        this.listenPort        = (ds != null)? ds.getLocalPort() : -1;
+        int count              = Math.max(receiverCount, (dcs != null)? dcs.length : 0);
+        this.datagramReceivers = new DatagramReceiver[(count > 0)? count : 1];
+        for (int i = 0; i < this.datagramReceivers.length; i++) {
+            DatagramChannel dc = (dcs != null)? dcs[i % dcs.length] : null;
+            this.datagramReceivers[i] = new DatagramReceiver(i, dc);
+        }
+    }
+
     /**
     *** Constructor for TCP connections
     *** @param ss  The ServerSocket containing the 'listen' port information
@@ -315,6 +503,46 @@ public class ServerSocketThread
         this.listenPort   = (ss != null)? ss.getLocalPort() : -1;
     }
 
+    /**
+    *** Constructor for non-blocking TCP connections.  Accepted connections are
+    *** distributed across 'selectorCount' selector threads, rather than being
+    *** assigned a dedicated session thread.
+    *** @param ssc  The ServerSocketChannel containing the 'listen' port information
+    *** @param selectorCount  The number of selector threads
+    **/
+    public ServerSocketThread(ServerSocketChannel ssc, int selectorCount)
+        throws IOException
+    {
+        this();
+        this.serverChannel = ssc;
+        this.bindAddress   = (ssc != null)? ssc.socket().getInetAddress() : ServerSocketThread.getDefaultBindAddress();
+        this.listenPort    = (ssc != null)? ssc.socket().getLocalPort() : -1;
+        this.selectorLoops = new SelectorLoop[(selectorCount > 0)? selectorCount : 1];
+        for (int i = 0; i < this.selectorLoops.length; i++) {
+            this.selectorLoops[i] = new SelectorLoop(i);
+        }
+    }
+
+    /**
+    *** Constructor for non-blocking TLS connections.  Each accepted connection is
+    *** wrapped in an SSLEngine created from the specified SSLContext, whose server 
+    *** session cache allows reconnecting clients to resume their previous session.
+    *** @param ssc  The ServerSocketChannel containing the 'listen' port information
+    *** @param selectorCount  The number of selector threads
+    *** @param sslContext  The SSLContext (null for SSLContext.getDefault())
+    **/
+    public ServerSocketThread(ServerSocketChannel ssc, int selectorCount, SSLContext sslContext)
+        throws IOException
+    {
+        this(ssc, selectorCount);
+        try {
+            this.sslContext = (sslContext != null)? sslContext : SSLContext.getDefault();
+        } catch (java.security.NoSuchAlgorithmException nsae) {
+            throw new IOException("Default SSLContext not available: " + nsae);
+        }
+        this.tlsStats = new TLSChannel.Stats();
+    }
+
     /**
     *** Constructor for TCP connections
     *** @param port  The port on which to listen for incoming connections
@@ -367,6 +595,16 @@ public class ServerSocketThread
 
     // ------------------------------------------------------------------------
 
+    /**
+    *** Gets the TLS handshake counters for non-blocking TLS connections
+    *** @return The TLS handshake counters, or null if this server does not use
+    ***         non-blocking TLS
+    **/
+    public TLSChannel.Stats getTLSStats()
+    {
+        return this.tlsStats;
+    }
+
     /**
     *** Gets the bound UDP DatagramSocket for this server handler.  Will 
     *** return null if this server handler does not handle UDP connections.
@@ -417,7 +655,7 @@ public class ServerSocketThread
     {
         ClientSocket clientSocket = new ClientSocket(dataInput);
         ServerSessionThread sst = new ServerSessionThread(clientSocket, false);
-        sst.run(); // run thread task here
+        sst.runSession(); // run session task here
     }
     
     // ------------------------------------------------------------------------
@@ -427,13 +665,31 @@ public class ServerSocketThread
     **/
     public void run() 
     {
+
+        /* non-blocking TCP */
+        if (this.serverChannel != null) {
+            this._runSelectorAccept();
+            return;
+        }
+
+        /* multi-receiver UDP */
+        if (this.datagramReceivers != null) {
+            for (int i = 1; i < this.datagramReceivers.length; i++) {
+                this.datagramReceivers[i].start();
+            }
+            this.datagramReceivers[0].run(); // first receiver runs in this thread
+            return;
+        }
+
         while (true) {
             ClientSocket clientSocket = null;
 
             /* wait for client session */
             try {
                 if (this.serverSocket != null) {
-                    clientSocket = new ClientSocket(this.serverSocket.accept()); // block until connetion
+                    Socket socket = this.serverSocket.accept(); // block until connetion
+                    this._configureSocket(socket);
+                    clientSocket = new ClientSocket(socket);
                 } else
                 if (this.datagramSocket != null) {
                     byte b[] = new byte[ServerSocketThread.this.getMaximumPacketLength()];
@@ -476,28 +732,313 @@ public class ServerSocketThread
             //}
             //int clientRemotePort = clientSocket.getPort();
 
-            /* find an available client thread */
-            boolean foundThread = false;
-            for (Iterator i = this.clientThreadPool.iterator(); i.hasNext() && !foundThread;) {
-                ServerSessionThread sst = (ServerSessionThread)i.next();
-                foundThread = sst.setClientIfAvailable(clientSocket);
+            /* per source address rate limit */
+            if (!this._checkRateLimit(clientSocket.getInetAddress())) {
+                try { clientSocket.close(); } catch (IOException ioe) {}
+                continue;
+            }
+
+            /* admission control */
+            int admit = this._checkStorm();
+            if (admit == AdmissionController.ADMIT) {
+                admit = this._checkAdmission();
+            }
+            if (admit != AdmissionController.ADMIT) {
+                this._rejectClient(clientSocket, admit);
+                continue;
+            }
+
+            /* virtual thread per session */
+            if (this.useVirtualThreads) {
+                this._startVirtualSession(clientSocket);
+                continue;
             }
-            if (!foundThread) { // add new thread to pool
-                //Print.logInfo("New thread for ip ["+clientIPAddress+"] ...");
+
+            /* hand off to an available client thread */
+            this._dispatchSession(clientSocket);
+
+        }
+    }
+
+    /**
+    *** Assigns the client to an idle session thread, a new session thread (if the
+    *** pool has not reached its maximum size), or the pending client queue.  If
+    *** none of these are available, the client connection is closed.
+    *** @param clientSocket  The client socket
+    **/
+    private void _dispatchSession(ClientSocket clientSocket)
+    {
+        synchronized (this.poolLock) {
+            if (!this.idleThreadQueue.isEmpty()) {
+                // most recently idled thread first
+                //Print.logDebug("Reuse existing thread ...");
+                ServerSessionThread sst = this.idleThreadQueue.removeLast();
+                sst.setClient(clientSocket);
+                return;
+            } else
+            if ((this.maxSessionThreads <= 0) || (this.clientThreadPool.size() < this.maxSessionThreads)) {
+                //Print.logInfo("New thread ...");
                 ServerSessionThread sst = new ServerSessionThread(clientSocket);
                 this.clientThreadPool.add(sst);
+                return;
+            } else
+            if (this.pendingClientQueue.size() < this.maxPendingClients) {
+                this.pendingClientQueue.add(clientSocket);
+                return;
+            }
+        }
+
+        /* pool saturated, reject client */
+        Print.logWarn("Session thread pool saturated, rejecting client: " + clientSocket.getInetAddress());
+        try {
+            clientSocket.close();
+        } catch (IOException ioe) {
+            /* ignore */
+        }
+
+    }
+
+    /**
+    *** Called by a session thread when its session has completed.  Assigns the next
+    *** pending client to the thread, or clears the client and places the thread on
+    *** the idle queue.
+    *** @param sst  The session thread
+    **/
+    private void _nextPendingSession(ServerSessionThread sst)
+    {
+        synchronized (this.poolLock) {
+            if (!this.pendingClientQueue.isEmpty()) {
+                sst.setClient(this.pendingClientQueue.removeFirst());
             } else {
-                //Print.logDebug("Reuse existing thread for ip ["+clientIPAddress+"] ...");
+                sst.setClient(null);
+                this.idleThreadQueue.add(sst);
             }
+        }
+    }
 
+    /**
+    *** Called by an idle session thread when it has exceeded the idle timeout.
+    *** Returns true if the thread has been removed from the pool and should exit.
+    *** @param sst  The session thread
+    *** @return True if the thread should exit
+    **/
+    private boolean _retireSessionThread(ServerSessionThread sst)
+    {
+        synchronized (this.poolLock) {
+            if (this.clientThreadPool.size() <= this.minSessionThreads) {
+                return false; // keep minimum number of threads
+            } else
+            if (!this.idleThreadQueue.remove(sst)) {
+                return false; // a client has just been assigned
+            } else {
+                this.clientThreadPool.remove(sst);
+                return true;
+            }
         }
     }
     
+    /**
+    *** Runs the client session in its own virtual thread
+    *** @param clientSocket  The client socket
+    **/
+    private void _startVirtualSession(ClientSocket clientSocket)
+    {
+        final ServerSessionThread sst = new ServerSessionThread(clientSocket, false);
+        this.virtualSessions.add(sst);
+        OSTools.startVirtualThread(new Runnable() {
+            public void run() {
+                try {
+                    sst.runSession();
+                } finally {
+                    ServerSocketThread.this.virtualSessions.remove(sst);
+                }
+            }
+        }, "ClientSession");
+    }
+
+    /**
+    *** Checks the per source address rate limiter (if any) for a new client.  
+    *** This check is made before any other client state is created.
+    *** @param ipAddr  The client address
+    *** @return True if the client is allowed, false if its connection rate has been exceeded
+    **/
+    private boolean _checkRateLimit(InetAddress ipAddr)
+    {
+        IPRateLimiter rl = this.rateLimiter;
+        if ((rl == null) || rl.tryAcquire(ipAddr)) {
+            return true;
+        } else {
+            Print.logDebug("Rate limited client: " + ipAddr);
+            return false;
+        }
+    }
+
+    /**
+    *** Checks the admission controller (if any) for a new client
+    *** @return AdmissionController.ADMIT, or the rejection reason
+    **/
+    private int _checkAdmission()
+    {
+        AdmissionController ac = this.admissionController;
+        if (ac == null) {
+            return AdmissionController.ADMIT;
+        } else {
+            return ac.checkAdmission(); // total of all listeners sharing the controller
+        }
+    }
+
+    /**
+    *** Checks the connection storm detector (if any) for a newly accepted TCP client
+    *** @return AdmissionController.ADMIT, or AdmissionController.REJECT_STORM
+    **/
+    private int _checkStorm()
+    {
+        AcceptStormDetector sd = this.stormDetector;
+        if ((sd == null) || sd.tryAdmit()) {
+            return AdmissionController.ADMIT;
+        } else {
+            AdmissionController ac = this.admissionController;
+            if (ac != null) {
+                ac.recordResult(AdmissionController.REJECT_STORM);
+            }
+            return AdmissionController.REJECT_STORM;
+        }
+    }
+
+    /**
+    *** Gets the reject response for the specified client
+    **/
+    private byte[] _getRejectResponse(int reason, InetAddress ipAddr)
+    {
+        AdmissionController.RejectHandler rh = this.rejectHandler;
+        return (rh != null)? rh.getRejectResponse(reason, ipAddr) : null;
+    }
+
+    /**
+    *** Rejects the specified client.  A TCP client is sent the reject response (if any)
+    *** and half-closed (the close is scheduled), a UDP datagram is discarded.  An SSL
+    *** client is closed immediately without a response, since writing the response 
+    *** would first run the TLS handshake on the accepting thread.
+    *** @param clientSocket  The client socket
+    *** @param reason        The rejection reason
+    **/
+    private void _rejectClient(ClientSocket clientSocket, int reason)
+    {
+        InetAddress ipAddr = clientSocket.getInetAddress();
+        if (clientSocket.isSSL()) {
+            Print.logDebug("Rejected client [" + AdmissionController.getReasonDescription(reason) + "]: " + ipAddr);
+            try { clientSocket.close(); } catch (IOException ioe) {}
+            return;
+        }
+        if (clientSocket.isTCP()) {
+            byte resp[] = this._getRejectResponse(reason, ipAddr);
+            if ((resp != null) && (resp.length > 0)) {
+                try {
+                    // newly accepted socket, the send buffer is empty and will not block
+                    clientSocket.getOutputStream().write(resp);
+                } catch (IOException ioe) {
+                    /* ignore */
+                }
+            }
+        }
+        Print.logDebug("Rejected client [" + AdmissionController.getReasonDescription(reason) + "]: " + ipAddr);
+        this._closeLater(clientSocket);
+    }
+
+    /**
+    *** Rejects the specified (still blocking) client channel.  The reject response 
+    *** (if any) is sent and the channel is closed.  A TLS client has not yet completed
+    *** its handshake, so it is closed without a response.
+    *** @param sc      The client channel
+    *** @param reason  The rejection reason
+    **/
+    private void _rejectChannel(SocketChannel sc, int reason)
+    {
+        InetAddress ipAddr = sc.socket().getInetAddress();
+        byte resp[] = (this.sslContext == null)? this._getRejectResponse(reason, ipAddr) : null;
+        if ((resp != null) && (resp.length > 0)) {
+            try {
+                sc.write(ByteBuffer.wrap(resp));
+            } catch (IOException ioe) {
+                /* ignore */
+            }
+        }
+        Print.logDebug("Rejected client [" + AdmissionController.getReasonDescription(reason) + "]: " + ipAddr);
+        this._closeLater(new ClientSocket(sc.socket()));
+    }
+
+    /**
+    *** Accepts incoming connections and dispatches them to the selector threads
+    **/
+    private void _runSelectorAccept()
+    {
+
+        /* start selector threads */
+        for (int i = 0; i < this.selectorLoops.length; i++) {
+            this.selectorLoops[i].start();
+        }
+
+        /* accept connections */
+        while (true) {
+            SocketChannel sc = null;
+            try {
+                sc = this.serverChannel.accept(); // block until connection
+            } catch (ClosedChannelException cce) {
+                // shutdown support
+                int port = this.getLocalPort();
+                String portStr = (port <= 0)? "?" : String.valueOf(port);
+                Print.logInfo("Shutdown TCP server on port " + portStr);
+                break;
+            } catch (IOException ioe) {
+                Print.logError("Connection - " + ioe);
+                if (sc != null) {
+                    try { sc.close(); } catch (IOException e) {}
+                }
+                continue; // go back and wait again
+            }
+
+            /* per source address rate limit */
+            if (!this._checkRateLimit(sc.socket().getInetAddress())) {
+                try { sc.close(); } catch (IOException ioe) {}
+                continue;
+            }
+
+            /* admission control */
+            int admit = this._checkStorm();
+            if (admit == AdmissionController.ADMIT) {
+                admit = this._checkAdmission();
+            }
+            if (admit != AdmissionController.ADMIT) {
+                this._rejectChannel(sc, admit);
+                continue;
+            }
+
+            /* assign to next selector thread */
+            SelectorLoop loop = this.selectorLoops[this.selectorIndex++ % this.selectorLoops.length];
+            if (this.selectorIndex >= this.selectorLoops.length) { this.selectorIndex = 0; }
+            try {
+                this._configureSocket(sc.socket());
+                sc.configureBlocking(false);
+            } catch (IOException ioe) {
+                Print.logError("Connection - " + ioe);
+                try { sc.close(); } catch (IOException e) {}
+                continue;
+            }
+            loop.addChannel(sc);
+
+        }
+
+    }
+
     /**
     *** Shuts down the server 
     **/
     public void shutdown() 
     {
+        AdmissionController ac = this.admissionController;
+        if (ac != null) {
+            ac.removeListener(this);
+        }
     	try {
 
             /* shutdown TCP listener */
@@ -505,19 +1046,61 @@ public class ServerSocketThread
 	    		this.serverSocket.close();
 	    	}
 
+            /* shutdown non-blocking TCP listener */
+            if (this.serverChannel != null) {
+                this.serverChannel.close();
+            }
+            if (this.selectorLoops != null) {
+                for (int i = 0; i < this.selectorLoops.length; i++) {
+                    this.selectorLoops[i].shutdown();
+                }
+            }
+
             /* shutdown UDP listener */
 	    	if (this.datagramSocket != null) {
 	    		this.datagramSocket.close();
 	    	}
+            if (this.datagramReceivers != null) {
+                for (int i = 0; i < this.datagramReceivers.length; i++) {
+                    this.datagramReceivers[i].shutdown();
+                }
+            }
+            synchronized (this.poolLock) {
+                if (this.datagramSender != null) {
+                    this.datagramSender.shutdown();
+                    this.datagramSender = null;
+                }
+            }
+            if (this.datagramChannels != null) {
+                for (int i = 0; i < this.datagramChannels.length; i++) {
+                    this.datagramChannels[i].close();
+                }
+            }
             
+            /* close all virtual thread sessions */
+            ServerSessionThread vst[] = this.virtualSessions.toArray(new ServerSessionThread[0]);
+            for (int i = 0; i < vst.length; i++) {
+                vst[i].close();
+            }
+
+            /* close all pending clients */
+            ClientSocket pending[];
+            synchronized (this.poolLock) {
+                pending = this.pendingClientQueue.toArray(new ClientSocket[0]);
+                this.pendingClientQueue.clear();
+            }
+            for (int i = 0; i < pending.length; i++) {
+                pending[i].close();
+            }
+
             /* loop through, and close all server threads */
-	    	Iterator it = this.clientThreadPool.iterator();
-	    	while (it.hasNext()) {
-	    		ServerSessionThread sst = (ServerSessionThread)it.next();
-	    		if (sst != null) {
-	    			sst.close();
-	    		}
-	    	}
+            ServerSessionThread pool[];
+            synchronized (this.poolLock) {
+                pool = this.clientThreadPool.toArray(new ServerSessionThread[0]);
+            }
+            for (int i = 0; i < pool.length; i++) {
+                pool[i].close();
+            }
 
     	} catch (Exception e) {
 
@@ -654,62 +1237,331 @@ public class ServerSocketThread
     // ------------------------------------------------------------------------
 
     /**
-    *** Sets the session timeout in milliseconds
-    *** @param timeoutMS The session timeout in milliseconds
+    *** Sets whether each client session should be run in its own virtual thread,
+    *** rather than in a pooled session thread.  (If virtual threads are not supported
+    *** by this JVM, a new platform thread will be started for each session)
+    *** @param virtual True to run each session in a virtual thread
     **/
-    public void setSessionTimeout(long timeoutMS)
+    public void setVirtualThreads(boolean virtual)
     {
-        this.sessionTimeoutMS = timeoutMS;
+        if (virtual && !OSTools.isVirtualThreadSupported()) {
+            Print.logWarn("Virtual threads not supported by this JVM (a new thread will be used per session)");
+        }
+        this.useVirtualThreads = virtual;
     }
 
     /**
-    *** Gets the session timeout in milliseconds
-    *** @return The session timeout in milliseconds
+    *** Returns true if each client session is run in its own virtual thread
+    *** @return True if each client session is run in its own virtual thread
     **/
-    public long getSessionTimeout()
+    public boolean getVirtualThreads()
     {
-        return this.sessionTimeoutMS;
+        return this.useVirtualThreads;
     }
 
     // ------------------------------------------------------------------------
 
     /**
-    *** Sets the idle timeout in milliseconds
-    *** @param timeoutMS The idle timeout in milliseconds
+    *** Sets the maximum number of session threads in the pool
+    *** @param max  The maximum number of session threads (<= 0 for unlimited)
     **/
-    public void setIdleTimeout(long timeoutMS)
+    public void setMaximumSessionThreads(int max)
     {
-        this.idleTimeoutMS = timeoutMS;
+        this.maxSessionThreads = max;
     }
-    
+
     /**
-    *** Gets the idle timeout in milliseconds
-    *** @return The idle timeout in milliseconds
+    *** Gets the maximum number of session threads in the pool
+    *** @return The maximum number of session threads (<= 0 for unlimited)
     **/
-    public long getIdleTimeout()
+    public int getMaximumSessionThreads()
     {
-        // the timeout for waiting for something to appear on the socket
-        return this.idleTimeoutMS;
+        return this.maxSessionThreads;
     }
 
     /**
-    *** Sets the packet timeout in milliseconds
-    *** @param timeoutMS The packet timeout in milliseconds
+    *** Sets the minimum number of session threads retained in the pool when idle
+    *** @param min  The minimum number of session threads
     **/
-    public void setPacketTimeout(long timeoutMS)
+    public void setMinimumSessionThreads(int min)
     {
-        // once a byte is finally read, the timeout for waiting until the 
-        // entire packet is finished
-        this.packetTimeoutMS = timeoutMS;
+        this.minSessionThreads = (min > 0)? min : 0;
     }
-    
+
     /**
-    *** Gets the packet timeout in milliseconds
-    *** @return The packet timeout in milliseconds
+    *** Gets the minimum number of session threads retained in the pool when idle
+    *** @return The minimum number of session threads
     **/
-    public long getPacketTimeout()
+    public int getMinimumSessionThreads()
     {
-        return this.packetTimeoutMS;
+        return this.minSessionThreads;
+    }
+
+    /**
+    *** Sets the maximum number of accepted clients which may wait for a session
+    *** thread when the pool is at its maximum size.  Clients received beyond this
+    *** limit are closed immediately.
+    *** @param max  The maximum number of pending clients
+    **/
+    public void setMaximumPendingClients(int max)
+    {
+        this.maxPendingClients = (max > 0)? max : 0;
+    }
+
+    /**
+    *** Gets the maximum number of accepted clients which may wait for a session thread
+    *** @return The maximum number of pending clients
+    **/
+    public int getMaximumPendingClients()
+    {
+        return this.maxPendingClients;
+    }
+
+    /**
+    *** Sets the time an idle session thread waits for a new client before exiting
+    *** @param timeoutMS  The idle thread timeout in milliseconds (<= 0 to never exit)
+    **/
+    public void setIdleThreadTimeout(long timeoutMS)
+    {
+        this.idleThreadTimeoutMS = timeoutMS;
+    }
+
+    /**
+    *** Gets the time an idle session thread waits for a new client before exiting
+    *** @return The idle thread timeout in milliseconds
+    **/
+    public long getIdleThreadTimeout()
+    {
+        return this.idleThreadTimeoutMS;
+    }
+
+    /**
+    *** Gets the current number of session threads in the pool
+    *** @return The current number of session threads
+    **/
+    public int getSessionThreadCount()
+    {
+        synchronized (this.poolLock) {
+            return this.clientThreadPool.size();
+        }
+    }
+
+    /**
+    *** Gets the current number of idle session threads in the pool
+    *** @return The current number of idle session threads
+    **/
+    public int getIdleSessionThreadCount()
+    {
+        synchronized (this.poolLock) {
+            return this.idleThreadQueue.size();
+        }
+    }
+
+    /**
+    *** Gets the current number of active client sessions
+    *** @return The number of active client sessions
+    **/
+    public int getActiveSessionCount()
+    {
+        int count;
+        synchronized (this.poolLock) {
+            count = this.clientThreadPool.size() - this.idleThreadQueue.size();
+            count += this.channelSessionCount;
+        }
+        count += this.virtualSessions.size();
+        return count;
+    }
+
+    /**
+    *** Gets the current number of accepted clients waiting for a session
+    *** @return The number of waiting clients
+    **/
+    public int getSessionBacklog()
+    {
+        int count;
+        synchronized (this.poolLock) {
+            count = this.pendingClientQueue.size();
+        }
+        if (this.selectorLoops != null) {
+            for (int i = 0; i < this.selectorLoops.length; i++) {
+                count += this.selectorLoops[i].newChannels.size();
+            }
+        }
+        return count;
+    }
+
+    /**
+    *** Sets the per source address rate limiter.  TCP clients exceeding their rate 
+    *** are closed immediately, and UDP datagrams are discarded.
+    *** @param rl  The rate limiter (null for no rate limit)
+    **/
+    public void setRateLimiter(IPRateLimiter rl)
+    {
+        this.rateLimiter = rl;
+    }
+
+    /**
+    *** Gets the per source address rate limiter
+    *** @return The rate limiter (may be null)
+    **/
+    public IPRateLimiter getRateLimiter()
+    {
+        return this.rateLimiter;
+    }
+
+    /**
+    *** Sets the maximum number of UDP responses queued for the asynchronous datagram 
+    *** sender.  When set, UDP responses are queued by the session and sent by a 
+    *** separate thread through the listening socket/channel.  Responses which do not 
+    *** fit in the queue are discarded.
+    *** @param size  The maximum queued responses ('0' to send responses synchronously)
+    **/
+    public void setDatagramSendQueueSize(int size)
+    {
+        this.datagramSendQueueSize = (size > 0)? size : 0;
+    }
+
+    /**
+    *** Gets the maximum number of UDP responses queued for the asynchronous datagram sender
+    *** @return The maximum queued responses ('0' if responses are sent synchronously)
+    **/
+    public int getDatagramSendQueueSize()
+    {
+        return this.datagramSendQueueSize;
+    }
+
+    /**
+    *** Gets the number of UDP responses discarded by the asynchronous datagram sender
+    *** @return The number of discarded responses
+    **/
+    public long getDatagramSendDropCount()
+    {
+        DatagramSender ds = this.datagramSender;
+        return (ds != null)? ds.getDropCount() : 0L;
+    }
+
+    /**
+    *** Sets the admission controller used to reject new clients when the server 
+    *** is overloaded.  The controller may be shared by several listeners, in which
+    *** case its limits apply to the total sessions of all of them.
+    *** @param ac  The admission controller (null for no admission control)
+    **/
+    public void setAdmissionController(AdmissionController ac)
+    {
+        if (this.admissionController != null) {
+            this.admissionController.removeListener(this);
+        }
+        this.admissionController = ac;
+        if (ac != null) {
+            ac.addListener(this);
+        }
+    }
+
+    /**
+    *** Gets the admission controller
+    *** @return The admission controller (may be null)
+    **/
+    public AdmissionController getAdmissionController()
+    {
+        return this.admissionController;
+    }
+
+    /**
+    *** Sets the connection storm detector used to smooth TCP client admission when
+    *** clients reconnect en masse (may be shared by several listeners)
+    *** @param sd  The storm detector (null for no storm detection)
+    **/
+    public void setStormDetector(AcceptStormDetector sd)
+    {
+        this.stormDetector = sd;
+    }
+
+    /**
+    *** Gets the connection storm detector
+    *** @return The storm detector (may be null)
+    **/
+    public AcceptStormDetector getStormDetector()
+    {
+        return this.stormDetector;
+    }
+
+    /**
+    *** Sets the handler which supplies the response sent to rejected TCP clients
+    *** @param rh  The reject handler (null to close rejected clients without a response)
+    **/
+    public void setRejectHandler(AdmissionController.RejectHandler rh)
+    {
+        this.rejectHandler = rh;
+    }
+
+    /**
+    *** Gets the reject handler
+    *** @return The reject handler (may be null)
+    **/
+    public AdmissionController.RejectHandler getRejectHandler()
+    {
+        return this.rejectHandler;
+    }
+
+    // ------------------------------------------------------------------------
+
+    /**
+    *** Sets the session timeout in milliseconds
+    *** @param timeoutMS The session timeout in milliseconds
+    **/
+    public void setSessionTimeout(long timeoutMS)
+    {
+        this.sessionTimeoutMS = timeoutMS;
+    }
+
+    /**
+    *** Gets the session timeout in milliseconds
+    *** @return The session timeout in milliseconds
+    **/
+    public long getSessionTimeout()
+    {
+        return this.sessionTimeoutMS;
+    }
+
+    // ------------------------------------------------------------------------
+
+    /**
+    *** Sets the idle timeout in milliseconds
+    *** @param timeoutMS The idle timeout in milliseconds
+    **/
+    public void setIdleTimeout(long timeoutMS)
+    {
+        this.idleTimeoutMS = timeoutMS;
+    }
+    
+    /**
+    *** Gets the idle timeout in milliseconds
+    *** @return The idle timeout in milliseconds
+    **/
+    public long getIdleTimeout()
+    {
+        // the timeout for waiting for something to appear on the socket
+        return this.idleTimeoutMS;
+    }
+
+    /**
+    *** Sets the packet timeout in milliseconds
+    *** @param timeoutMS The packet timeout in milliseconds
+    **/
+    public void setPacketTimeout(long timeoutMS)
+    {
+        // once a byte is finally read, the timeout for waiting until the 
+        // entire packet is finished
+        this.packetTimeoutMS = timeoutMS;
+    }
+    
+    /**
+    *** Gets the packet timeout in milliseconds
+    *** @return The packet timeout in milliseconds
+    **/
+    public long getPacketTimeout()
+    {
+        return this.packetTimeoutMS;
     }
 
     /**
@@ -750,6 +1602,126 @@ public class ServerSocketThread
         return this.lingerTimeoutSec;
     }
 
+    /**
+    *** Sets the delay between shutting down the output of a completed TCP session and
+    *** closing the socket.  The session thread does not wait for this delay, the 
+    *** socket is closed by the shared TimerWheel.
+    *** @param delayMS The close delay in milliseconds (<= 0 to close immediately)
+    **/
+    public void setCloseDelay(long delayMS)
+    {
+        this.closeDelayMS = delayMS;
+    }
+
+    /**
+    *** Gets the delay between shutting down the output of a completed TCP session and
+    *** closing the socket.
+    *** @return The close delay in milliseconds
+    **/
+    public long getCloseDelay()
+    {
+        return this.closeDelayMS;
+    }
+
+    /**
+    *** Sets the socket receive/send buffer sizes applied to accepted client sockets
+    *** @param receiveSize  The receive buffer size (<= 0 for the OS default)
+    *** @param sendSize     The send buffer size (<= 0 for the OS default)
+    **/
+    public void setSocketBufferSizes(int receiveSize, int sendSize)
+    {
+        this.receiveBufferSize = receiveSize;
+        this.sendBufferSize    = sendSize;
+    }
+
+    /**
+    *** Gets the socket receive buffer size applied to accepted client sockets
+    *** @return The receive buffer size (<= 0 for the OS default)
+    **/
+    public int getSocketReceiveBufferSize()
+    {
+        return this.receiveBufferSize;
+    }
+
+    /**
+    *** Gets the socket send buffer size applied to accepted client sockets
+    *** @return The send buffer size (<= 0 for the OS default)
+    **/
+    public int getSocketSendBufferSize()
+    {
+        return this.sendBufferSize;
+    }
+
+    /**
+    *** Sets the TCP_NODELAY and SO_KEEPALIVE options applied to accepted client sockets
+    *** @param noDelay    True to disable Nagle's algorithm
+    *** @param keepAlive  True to enable TCP keep-alive probes
+    **/
+    public void setSocketOptions(boolean noDelay, boolean keepAlive)
+    {
+        this.tcpNoDelay = noDelay;
+        this.keepAlive  = keepAlive;
+    }
+
+    /**
+    *** Applies the configured socket options to the specified accepted client socket.
+    *** Receive buffers larger than 64K only take effect if also set on the listening
+    *** socket before it was bound (see 'createServerSocket').
+    *** @param socket  The client socket
+    **/
+    private void _configureSocket(Socket socket)
+    {
+        try {
+            if ((this.receiveBufferSize > 0) && (socket.getReceiveBufferSize() != this.receiveBufferSize)) {
+                socket.setReceiveBufferSize(this.receiveBufferSize);
+            }
+            if (this.sendBufferSize > 0) {
+                socket.setSendBufferSize(this.sendBufferSize);
+            }
+            if (this.tcpNoDelay) {
+                socket.setTcpNoDelay(true);
+            }
+            if (this.keepAlive) {
+                socket.setKeepAlive(true);
+            }
+        } catch (SocketException se) {
+            // client may have already closed/reset the connection
+            Print.logWarn("Unable to set socket options: " + se);
+        }
+    }
+
+    /**
+    *** Shuts down the output of the specified client socket (sending any pending data 
+    *** followed by a FIN), and closes the socket after the close delay.  This avoids 
+    *** blocking the calling thread in a lingering close, and allows the client time
+    *** to read the final response before the socket is closed.  SSL sockets do not 
+    *** support a half-close on older JREs, and are closed immediately.
+    *** @param clientSocket  The client socket
+    **/
+    private void _closeLater(final ClientSocket clientSocket)
+    {
+        long delayMS = this.getCloseDelay();
+        if (clientSocket.isTCP() && !clientSocket.isSSL() && (delayMS > 0L)) {
+            try {
+                clientSocket.setSoLinger(0); // no blocking on close
+                clientSocket.shutdownOutput();
+                TimerWheel.getSharedInstance().schedule(new Runnable() {
+                    public void run() {
+                        try { clientSocket.close(); } catch (IOException ioe) {}
+                    }
+                }, delayMS);
+                return;
+            } catch (IOException ioe) {
+                // socket already closed/reset by client, close now
+            }
+        }
+        try { 
+            clientSocket.close(); 
+        } catch (IOException ioe) {
+            /* unable to close? */
+        }
+    }
+
     // ------------------------------------------------------------------------
 
     /**
@@ -1048,44 +2020,181 @@ public class ServerSocketThread
         return this.promptIndex;
     }
     
-    // ------------------------------------------------------------------------
     // ------------------------------------------------------------------------
 
     /**
-    *** ClientSocket
+    *** Returns the response to the specified packet as a list of buffers
+    *** @param cph  The client packet handler
+    *** @param pkt  The packet
+    *** @return The response buffers (may be null)
     **/
-    private class ClientSocket
+    protected static ByteBuffer[] getHandlePacketBuffers(ClientPacketHandler cph, byte pkt[])
+        throws Exception
     {
-        private Socket tcpClient = null;
-        private DatagramPacket udpClient = null;
-        private InputStream bais = null;
-        public ClientSocket(Socket tcpClient) {
-            this.tcpClient = tcpClient;
-        }
-        public ClientSocket(DatagramPacket udpClient) {
-            this.udpClient = udpClient;
-        }
-        public ClientSocket(InputStream bais) { // debug/testing only
-            this.udpClient = new DatagramPacket(new byte[1], 1);
-            this.bais = bais;
+        if (cph instanceof AbstractClientPacketHandler) {
+            return ((AbstractClientPacketHandler)cph).getHandlePacketBuffers(pkt);
+        } else {
+            byte resp[] = cph.getHandlePacket(pkt);
+            return ((resp != null) && (resp.length > 0))? new ByteBuffer[] { ByteBuffer.wrap(resp) } : null;
         }
-        public boolean isTCP() {
-            if (this.tcpClient != null) {
-                return true;
-            } else {
-                // test session?
-                return false;
+    }
+
+    /**
+    *** Gets the idle timeout for the specified client session.  A handler may only
+    *** shorten the server idle timeout.
+    *** @param cph  The client packet handler
+    *** @return The idle timeout in milliseconds
+    **/
+    protected long getIdleTimeout(ClientPacketHandler cph)
+    {
+        long timeoutMS = this.getIdleTimeout();
+        if (cph instanceof AbstractClientPacketHandler) {
+            long cphTimeoutMS = ((AbstractClientPacketHandler)cph).getIdleTimeout();
+            if ((cphTimeoutMS > 0L) && ((timeoutMS <= 0L) || (cphTimeoutMS < timeoutMS))) {
+                timeoutMS = cphTimeoutMS;
             }
         }
-        public boolean isUDP() {
-            if (this.udpClient != null) {
-                return true;
-            } else {
-                // test session?
-                return false;
+        return timeoutMS;
+    }
+
+    /**
+    *** Gets the packet timeout for the specified client session.  A handler may only
+    *** shorten the server packet timeout.
+    *** @param cph  The client packet handler
+    *** @return The packet timeout in milliseconds
+    **/
+    protected long getPacketTimeout(ClientPacketHandler cph)
+    {
+        long timeoutMS = this.getPacketTimeout();
+        if (cph instanceof AbstractClientPacketHandler) {
+            long cphTimeoutMS = ((AbstractClientPacketHandler)cph).getPacketTimeout();
+            if ((cphTimeoutMS > 0L) && ((timeoutMS <= 0L) || (cphTimeoutMS < timeoutMS))) {
+                timeoutMS = cphTimeoutMS;
+            }
+        }
+        return timeoutMS;
+    }
+
+    /**
+    *** Gets the interval at which the specified client session is polled for an
+    *** unsolicited packet while waiting for the client
+    *** @param cph  The client packet handler
+    *** @return The idle poll interval in milliseconds (<= 0 for no polling)
+    **/
+    protected static long getIdlePollInterval(ClientPacketHandler cph)
+    {
+        if (cph instanceof AbstractClientPacketHandler) {
+            return ((AbstractClientPacketHandler)cph).getIdlePollInterval();
+        } else {
+            return -1L;
+        }
+    }
+
+    /**
+    *** Gets any unsolicited packet to send to the specified idle client session
+    *** @param cph  The client packet handler
+    *** @return The packet to send (may be null)
+    **/
+    protected static byte[] getIdlePacket(ClientPacketHandler cph)
+        throws Exception
+    {
+        if (cph instanceof AbstractClientPacketHandler) {
+            return ((AbstractClientPacketHandler)cph).getIdlePacket();
+        } else {
+            return null;
+        }
+    }
+
+    /**
+    *** Creates a PacketFramer configured with this server's packet settings
+    *** @param clientHandler  The client packet handler (may override min/max packet lengths)
+    *** @return The new PacketFramer
+    **/
+    public PacketFramer createPacketFramer(ClientPacketHandler clientHandler)
+    {
+        return this.createPacketFramer(null, clientHandler);
+    }
+
+    /**
+    *** Initializes a PacketFramer with this server's packet settings
+    *** @param framer  The PacketFramer to reuse, or null to create a new PacketFramer
+    *** @param clientHandler  The client packet handler (may override min/max packet lengths)
+    *** @return The initialized PacketFramer
+    **/
+    public PacketFramer createPacketFramer(PacketFramer framer, ClientPacketHandler clientHandler)
+    {
+        int minLen = this.getMinimumPacketLength();
+        int maxLen = this.getMaximumPacketLength();
+        if (clientHandler != null) {
+            if (clientHandler.getMinimumPacketLength() > 0) { minLen = clientHandler.getMinimumPacketLength(); }
+            if (clientHandler.getMaximumPacketLength() > 0) { maxLen = clientHandler.getMaximumPacketLength(); }
+        }
+        if (framer != null) {
+            framer.reset(clientHandler, this.isTextPackets(), minLen, maxLen);
+        } else {
+            framer = new PacketFramer(clientHandler, this.isTextPackets(), minLen, maxLen);
+        }
+        framer.setLineTerminatorChar(this.getLineTerminatorChar());
+        framer.setIgnoreChar(this.getIgnoreChar());
+        framer.setBackspaceChar(this.hasPrompt()? this.getBackspaceChar() : null);
+        framer.setPacketTerminatorPattern(this.getPacketTerminatorPattern());
+        return framer;
+    }
+
+    // ------------------------------------------------------------------------
+    // ------------------------------------------------------------------------
+
+    /**
+    *** ClientSocket
+    **/
+    private class ClientSocket
+    {
+        private Socket tcpClient = null;
+        private DatagramPacket udpClient = null;
+        private DatagramChannel udpChannel = null;
+        private ByteBuffer udpBuffer = null;
+        private InetSocketAddress udpAddress = null;
+        private InputStream bais = null;
+        public ClientSocket(Socket tcpClient) {
+            this.tcpClient = tcpClient;
+        }
+        public ClientSocket(DatagramPacket udpClient) {
+            this.udpClient = udpClient;
+        }
+        public ClientSocket(DatagramChannel udpChannel) { // reused for each received datagram
+            this.udpChannel = udpChannel;
+        }
+        public void setDatagram(ByteBuffer data, SocketAddress remote) {
+            this.udpBuffer  = data;
+            this.udpAddress = (remote instanceof InetSocketAddress)? (InetSocketAddress)remote : null;
+        }
+        public ClientSocket(InputStream bais) { // debug/testing only
+            this.udpClient = new DatagramPacket(new byte[1], 1);
+            this.bais = bais;
+        }
+        public boolean isTCP() {
+            if (this.tcpClient != null) {
+                return true;
+            } else {
+                // test session?
+                return false;
+            }
+        }
+        public boolean isSSL() {
+            return (this.tcpClient instanceof SSLSocket);
+        }
+        public boolean isUDP() {
+            if ((this.udpClient != null) || (this.udpChannel != null)) {
+                return true;
+            } else {
+                // test session?
+                return false;
             }
         }
         public int available() {
+            if (this.udpChannel != null) {
+                return (this.udpBuffer != null)? this.udpBuffer.remaining() : 0;
+            }
             try {
                 return this.getInputStream().available();
             } catch (Throwable t) {
@@ -1097,6 +2206,9 @@ public class ServerSocketThread
             if (this.tcpClient != null) {
                 return this.tcpClient.getInetAddress();
             } else 
+            if (this.udpChannel != null) {
+                return (this.udpAddress != null)? this.udpAddress.getAddress() : null;
+            } else 
             if (this.udpClient != null) {
                 try {
                     SocketAddress sa = this.udpClient.getSocketAddress();
@@ -1117,6 +2229,9 @@ public class ServerSocketThread
             if (this.tcpClient != null) {
                 return this.tcpClient.getPort();
             } else 
+            if (this.udpChannel != null) {
+                return (this.udpAddress != null)? this.udpAddress.getPort() : -1;
+            } else 
             if (this.udpClient != null) {
                 return this.udpClient.getPort();
             } else {
@@ -1142,6 +2257,14 @@ public class ServerSocketThread
             }
             */
         }
+        public DatagramChannel getDatagramChannel() {
+            // UDP channel on which the datagram was received (null if not a channel receiver)
+            return this.udpChannel;
+        }
+        public ByteBuffer getDatagramBuffer() {
+            // received datagram data (null if not a channel receiver)
+            return this.udpBuffer;
+        }
         public OutputStream getOutputStream() throws IOException {
             if (this.tcpClient != null) {
                 // TCP
@@ -1184,6 +2307,16 @@ public class ServerSocketThread
                 this.tcpClient.setSoLinger(on, timeoutSec);
             }
         }
+        public void shutdownOutput() throws IOException {
+            if (this.tcpClient != null) {
+                this.tcpClient.shutdownOutput();
+            }
+        }
+        public void shutdownInput() throws IOException {
+            if (this.tcpClient != null) {
+                this.tcpClient.shutdownInput();
+            }
+        }
         public void close() throws IOException {
             if (this.tcpClient != null) {
                 this.tcpClient.close();
@@ -1222,6 +2355,9 @@ public class ServerSocketThread
     
         private Object runLock = new Object();
         private ClientSocket client = null;
+        private PacketFramer framer = null;
+        private int soTimeout = -1;
+        private volatile boolean sessionExpired = false;
         private long readByteCount  = 0L;
         private long writeByteCount = 0L;
 
@@ -1245,19 +2381,12 @@ public class ServerSocketThread
             }
         }
 
-        /* find an existing/unuseds ClientSocket handler thread */
-        public boolean setClientIfAvailable(ClientSocket clientSocket) {
-            boolean rtn = false;
+        /* assign a ClientSocket to this idle handler thread */
+        private void setClient(ClientSocket clientSocket) {
             synchronized (this.runLock) {
-                if (this.client != null) {
-                    rtn = false; // not available
-                } else {
-                    this.client = clientSocket;
-                    this.runLock.notify();
-                    rtn = true;
-                }
+                this.client = clientSocket;
+                this.runLock.notify();
             }
-            return rtn;
         }
 
         public int getLocalPort() {
@@ -1309,7 +2438,8 @@ public class ServerSocketThread
         }
 
         public int getAvailableBytes() {
-            return this.client.available();
+            int buffered = (this.framer != null)? this.framer.getBufferedLength() : 0;
+            return this.client.available() + buffered;
         }
 
         public long getReadByteCount() {
@@ -1326,240 +2456,274 @@ public class ServerSocketThread
             while (true) {
 
                 /* wait for client (if necessary) */
+                boolean retire = false;
                 synchronized (this.runLock) {
+                    long idleTimeoutMS = ServerSocketThread.this.getIdleThreadTimeout();
+                    long idleTimeoutAt = (idleTimeoutMS > 0L)? (DateTime.getCurrentTimeMillis() + idleTimeoutMS) : -1L;
                     while (this.client == null) {
-                        try { this.runLock.wait(); } catch (InterruptedException ie) {}
+                        long waitMS = (idleTimeoutAt > 0L)? (idleTimeoutAt - DateTime.getCurrentTimeMillis()) : 0L;
+                        if ((idleTimeoutAt > 0L) && (waitMS <= 0L)) {
+                            retire = true;
+                            break;
+                        }
+                        try { this.runLock.wait(waitMS); } catch (InterruptedException ie) {}
                     }
                 }
-
-                /* reset byte counts */
-                this.readByteCount  = 0L;
-                this.writeByteCount = 0L;
-
-                /* remote client IP address/port */
-                InetAddress inetAddr = this.client.getInetAddress();
-                int       remotePort = this.client.getPort();
-                Print.logInfo("Remote client port: " + inetAddr + ":" + remotePort + "[" + this.client.getLocalPort() + "]");
-
-                /* session timeout */
-                long sessionStartTime = DateTime.getCurrentTimeMillis();
-                long sessionTimeoutMS = ServerSocketThread.this.getSessionTimeout();
-                long sessionTimeoutAt = (sessionTimeoutMS > 0L)? (sessionStartTime + sessionTimeoutMS) : -1L;
-
-                /* client session handler */
-                ClientPacketHandler clientHandler = ServerSocketThread.this.getClientPacketHandler();
-                if (clientHandler != null) {
-                    if (clientHandler instanceof AbstractClientPacketHandler) {
-                        // set a handle to this session thread
-                        ((AbstractClientPacketHandler)clientHandler).setSessionInfo(this);
+                if (retire) {
+                    if (ServerSocketThread.this._retireSessionThread(this)) {
+                        break; // removed from pool
                     }
-                    clientHandler.sessionStarted(inetAddr, this.client.isTCP(), ServerSocketThread.this.isTextPackets());
+                    continue; // keep waiting (or client just assigned)
                 }
 
-                /* process client requests */
-                Throwable termError = null;
-                OutputStream output = null;
-                try {
+                /* handle client session */
+                this.runSession();
 
-                    /* get output stream */
-                    output = this.client.getOutputStream(); // null for UDP
-                    
-                    /* check for client termination request */
-                    if ((clientHandler == null) || !clientHandler.terminateSession()) {
+                /* clear for next requestor (or take next pending client) */
+                ServerSocketThread.this._nextPendingSession(this);
 
-                        /* write initial packet from server */
-                        if (clientHandler != null) {
-                            byte initialPacket[] = clientHandler.getInitialPacket(); // may be null
-                            if ((initialPacket != null) && (initialPacket.length > 0)) {
-                                if (this.client.isTCP()) {
-                                    this.writeBytes(output, initialPacket);
-                                } else {
-                                    // ignore
-                                }
+            } // while (true)
+
+        } // run()
+
+        public void runSession() {
+            // handles the session for the currently assigned client 
+
+            /* reset byte counts */
+            this.readByteCount  = 0L;
+            this.writeByteCount = 0L;
+            this.soTimeout      = -1;
+
+            /* remote client IP address/port */
+            InetAddress inetAddr = this.client.getInetAddress();
+            int       remotePort = this.client.getPort();
+            Print.logInfo("Remote client port: " + inetAddr + ":" + remotePort + "[" + this.client.getLocalPort() + "]");
+
+            /* session timeout */
+            long sessionStartTime = DateTime.getCurrentTimeMillis();
+            long sessionTimeoutMS = ServerSocketThread.this.getSessionTimeout();
+            long sessionTimeoutAt = (sessionTimeoutMS > 0L)? (sessionStartTime + sessionTimeoutMS) : -1L;
+            TimerWheel.Timeout sessionTimer = null;
+            this.sessionExpired = false;
+            if ((sessionTimeoutAt > 0L) && this.client.isTCP()) {
+                // the session timer interrupts a blocked read by shutting down socket input
+                // (output remains open for the final packet).  SSL sockets do not support
+                // 'shutdownInput' and are closed instead.
+                final ClientSocket timerClient = this.client;
+                sessionTimer = TimerWheel.getSharedInstance().scheduleAt(new Runnable() {
+                    public void run() {
+                        ServerSessionThread.this.sessionExpired = true;
+                        try {
+                            if (timerClient.isSSL()) {
+                                timerClient.close();
+                            } else {
+                                timerClient.shutdownInput();
                             }
+                        } catch (IOException ioe) {
+                            // socket may already be closed
                         }
+                    }
+                }, sessionTimeoutAt);
+            }
+
+            /* client session handler */
+            ClientPacketHandler clientHandler = ServerSocketThread.this.getClientPacketHandler();
+            if (clientHandler != null) {
+                if (clientHandler instanceof AbstractClientPacketHandler) {
+                    // set a handle to this session thread
+                    ((AbstractClientPacketHandler)clientHandler).setSessionInfo(this);
+                }
+                clientHandler.sessionStarted(inetAddr, this.client.isTCP(), ServerSocketThread.this.isTextPackets());
+            }
+            this.framer = ServerSocketThread.this.createPacketFramer(this.framer, clientHandler);
 
-                        /* loop until timeout, error, client terminate */
-                        for (int i = 0;; i++) {
+            /* process client requests */
+            Throwable termError = null;
+            OutputStream output = null;
+            try {
 
-                            /* session timeout? */
-                            if (sessionTimeoutAt > 0L) {
-                                long currentTimeMS = DateTime.getCurrentTimeMillis();
-                                if (currentTimeMS >= sessionTimeoutAt) {
-                                    throw new SSSessionTimeoutException("Session timeout");
-                                }
-                            }
+                /* get output stream */
+                output = this.client.getOutputStream(); // null for UDP
+                
+                /* check for client termination request */
+                if ((clientHandler == null) || !clientHandler.terminateSession()) {
 
-                            /* display prompt */
+                    /* write initial packet from server */
+                    if (clientHandler != null) {
+                        byte initialPacket[] = clientHandler.getInitialPacket(); // may be null
+                        if ((initialPacket != null) && (initialPacket.length > 0)) {
                             if (this.client.isTCP()) {
-                                byte prompt[] = ServerSocketThread.this.getPrompt(i); // may be null
-                                if ((prompt != null) && (prompt.length > 0)) {
-                                    this.writeBytes(output, prompt);
-                                }
-                            }
-
-                            /* read packet */
-                            byte line[] = null;
-                            if (ServerSocketThread.this.isTextPackets()) {
-                                // ASCII: read until packet EOL
-                                line = this.readLine(this.client, clientHandler);
-                                // "getTerminateOnTimeout()" called on timeout (SSReadTimeoutException)
+                                this.writeBytes(output, initialPacket);
                             } else {
-                                // Binary: read until packet length or timeout
-                                line = this.readPacket(this.client, clientHandler);
-                                // "getTerminateOnTimeout()" called on timeout (SSReadTimeoutException)
+                                // ignore
                             }
-                            // timeout occurred?
+                        }
+                    }
 
-                            /* check for requested terminate */
-                            if (clientHandler.terminateSession()) {
-                                break;
+                    /* loop until timeout, error, client terminate */
+                    for (int i = 0;; i++) {
+
+                        /* session timeout? */
+                        if (this.sessionExpired || ((sessionTimeoutAt > 0L) && (DateTime.getCurrentTimeMillis() >= sessionTimeoutAt))) {
+                            throw new SSSessionTimeoutException("Session timeout");
+                        }
+
+                        /* display prompt */
+                        if (this.client.isTCP()) {
+                            byte prompt[] = ServerSocketThread.this.getPrompt(i); // may be null
+                            if ((prompt != null) && (prompt.length > 0)) {
+                                this.writeBytes(output, prompt);
                             }
+                        }
 
-                            /* send packet to listeners */
-                            if ((line != null) && ServerSocketThread.this.hasListeners()) {
-                                try {
-                                    ServerSocketThread.this.invokeListeners(line);
-                                } catch (Throwable t) {
-                                    // a listener can terminate this session
-                                    break; 
-                                }
+                        /* read packet */
+                        byte line[] = null;
+                        if (ServerSocketThread.this.isTextPackets()) {
+                            // ASCII: read until packet EOL
+                            line = this.readLine(this.client, clientHandler);
+                            // "getTerminateOnTimeout()" called on timeout (SSReadTimeoutException)
+                        } else {
+                            // Binary: read until packet length or timeout
+                            line = this.readPacket(this.client, clientHandler);
+                            // "getTerminateOnTimeout()" called on timeout (SSReadTimeoutException)
+                        }
+                        // timeout occurred?
+
+                        /* check for requested terminate */
+                        if (clientHandler.terminateSession()) {
+                            break;
+                        }
+
+                        /* send packet to listeners */
+                        if ((line != null) && ServerSocketThread.this.hasListeners()) {
+                            try {
+                                ServerSocketThread.this.invokeListeners(line);
+                            } catch (Throwable t) {
+                                // a listener can terminate this session
+                                break; 
                             }
+                        }
 
-                            /* handle packet, and get response */
-                            if ((line != null) && (clientHandler != null)) {
-                                try {
+                        /* handle packet, and get response */
+                        if ((line != null) && (clientHandler != null)) {
+                            try {
+                                if (this.client.isTCP()) {
+                                    // TCP: Send response over socket connection
+                                    ByteBuffer response[] = ServerSocketThread.getHandlePacketBuffers(clientHandler, line);
+                                    this.writeBuffers(output, response);
+                                } else {
+                                    // UDP: Send response via datagram ('ServerSocketThread.this.datagramSocket' is non-null)
                                     byte response[] = clientHandler.getHandlePacket(line);
                                     if ((response != null) && (response.length > 0)) {
-                                        if (this.client.isTCP()) {
-                                            // TCP: Send response over socket connection
-                                            this.writeBytes(output, response);
-                                        } else {
-                                            // UDP: Send response via datagram ('ServerSocketThread.this.datagramSocket' is non-null)
-                                            int rp = this._getRemotePort(clientHandler.getResponsePort());
-                                            this.sendUDPResponse(inetAddr, rp, response);
-                                        }
+                                        int rp = this._getRemotePort(clientHandler.getResponsePort());
+                                        this.sendUDPResponse(inetAddr, rp, response);
                                     } else {
                                         //Print.logInfo("No response requested");
                                     }
-                                    if (clientHandler.terminateSession()) {
-                                        break;
-                                    }
-                                } catch (Throwable t) {
-                                    // the ClientPacketHandler can terminate this session
-                                    Print.logException("Unexpected exception: ", t);
+                                }
+                                if (clientHandler.terminateSession()) {
                                     break;
                                 }
+                            } catch (Throwable t) {
+                                // the ClientPacketHandler can terminate this session
+                                Print.logException("Unexpected exception: ", t);
+                                break;
                             }
+                        }
 
-                            /* terminate now if we're reading a Datagram and we're out of data */
-                            if (this.client.isUDP()) {
-                                int avail = this.client.available();
-                                if (avail <= 0) {
-                                    // Normal end of UDP connection
-                                    break;
-                                } else {
-                                    // Still have more UDP packet data
-                                    Print.logDebug("UDP: bytes remaining - %d", avail);
-                                }
+                        /* terminate now if we're reading a Datagram and we're out of data */
+                        if (this.client.isUDP()) {
+                            int avail = this.getAvailableBytes();
+                            if (avail <= 0) {
+                                // Normal end of UDP connection
+                                break;
+                            } else {
+                                // Still have more UDP packet data
+                                Print.logDebug("UDP: bytes remaining - %d", avail);
                             }
-    
-                        } // socket read loop
-                        
-                    }
+                        }
+
+                    } // socket read loop
+                    
+                }
 
-                } catch (SSSessionTimeoutException ste) {
-                    Print.logWarn(ste.getMessage());
-                    termError = ste;
-                } catch (SSReadTimeoutException rte) {
-                    if (rte.getByteIndex() <= 0) {
+            } catch (SSSessionTimeoutException ste) {
+                Print.logWarn(ste.getMessage());
+                termError = ste;
+            } catch (SSReadTimeoutException rte) {
+                if (rte.getByteIndex() <= 0) {
+                    // end of stream at packet boundry
+                    Print.logInfo(rte.getMessage());
+                } else {
+                    // end of stream within expected packet
+                    Print.logWarn(rte.getMessage());
+                    termError = rte;
+                }
+            } catch (SSEndOfStreamException eos) {
+                if (this.client.isTCP()) { // run
+                    if (eos.getByteIndex() <= 0) {
                         // end of stream at packet boundry
-                        Print.logInfo(rte.getMessage());
+                        Print.logInfo(eos.getMessage());
                     } else {
                         // end of stream within expected packet
-                        Print.logWarn(rte.getMessage());
-                        termError = rte;
+                        Print.logWarn(eos.getMessage());
+                        termError = eos;
                     }
-                } catch (SSEndOfStreamException eos) {
-                    if (this.client.isTCP()) { // run
-                        if (eos.getByteIndex() <= 0) {
-                            // end of stream at packet boundry
-                            Print.logInfo(eos.getMessage());
+                } else {
+                    // We're at the end of the UDP datastream
+                }
+            } catch (SocketException se) {
+                Print.logError("Connection closed");
+                termError = se;
+            } catch (Throwable t) {
+                Print.logException("?", t);
+                termError = t;
+            }
+
+            /* cancel session timer */
+            if (sessionTimer != null) {
+                sessionTimer.cancel();
+            }
+
+            /* client session terminated */
+            if (clientHandler != null) {
+                try {
+                    byte finalPacket[] = clientHandler.getFinalPacket(termError != null);
+                    if ((finalPacket != null) && (finalPacket.length > 0)) {
+                        if (this.client.isTCP()) {
+                            // TCP: Send response over socket connection
+                            this.writeBytes(output, finalPacket);
                         } else {
-                            // end of stream within expected packet
-                            Print.logWarn(eos.getMessage());
-                            termError = eos;
+                            // UDP: Send response via datagram ('ServerSocketThread.this.datagramSocket' is non-null)
+                            int rp = this._getRemotePort(clientHandler.getResponsePort());
+                            this.sendUDPResponse(inetAddr, rp, finalPacket);
                         }
-                    } else {
-                        // We're at the end of the UDP datastream
                     }
-                } catch (SocketException se) {
-                    Print.logError("Connection closed");
-                    termError = se;
                 } catch (Throwable t) {
-                    Print.logException("?", t);
-                    termError = t;
+                    Print.logException("Final packet transmission", t);
                 }
-
-                /* client session terminated */
-                if (clientHandler != null) {
-                    try {
-                        byte finalPacket[] = clientHandler.getFinalPacket(termError != null);
-                        if ((finalPacket != null) && (finalPacket.length > 0)) {
-                            if (this.client.isTCP()) {
-                                // TCP: Send response over socket connection
-                                this.writeBytes(output, finalPacket);
-                            } else {
-                                // UDP: Send response via datagram ('ServerSocketThread.this.datagramSocket' is non-null)
-                                int rp = this._getRemotePort(clientHandler.getResponsePort());
-                                this.sendUDPResponse(inetAddr, rp, finalPacket);
-                            }
-                        }
-                    } catch (Throwable t) {
-                        Print.logException("Final packet transmission", t);
-                    }
-                    clientHandler.sessionTerminated(termError, this.readByteCount, this.writeByteCount);
-                    if (clientHandler instanceof AbstractClientPacketHandler) {
-                        // clear the session so that it doesn't hold on to an instance of this class
-                        ((AbstractClientPacketHandler)clientHandler).setSessionInfo(null);
-                    }
+                clientHandler.sessionTerminated(termError, this.readByteCount, this.writeByteCount);
+                if (clientHandler instanceof AbstractClientPacketHandler) {
+                    // clear the session so that it doesn't hold on to an instance of this class
+                    ((AbstractClientPacketHandler)clientHandler).setSessionInfo(null);
                 }
+            }
 
-                /* flush output before closing */
-                if (output != null) { // TCP
-                    try {
-                        output.flush();
-                    } catch (IOException ioe) {
-                        Print.logException("Flush", ioe);
-                    } catch (Throwable t) {
-                        Print.logException("?", t);
-                    }
-                }
-                
-                /* linger on close */
+            /* flush output before closing */
+            if (output != null) { // TCP
                 try {
-                    this.client.setSoLinger(ServerSocketThread.this.getLingerTimeoutSec()); // (seconds)
-                } catch (SocketException se) {
-                    Print.logException("setSoLinger", se);
+                    output.flush();
+                } catch (IOException ioe) {
+                    Print.logException("Flush", ioe);
                 } catch (Throwable t) {
                     Print.logException("?", t);
                 }
+            }
+            
+            /* close socket (half-close now, close after delay) */
+            ServerSocketThread.this._closeLater(this.client);
 
-                /* close socket */
-                try { 
-                    this.client.close(); 
-                } catch (IOException ioe) {
-                    /* unable to close? */
-                }
-    
-                /* clear for next requestor */
-                synchronized (this.runLock) {
-                    this.client = null;
-                }
-
-            } // while (true)
-
-        } // run()
+        } // runSession()
         
         // ----------------------------
 
@@ -1588,6 +2752,17 @@ public class ServerSocketThread
             } else
             if (clientPort <= 0) {
                 Print.logWarn("Unable to send final packet Datagram: unknown port");
+            } else
+            if (ServerSocketThread.this._queueDatagram(this.client.getDatagramChannel(), new InetSocketAddress(clientAddr, clientPort), pkt)) {
+                // queued for the datagram sender
+                this.writeByteCount += pkt.length;
+            } else
+            if (ACK_FROM_LISTEN_PORT && (this.client.getDatagramChannel() != null)) {
+                // respond on the channel which received the datagram
+                DatagramChannel dc = this.client.getDatagramChannel();
+                Print.logDebug("UDP Response (from %d to %s:%d) 0x%s", dc.socket().getLocalPort(), clientAddr.toString(), clientPort, StringTools.toHexString(pkt));
+                dc.send(ByteBuffer.wrap(pkt), new InetSocketAddress(clientAddr, clientPort));
+                this.writeByteCount += pkt.length;
             } else {
                 // get datagram socket
                 boolean closeSocket = false;
@@ -1618,13 +2793,46 @@ public class ServerSocketThread
 
         private void writeBytes(OutputStream output, byte cmd[]) throws IOException {
             // 'ouput' will be null for UDP
-            if ((output != null) && (cmd != null) && (cmd.length > 0)) {
+            if (cmd != null) {
+                this.writeBytes(output, cmd, 0, cmd.length);
+            }
+        }
+
+        private void writeBuffers(OutputStream output, ByteBuffer resp[]) throws IOException {
+            // 'ouput' will be null for UDP
+            if ((output == null) || (resp == null) || (resp.length == 0)) {
+                // nothing to write
+            } else
+            if ((resp.length == 1) && resp[0].hasArray()) {
+                // write single buffer as-is
+                ByteBuffer bb = resp[0];
+                this.writeBytes(output, bb.array(), bb.arrayOffset() + bb.position(), bb.remaining());
+                bb.position(bb.limit());
+            } else {
+                // streams do not support gathering writes, combine into a single write
+                int len = 0;
+                for (int i = 0; i < resp.length; i++) {
+                    len += (resp[i] != null)? resp[i].remaining() : 0;
+                }
+                byte b[] = new byte[len];
+                for (int i = 0, n = 0; i < resp.length; i++) {
+                    if (resp[i] != null) {
+                        int r = resp[i].remaining();
+                        resp[i].get(b, n, r);
+                        n += r;
+                    }
+                }
+                this.writeBytes(output, b, 0, b.length);
+            }
+        }
+
+        private void writeBytes(OutputStream output, byte cmd[], int ofs, int len) throws IOException {
+            // 'ouput' will be null for UDP
+            if ((output != null) && (cmd != null) && (len > 0)) {
                 try {
-                    //String c = StringTools.toStringValue(cmd);
-                    //Print.logDebug("<-- [" + c.length() + "] " + c);
-                    output.write(cmd);
+                    output.write(cmd, ofs, len);
                     output.flush();
-                    this.writeByteCount += cmd.length;
+                    this.writeByteCount += len;
                 } catch (IOException t) {
                     Print.logError("writeBytes error - " + t);
                     throw t;
@@ -1632,16 +2840,35 @@ public class ServerSocketThread
             }
         }
 
-        private int readByte(ClientSocket client, ClientPacketHandler clientHandler, long timeoutAt, int byteNdx) throws IOException {
+        private int fillBuffer(ClientSocket client, long timeoutAt) throws IOException {
             // Read until:
             //  - Timeout
             //  - IO error
-            //  - Read byte
-            int ch;
+            //  - Read at least one byte
+            if (client.getDatagramChannel() != null) {
+                // datagram already received into a buffer
+                ByteBuffer data = client.getDatagramBuffer();
+                int n = (data != null)? data.remaining() : 0;
+                if (n <= 0) {
+                    int byteNdx = this.framer.getPacketByteIndex();
+                    if (byteNdx <= 0) {
+                        throw new SSEndOfStreamException("End of stream [empty packet]", byteNdx);
+                    } else {
+                        throw new SSEndOfStreamException("End of stream [@ " + byteNdx + "]", byteNdx);
+                    }
+                }
+                this.framer.put(data);
+                this.readByteCount += n;
+                return n;
+            }
             InputStream input = client.getInputStream();
             while (true) {
+                if (this.sessionExpired) {
+                    throw new SSSessionTimeoutException("Session timeout");
+                }
                 if (timeoutAt > 0L) {
                     long currentTimeMS = DateTime.getCurrentTimeMillis();
+                    int  byteNdx = this.framer.getPacketByteIndex();
                     if (currentTimeMS >= timeoutAt) {
                         if (byteNdx <= 0) {
                             throw new SSReadTimeoutException("Read timeout [empty packet]", byteNdx);
@@ -1649,33 +2876,39 @@ public class ServerSocketThread
                             throw new SSReadTimeoutException("Read timeout [@ " + byteNdx + "]", byteNdx);
                         }
                     }
-                    //if (input.available() <= 0) {
                     int timeout = (int)(timeoutAt - currentTimeMS);
-                    client.setSoTimeout(timeout);
-                    //}
+                    if (timeout != this.soTimeout) {
+                        client.setSoTimeout(timeout);
+                        this.soTimeout = timeout;
+                    }
                 }
                 try {
                     // this read is expected to time-out if no data is available
-                    ch = input.read();
-                    if (ch < 0) {
+                    int n = this.framer.read(input);
+                    if ((n < 0) && this.sessionExpired) {
+                        // input shutdown by session timer
+                        throw new SSSessionTimeoutException("Session timeout");
+                    } else
+                    if (n < 0) {
                         // socket likely closed by client
+                        int byteNdx = this.framer.getPacketByteIndex();
                         if (byteNdx <= 0) {
                             throw new SSEndOfStreamException("End of stream [empty packet]", byteNdx);
                         } else {
                             throw new SSEndOfStreamException("End of stream [@ " + byteNdx + "]", byteNdx);
                         }
                     }
-                    this.readByteCount++;
-                    return ch; // <-- valid character returned
+                    this.readByteCount += n;
+                    return n;
                 } catch (InterruptedIOException ie) {
                     // timeout
                     continue;
                 } catch (SocketException se) {
-                    // rethrow IO error
+                    if (this.sessionExpired) {
+                        // SSL socket closed by session timer
+                        throw new SSSessionTimeoutException("Session timeout");
+                    }
                     throw se;
-                } catch (IOException ioe) {
-                    // rethrow IO error
-                    throw ioe;
                 }
             }
         }
@@ -1687,90 +2920,114 @@ public class ServerSocketThread
             //  - Timeout
             //  - IO error
             //  - Read 'maxLen' characters
+            try {
+                return this.readFramedPacket(client, clientHandler);
+            } catch (SSReadTimeoutException te) {
+                throw te;
+            } catch (SSEndOfStreamException eos) {
+                throw eos;
+            } catch (SSSessionTimeoutException ste) {
+                throw ste;
+            } catch (IOException ioe) {
+                Print.logError("ReadLine error - " + ioe);
+                throw ioe;
+            }
+        }
+
+        private byte[] readPacket(ClientSocket client, ClientPacketHandler clientHandler) 
+            throws IOException { // SSReadTimeoutException, SSEndOfStreamException, SocketException
+            // Read until:
+            //  - Timeout
+            //  - IO error
+            //  - Read 'maxLen' characters
+            //  - Read 'actualLen' characters
+            try {
+                return this.readFramedPacket(client, clientHandler);
+            } catch (SSReadTimeoutException te) {
+                throw te;
+            } catch (SSEndOfStreamException eos) {
+                throw eos;
+            } catch (SSSessionTimeoutException ste) {
+                throw ste;
+            } catch (IOException ioe) {
+                Print.logError("ReadPacket error - " + ioe);
+                throw ioe;
+            }
+        }
+
+        private byte[] readFramedPacket(ClientSocket client, ClientPacketHandler clientHandler) 
+            throws IOException { // SSReadTimeoutException, SSEndOfStreamException, SocketException
+            // Bytes are read from the socket in bulk, and packets are sliced from the
+            // buffered data by the PacketFramer.  Bytes remaining after a packet has been
+            // returned are retained for the next call.
 
             /* timeouts */
-            long idleTimeoutMS = ServerSocketThread.this.getIdleTimeout();
-            long pcktTimeoutMS = ServerSocketThread.this.getPacketTimeout();
+            long idleTimeoutMS = ServerSocketThread.this.getIdleTimeout(clientHandler);
+            long pcktTimeoutMS = ServerSocketThread.this.getPacketTimeout(clientHandler);
             long pcktTimeoutAt = (idleTimeoutMS > 0L)? (DateTime.getCurrentTimeMillis() + idleTimeoutMS) : -1L;
+            long idlePollMS    = ServerSocketThread.getIdlePollInterval(clientHandler);
+            long idlePollAt    = (idlePollMS > 0L)? (DateTime.getCurrentTimeMillis() + idlePollMS) : -1L;
 
-            /* max read length */
-            int maxLen = this.getMaximumPacketLength(clientHandler); // safety net only
-            // no minimum
-            
-            /* set default socket timeout */
-            //client.setSoTimeout(10000);
-
-            /* packet */
-            byte buff[]  = new byte[maxLen];
-            int  buffLen = 0;
+            /* read packet */
             boolean isIdle = true;
-            long readStartTime = DateTime.getCurrentTimeMillis();
             try {
                 while (true) {
 
-                    /* read byte */
-                    int ch = this.readByte(client, clientHandler, pcktTimeoutAt, buffLen);
-                    // valid character returned
+                    /* packet already available? */
+                    byte packet[] = this.framer.nextPacket();
+                    if (packet != null) {
+                        return packet;
+                    }
 
                     /* reset idle timeout */
-                    if (isIdle) {
+                    if (isIdle && this.framer.isPacketStarted()) {
                         isIdle = false;
                         if (pcktTimeoutMS > 0L) {
-                            // reset timeout
+                            // reset packet timeout
                             pcktTimeoutAt = DateTime.getCurrentTimeMillis() + pcktTimeoutMS;
                         }
                     }
 
-                    /* check special characters */
-                    if (ServerSocketThread.this.isLineTerminatorChar(ch)) {
-                        // end of line (typically '\n')
-                        break;
-                    } else
-                    if (ServerSocketThread.this.isIgnoreChar(ch)) {
-                        // ignore this character (typically '\r')
-                        continue;
-                    } else
-                    if (ServerSocketThread.this.isBackspaceChar(ch)) {
-                        if (buffLen > 0) {
-                            buffLen--;
-                        }
-                        continue;
-                    } else
-                    if (ch < ' ') {
-                        // ignore non-printable characters
-                        if (ch != '\t') { // keep tab chars
-                            continue;
+                    /* read more bytes */
+                    if (isIdle && (idlePollAt > 0L) && ((pcktTimeoutAt <= 0L) || (idlePollAt < pcktTimeoutAt))) {
+                        try {
+                            this.fillBuffer(client, idlePollAt);
+                        } catch (SSReadTimeoutException poll) {
+                            // idle poll: send any unsolicited packet
+                            long now = DateTime.getCurrentTimeMillis();
+                            byte idlePacket[] = null;
+                            try {
+                                idlePacket = ServerSocketThread.getIdlePacket(clientHandler);
+                            } catch (Throwable t) {
+                                Print.logException("Idle packet", t);
+                            }
+                            if ((idlePacket != null) && (idlePacket.length > 0)) {
+                                this.writeBytes(client.getOutputStream(), idlePacket);
+                                if (idleTimeoutMS > 0L) {
+                                    // wait for the client response
+                                    pcktTimeoutAt = now + idleTimeoutMS;
+                                }
+                            }
+                            idlePollAt = now + idlePollMS;
                         }
-                    }
-
-                    /* save byte */
-                    if (buffLen >= buff.length) { // overflow?
-                        byte newBuff[] = new byte[buff.length * 2];
-                        System.arraycopy(buff, 0, newBuff, 0, buff.length);
-                        buff = newBuff;
-                    }
-                    buff[buffLen++] = (byte)ch;
-
-                    /* check lengths */
-                    if ((maxLen > 0) && (buffLen >= maxLen)) {
-                        // we've read all the bytes we can
-                        break;
+                    } else {
+                        this.fillBuffer(client, pcktTimeoutAt);
                     }
 
                 }
-            } catch (SSReadTimeoutException te) {
+            } catch (SSReadTimeoutException t) {
                 // This could mean a protocol error
-                if (buffLen > 0) {
-                    Print.logWarn("Timeout: 0x" + StringTools.toStringValue(buff, 0, buffLen));
+                if (this.framer.getPacketByteIndex() > 0) {
+                    Print.logWarn("Timeout: 0x" + this.framer.getPartialPacketString());
                 }
                 if (ServerSocketThread.this.getTerminateOnTimeout()) {
-                    throw te;
+                    throw t;
                 }
-           } catch (SSEndOfStreamException eos) {
-                if (client.isTCP()) { // readLine
+            } catch (SSEndOfStreamException eos) {
+                if (client.isTCP()) { // readPacket
                     // This could mean a protocol error
-                    if (buffLen > 0) {
-                        Print.logWarn("EOS: " + StringTools.toStringValue(buff, 0, buffLen));
+                    if (this.framer.getPacketByteIndex() > 0) {
+                        Print.logWarn("EOS: " + this.framer.getPartialPacketString());
                     }
                     Print.logError(eos.getMessage());
                     throw eos;
@@ -1778,214 +3035,979 @@ public class ServerSocketThread
                     // We're at the end of the UDP datastream (may be an expected condition)
                     // (just fall through to return what bytes we've already read.)
                 }
-            } catch (IOException ioe) {
-                Print.logError("ReadLine error - " + ioe);
-                throw ioe;
             }
-            long readEndTime = DateTime.getCurrentTimeMillis();
 
-            /* return packet */
-            if (buff.length == buffLen) {
-                // highly unlikely
-                return buff;
+            /* return partial packet */
+            return this.framer.flushPacket();
+
+        }
+        
+        public void close() throws IOException {
+            IOException rethrowIOE = null;
+            synchronized (this.runLock) {
+                if (this.client != null) {
+                    try { 
+                        this.client.close(); 
+                    } catch (IOException ioe) {
+                        /* unable to close? */
+                        rethrowIOE = ioe;
+                    }
+                    this.client = null;
+                }
+            }
+            if (rethrowIOE != null) {
+                throw rethrowIOE;
+            }
+        }
+
+    }
+    
+    // ------------------------------------------------------------------------
+    // ------------------------------------------------------------------------
+
+    private static final int  DATAGRAM_BATCH_SIZE   = 16;
+
+    /**
+    *** Gets the pool of datagram receive buffers (sized to the maximum packet length)
+    **/
+    private ByteBufferPool _getDatagramBufferPool()
+    {
+        synchronized (this.poolLock) {
+            if (this.datagramBufferPool == null) {
+                int maxPooled = this.datagramReceivers.length * DATAGRAM_BATCH_SIZE;
+                this.datagramBufferPool = new ByteBufferPool(this.getMaximumPacketLength(), maxPooled, true);
+            }
+            return this.datagramBufferPool;
+        }
+    }
+
+    /**
+    *** Queues a UDP response for the asynchronous datagram sender
+    *** @param dc   The channel which received the datagram (null if received on the DatagramSocket)
+    *** @param to   The client address
+    *** @param pkt  The response
+    *** @return True if the response was handled (queued or discarded), false if responses 
+    ***         should be sent synchronously
+    **/
+    private boolean _queueDatagram(DatagramChannel dc, SocketAddress to, byte pkt[])
+    {
+        if ((this.datagramSendQueueSize <= 0) || ((dc == null) && (this.datagramSocket == null))) {
+            return false;
+        }
+        DatagramSender sender;
+        synchronized (this.poolLock) {
+            if (this.datagramSender == null) {
+                this.datagramSender = new DatagramSender(this.datagramSendQueueSize);
+                this.datagramSender.start();
+            }
+            sender = this.datagramSender;
+        }
+        sender.queue(dc, to, pkt);
+        return true;
+    }
+
+    /**
+    *** Sends a datagram from the listening UDP socket.  This is used for responses
+    *** sent after the session which received the client datagram has ended.
+    *** @param to   The client address
+    *** @param pkt  The datagram
+    *** @throws IOException if this is not a UDP listener, or the send fails
+    **/
+    public void sendDatagram(SocketAddress to, byte pkt[])
+        throws IOException
+    {
+        DatagramChannel dc = ((this.datagramChannels != null) && (this.datagramChannels.length > 0))? this.datagramChannels[0] : null;
+        if ((pkt == null) || (pkt.length == 0)) {
+            // nothing to send
+        } else
+        if (this._queueDatagram(dc, to, pkt)) {
+            // queued for the datagram sender
+        } else
+        if (dc != null) {
+            // non-blocking channel, a full send buffer drops the datagram
+            if (dc.send(ByteBuffer.wrap(pkt), to) <= 0) {
+                Print.logWarn("UDP send buffer full, datagram dropped: " + to);
+            }
+        } else
+        if (this.datagramSocket != null) {
+            this.datagramSocket.send(new DatagramPacket(pkt, pkt.length, to));
+        } else {
+            throw new IOException("Not a UDP listener");
+        }
+    }
+
+    /**
+    *** DatagramSender: sends queued UDP responses through the listening socket/channel,
+    *** so that sessions do not wait on datagram transmission
+    **/
+    private class DatagramSender
+        extends Thread
+    {
+
+        private java.util.List<Object[]>        sendQueue       = new LinkedList<Object[]>();
+        private int                             maxQueueSize    = 0;
+        private volatile Selector               selector        = null;
+        private boolean                         running         = true;
+        private long                            sendCount       = 0L;
+        private long                            dropCount       = 0L;
+
+        public DatagramSender(int maxQueueSize) {
+            super("DatagramSender_" + ServerSocketThread.this.getLocalPort());
+            this.maxQueueSize = maxQueueSize;
+            this.setDaemon(true);
+        }
+
+        public long getDropCount() {
+            synchronized (this.sendQueue) {
+                return this.dropCount;
+            }
+        }
+
+        public void queue(DatagramChannel dc, SocketAddress to, byte pkt[]) {
+            synchronized (this.sendQueue) {
+                if (this.sendQueue.size() >= this.maxQueueSize) {
+                    // queue full, discard (UDP delivery is not guaranteed)
+                    if ((this.dropCount++ % 1000L) == 0L) {
+                        Print.logWarn("UDP send queue full, response discarded [" + this.dropCount + " discarded]");
+                    }
+                    return;
+                }
+                this.sendQueue.add(new Object[] { dc, to, ByteBuffer.wrap(pkt) });
+                if (this.sendQueue.size() == 1) {
+                    this.sendQueue.notify(); // sender may be waiting
+                }
+            }
+        }
+
+        public void run() {
+            Object batch[][] = new Object[DATAGRAM_BATCH_SIZE][];
+            while (true) {
+
+                /* wait for queued responses, take a batch */
+                int count = 0;
+                synchronized (this.sendQueue) {
+                    while (this.running && this.sendQueue.isEmpty()) {
+                        try { this.sendQueue.wait(); } catch (InterruptedException ie) {}
+                    }
+                    if (!this.running) {
+                        break;
+                    }
+                    while ((count < batch.length) && !this.sendQueue.isEmpty()) {
+                        batch[count++] = this.sendQueue.remove(0);
+                    }
+                }
+
+                /* send batch */
+                for (int i = 0; i < count; i++) {
+                    DatagramChannel dc = (DatagramChannel)batch[i][0];
+                    SocketAddress   to = (SocketAddress)batch[i][1];
+                    ByteBuffer      bb = (ByteBuffer)batch[i][2];
+                    batch[i] = null;
+                    try {
+                        if (!this.send(dc, to, bb)) {
+                            synchronized (this.sendQueue) { this.dropCount++; }
+                        }
+                    } catch (IOException ioe) {
+                        Print.logError("UDP response error - " + ioe);
+                    } catch (Throwable th) { // CancelledKeyException, ClosedSelectorException, etc
+                        Print.logException("UDP response error", th);
+                        synchronized (this.sendQueue) { this.dropCount++; }
+                        // discard the selector, a new one is opened when needed
+                        if (this.selector != null) {
+                            try { this.selector.close(); } catch (Throwable t) { /* ignore */ }
+                            this.selector = null;
+                        }
+                    }
+                }
+
+            }
+
+            /* shutdown */
+            if (this.selector != null) {
+                try { this.selector.close(); } catch (Throwable t) { /* ignore */ }
+            }
+
+        }
+
+        private boolean send(DatagramChannel dc, SocketAddress to, ByteBuffer bb) throws IOException {
+            if (dc != null) {
+                // non-blocking channel (shared with the receivers)
+                for (int retry = 0; retry < 2; retry++) {
+                    if (dc.send(bb, to) > 0) {
+                        return true;
+                    }
+                    // socket send buffer is full, wait until writable
+                    if (this.selector == null) {
+                        this.selector = Selector.open();
+                    }
+                    SelectionKey key = dc.keyFor(this.selector);
+                    if (key == null) {
+                        dc.register(this.selector, SelectionKey.OP_WRITE);
+                    }
+                    this.selector.select(SELECTOR_TIMEOUT_MS);
+                    this.selector.selectedKeys().clear();
+                }
+                return false;
             } else {
-                // resize buffer
-                byte newBuff[] = new byte[buffLen];
-                System.arraycopy(buff, 0, newBuff, 0, buffLen);
-                return newBuff;
+                DatagramSocket ds = ServerSocketThread.this.datagramSocket;
+                if ((ds == null) || ds.isClosed()) {
+                    return false;
+                }
+                ds.send(new DatagramPacket(bb.array(), bb.arrayOffset() + bb.position(), bb.remaining(), to));
+                return true;
             }
+        }
 
+        public void shutdown() {
+            synchronized (this.sendQueue) {
+                this.running = false;
+                this.sendQueue.notify();
+            }
+            Selector sel = this.selector;
+            if (sel != null) {
+                sel.wakeup();
+            }
         }
 
-        private byte[] readPacket(ClientSocket client, ClientPacketHandler clientHandler) 
-            throws IOException { // SSReadTimeoutException, SSEndOfStreamException, SocketException
-            // Read until:
-            //  - Timeout
-            //  - IO error
-            //  - Read 'maxLen' characters
-            //  - Read 'actualLen' characters
+    }
 
-            /* timeouts */
-            long idleTimeoutMS = ServerSocketThread.this.getIdleTimeout();
-            long pcktTimeoutMS = ServerSocketThread.this.getPacketTimeout();
-            long pcktTimeoutAt = (idleTimeoutMS > 0L)? (DateTime.getCurrentTimeMillis() + idleTimeoutMS) : -1L;
+    // ------------------------------------------------------------------------
+
+    /**
+    *** DatagramReceiver: drains available datagrams from a DatagramChannel into pooled
+    *** buffers, then handles each datagram session inline
+    **/
+    private class DatagramReceiver
+        extends Thread
+    {
 
-            /* packet/read length */
-            int maxLen = this.getMaximumPacketLength(clientHandler); // safety net only
-            int minLen = this.getMinimumPacketLength(clientHandler); // tcp/udp dependent
+        private DatagramChannel                 channel         = null;
+        private ClientSocket                    client          = null;
+        private ServerSessionThread             session         = null;
+        private Selector                        selector        = null;
+        private boolean                         running         = true;
 
-            /* set default socket timeout */
-            //client.setSoTimeout(10000);
+        public DatagramReceiver(int ndx, DatagramChannel dc) {
+            super("DatagramReceiver_" + ServerSocketThread.this.getLocalPort() + "_" + ndx);
+            this.channel = dc;
+            this.client  = new ClientSocket(dc);
+            this.session = new ServerSessionThread(null, false); // not started
+        }
 
-            /* packet termination pattern */
-            byte pktTerm[] = ServerSocketThread.this.getPacketTerminatorPattern();
-            int  pktState  = 0;
+        public void run() {
 
-            /* read packet */
-            byte packet[] = new byte[maxLen];
-            int  packetLen = 0;
-            boolean isIdle = true;
-            boolean isTextLine = false;
+            /* register for reads */
             try {
-                int actualLen = 0;
-                while (true) {
+                this.selector = Selector.open();
+                synchronized (this.channel) {
+                    this.channel.configureBlocking(false); // may be shared by other receivers
+                }
+                this.channel.register(this.selector, SelectionKey.OP_READ);
+            } catch (IOException ioe) {
+                Print.logException("Unable to start UDP receiver " + this.getName(), ioe);
+                return;
+            }
 
-                    /* read byte */
-                    int lastByte = this.readByte(client, clientHandler, pcktTimeoutAt, packetLen);
-                    // valid byte returned 
+            /* receive loop */
+            ByteBufferPool pool = ServerSocketThread.this._getDatagramBufferPool();
+            ByteBuffer     data[] = new ByteBuffer[DATAGRAM_BATCH_SIZE];
+            SocketAddress  from[] = new SocketAddress[DATAGRAM_BATCH_SIZE];
+            while (this.running && this.channel.isOpen()) {
 
-                    /* reset idle timeout */
-                    if (isIdle) {
-                        isIdle = false;
-                        if (pcktTimeoutMS > 0L) {
-                            // reset packet timeout
-                            pcktTimeoutAt = DateTime.getCurrentTimeMillis() + pcktTimeoutMS;
+                /* wait for datagrams */
+                try {
+                    this.selector.select(SELECTOR_TIMEOUT_MS);
+                    this.selector.selectedKeys().clear();
+                } catch (Throwable t) { // IOException, ClosedSelectorException
+                    break;
+                }
+
+                /* drain available datagrams */
+                int count = 0;
+                try {
+                    while (count < data.length) {
+                        ByteBuffer bb = pool.acquire();
+                        SocketAddress sa = this.channel.receive(bb);
+                        if (sa == null) {
+                            pool.release(bb); // no more datagrams
+                            break;
                         }
+                        bb.flip();
+                        data[count] = bb;
+                        from[count] = sa;
+                        count++;
                     }
+                } catch (ClosedChannelException cce) {
+                    // shutdown support (discard any received datagrams)
+                    this.running = false;
+                } catch (IOException ioe) {
+                    Print.logError("Connection - " + ioe);
+                }
 
-                    /* look for line terminator? */
-                    if (isTextLine) {
-                        if (ServerSocketThread.this.isLineTerminatorChar(lastByte)) {
-                            // end of line (typically '\n')
-                            break;
-                        } else
-                        if (ServerSocketThread.this.isIgnoreChar(lastByte)) {
-                            // ignore this character (typically '\r')
-                            continue;
-                        } else {
-                            // save byte
-                            packet[packetLen++] = (byte)lastByte;
+                /* admission control (datagrams are handled inline, memory only) */
+                if ((count > 0) && (ServerSocketThread.this._checkAdmission() != AdmissionController.ADMIT)) {
+                    for (int i = 0; i < count; i++) {
+                        pool.release(data[i]);
+                        data[i] = null;
+                        from[i] = null;
+                    }
+                    count = 0;
+                }
+
+                /* handle sessions */
+                for (int i = 0; i < count; i++) {
+                    try {
+                        InetAddress ipAddr = (from[i] instanceof InetSocketAddress)? 
+                            ((InetSocketAddress)from[i]).getAddress() : null;
+                        if (this.running && ServerSocketThread.this._checkRateLimit(ipAddr)) {
+                            this.client.setDatagram(data[i], from[i]);
+                            this.session.setClient(this.client);
+                            this.session.runSession();
                         }
-                    } else {
-                        // save byte
-                        packet[packetLen++] = (byte)lastByte;
+                    } catch (Throwable t) {
+                        Print.logException("Unexpected exception: ", t);
+                    } finally {
+                        this.session.setClient(null);
+                        this.client.setDatagram(null, null);
+                        pool.release(data[i]);
+                        data[i] = null;
+                        from[i] = null;
                     }
+                }
 
-                    /* check packet completion */
-                    if (packetLen >= maxLen) {
-                        // we've read all the bytes we can
-                        break;
-                    } else
-                    if (pktTerm != null) {
-                        // check packet termination pattern
-                        if (pktTerm[pktState] == (byte)lastByte) {
-                            pktState++;
-                            if (pktState >= pktTerm.length) {
-                                // we've matched the packet terminating pattern
-                                break;
-                            }
-                        } else {
-                            // back to initial state
-                            pktState = 0;
+            }
+
+            /* shutdown */
+            Print.logInfo("Shutdown UDP receiver " + this.getName());
+            try {
+                this.selector.close();
+            } catch (Throwable t) {
+                Print.logError("Error closing selector " + t);
+            }
+
+        }
+
+        public void shutdown() {
+            this.running = false;
+            if (this.selector != null) {
+                this.selector.wakeup();
+            }
+        }
+
+    }
+
+    // ------------------------------------------------------------------------
+
+    private static final long SELECTOR_TIMEOUT_MS   = 250L;
+
+    /**
+    *** SelectorLoop: drives the non-blocking sessions assigned to it
+    **/
+    private class SelectorLoop
+        extends Thread
+    {
+
+        private Selector                        selector        = null;
+        private java.util.List<SocketChannel>   newChannels     = null;
+        private java.util.List<ChannelSession>  expiredSessions = null;
+        private boolean                         running         = true;
+
+        public SelectorLoop(int ndx) throws IOException {
+            super("SelectorLoop_" + ServerSocketThread.this.getLocalPort() + "_" + ndx);
+            this.selector        = Selector.open();
+            this.newChannels     = new Vector<SocketChannel>();
+            this.expiredSessions = new Vector<ChannelSession>();
+        }
+
+        public void addChannel(SocketChannel sc) {
+            this.newChannels.add(sc);
+            this.selector.wakeup();
+        }
+
+        public void addExpiredSession(ChannelSession cs) {
+            // called from the TimerWheel thread
+            this.expiredSessions.add(cs);
+            this.selector.wakeup();
+        }
+
+        public void shutdown() {
+            this.running = false;
+            this.selector.wakeup();
+        }
+
+        public void run() {
+            while (this.running) {
+
+                /* wait for ready channels (or wakeup) */
+                try {
+                    this.selector.select();
+                } catch (IOException ioe) {
+                    Print.logException("Selector", ioe);
+                    break;
+                }
+
+                /* register newly accepted channels */
+                while (!this.newChannels.isEmpty()) {
+                    SocketChannel sc = this.newChannels.remove(0);
+                    ChannelSession cs = new ChannelSession(sc);
+                    cs.start(this);
+                }
+
+                /* handle ready channels */
+                for (Iterator<SelectionKey> i = this.selector.selectedKeys().iterator(); i.hasNext();) {
+                    SelectionKey key = i.next();
+                    i.remove();
+                    ChannelSession cs = (ChannelSession)key.attachment();
+                    try {
+                        if (key.isValid() && key.isWritable()) {
+                            cs.handleWrite();
                         }
-                    } else
-                    if ((actualLen > 0) && (packetLen >= actualLen)) {
-                        // we've read the bytes we expected to read
-                        break;
-                    } else
-                    if ((clientHandler != null) && (actualLen <= 0) && (packetLen >= minLen)) {
-                        // we've read the minimum number of bytes
-                        // get the actual/next expected packet length
-                        int     pktLen  = clientHandler.getActualPacketLength(packet, packetLen);
-                        boolean actual  = (pktLen < PACKET_LEN_INCREMENTAL_);
-                        int     nextLen = actual? pktLen : (pktLen & 0xFFFF);
-                        // check next packet length
-                        if (nextLen == packetLen) {
-                            // already have exactly what we need
-                            break; 
-                        } else
-                        if (nextLen == PACKET_LEN_ASCII_LINE_TERMINATOR) {
-                            // look for line terminator character
-                            //Print.logInfo("Last Byte Read: %s [%s]", StringTools.toHexString(lastByte,8), StringTools.toHexString(packet[packetLen-1]));
-                            if (ServerSocketThread.this.isLineTerminatorChar(lastByte)) {
-                                // last byte was already a line terminator
-                                packetLen--; // remove terminator
-                                break;
-                            } else {
-                                actualLen = maxLen;
-                                isTextLine = true;
-                            }
-                        } else
-                        if (nextLen <= PACKET_LEN_END_OF_STREAM) {
-                            // read the rest of the stream
-                            actualLen = maxLen;
-                        } else
-                        if (nextLen > maxLen) {
-                            // specified length is greater that the maximum
-                            Print.logStackTrace("Actual length [" + nextLen + "] > Maximum length [" + maxLen + "]");
-                            actualLen = maxLen;
-                        } else
-                        if (actual) {
-                            // read until actual size
-                            actualLen = nextLen;
-                        } else {
-                            // reset minimum to next length
-                            minLen = nextLen;
+                        if (key.isValid() && key.isReadable()) {
+                            cs.handleRead();
                         }
+                    } catch (CancelledKeyException cke) {
+                        // channel closed
+                    } catch (IOException ioe) {
+                        Print.logError("Connection closed - " + ioe);
+                        cs.terminate(ioe);
+                    } catch (Throwable t) {
+                        Print.logException("?", t);
+                        cs.terminate(t);
                     }
+                }
 
-                } // while (true)
-            } catch (SSReadTimeoutException t) {
-                // This could mean a protocol error
-                if (packetLen > 0) {
-                    Print.logWarn("Timeout: 0x" + StringTools.toHexString(packet, 0, packetLen));
+                /* check timeouts of sessions whose timer has expired */
+                if (!this.expiredSessions.isEmpty()) {
+                    long now = DateTime.getCurrentTimeMillis();
+                    while (!this.expiredSessions.isEmpty()) {
+                        ChannelSession cs = this.expiredSessions.remove(0);
+                        try {
+                            cs.checkTimeouts(now);
+                        } catch (Throwable t) {
+                            Print.logException("?", t);
+                            cs.terminate(t);
+                        }
+                    }
                 }
-                if (ServerSocketThread.this.getTerminateOnTimeout()) {
-                    throw t;
+
+            }
+
+            /* close all remaining sessions */
+            try {
+                SelectionKey keys[] = this.selector.keys().toArray(new SelectionKey[0]);
+                for (int k = 0; k < keys.length; k++) {
+                    Object att = keys[k].attachment();
+                    if (att instanceof ChannelSession) {
+                        ((ChannelSession)att).close();
+                    }
                 }
-            } catch (SSEndOfStreamException eos) {
-                if (client.isTCP()) { // readPacket
-                    // This could mean a protocol error
-                    if (packetLen > 0) {
-                        Print.logWarn("EOS: " + StringTools.toHexString(packet, 0, packetLen));
+                this.selector.close();
+            } catch (Throwable t) {
+                Print.logError("Error closing selector " + t);
+            }
+
+        }
+
+    }
+
+    // ------------------------------------------------------------------------
+
+    /**
+    *** ChannelSession: a non-blocking client session driven by a SelectorLoop
+    **/
+    private class ChannelSession
+        implements SessionInfo
+    {
+
+        private SocketChannel                   channel         = null;
+        private TLSChannel                      tls             = null;
+        private ReadableByteChannel             input           = null;
+        private GatheringByteChannel            output          = null;
+        private SelectorLoop                    loop            = null;
+        private SelectionKey                    key             = null;
+        private TimerWheel.Timeout              timer           = null;
+        private Runnable                        timerTask       = null;
+        private InetAddress                     inetAddr        = null;
+        private int                             remotePort      = -1;
+        private ClientPacketHandler             clientHandler   = null;
+        private PacketFramer                    framer          = null;
+        private java.util.List<ByteBuffer>      writeQueue      = new LinkedList<ByteBuffer>();
+        private long                            readByteCount   = 0L;
+        private long                            writeByteCount  = 0L;
+        private long                            sessionTimeoutAt= -1L;
+        private long                            readTimeoutAt   = -1L;
+        private long                            closeTimeoutAt  = -1L;
+        private long                            idlePollAt      = -1L;
+        private boolean                         inPacket        = false;
+        private boolean                         closing         = false;
+        private boolean                         counted         = false;
+        private int                             promptIndex     = 0;
+
+        public ChannelSession(SocketChannel channel) {
+            this.channel    = channel;
+            this.input      = channel;
+            this.output     = channel;
+            this.inetAddr   = channel.socket().getInetAddress();
+            this.remotePort = channel.socket().getPort();
+        }
+
+        public int getLocalPort() {
+            return ServerSocketThread.this.getLocalPort();
+        }
+
+        public int getRemotePort() {
+            int rPort = ServerSocketThread.this.getRemotePort(); // likely always '0'
+            return (rPort > 0)? rPort : this.remotePort;
+        }
+
+        public boolean isTCP() {
+            return true;
+        }
+
+        public boolean isUDP() {
+            return false;
+        }
+
+        public int getAvailableBytes() {
+            return (this.framer != null)? this.framer.getBufferedLength() : 0;
+        }
+
+        public long getReadByteCount() {
+            return this.readByteCount;
+        }
+
+        public long getWriteByteCount() {
+            return this.writeByteCount;
+        }
+
+        public InetAddress getInetAddress() {
+            return this.inetAddr;
+        }
+
+        public void start(SelectorLoop loop) {
+            this.loop = loop;
+            this.setCounted(true);
+            Print.logInfo("Remote client port: " + this.inetAddr + ":" + this.remotePort + "[" + this.getLocalPort() + "]");
+
+            /* session timeout */
+            long now = DateTime.getCurrentTimeMillis();
+            long sessionTimeoutMS = ServerSocketThread.this.getSessionTimeout();
+            this.sessionTimeoutAt = (sessionTimeoutMS > 0L)? (now + sessionTimeoutMS) : -1L;
+
+            /* TLS transport */
+            if (ServerSocketThread.this.sslContext != null) {
+                try {
+                    SSLEngine engine = ServerSocketThread.this.sslContext.createSSLEngine(this.inetAddr.getHostAddress(), this.remotePort);
+                    this.tls    = new TLSChannel(this.channel, engine, ServerSocketThread.this.tlsStats);
+                    this.input  = this.tls;
+                    this.output = this.tls;
+                } catch (Throwable t) {
+                    Print.logException("TLS session", t);
+                    this.close();
+                    return;
+                }
+            }
+
+            /* client session handler */
+            this.clientHandler = ServerSocketThread.this.getClientPacketHandler();
+            if (this.clientHandler != null) {
+                if (this.clientHandler instanceof AbstractClientPacketHandler) {
+                    // set a handle to this session
+                    ((AbstractClientPacketHandler)this.clientHandler).setSessionInfo(this);
+                }
+                this.clientHandler.sessionStarted(this.inetAddr, true, ServerSocketThread.this.isTextPackets());
+            }
+            this.framer = ServerSocketThread.this.createPacketFramer(this.clientHandler);
+
+            /* register for reads */
+            try {
+                this.key = this.channel.register(loop.selector, SelectionKey.OP_READ, this);
+            } catch (IOException ioe) {
+                Print.logError("Channel register - " + ioe);
+                this.terminate(ioe);
+                return;
+            }
+
+            /* initial packet/prompt */
+            try {
+                if (this.clientHandler == null) {
+                    throw new IOException("ClientPacketHandler not defined");
+                } else
+                if (this.clientHandler.terminateSession()) {
+                    this.terminate(null);
+                } else {
+                    this.queueWrite(this.clientHandler.getInitialPacket()); // may be null
+                    this.queueWrite(ServerSocketThread.this.getPrompt(this.promptIndex)); // may be null
+                    this.resetIdleTimeout(now);
+                }
+            } catch (Throwable t) {
+                Print.logException("?", t);
+                this.terminate(t);
+            }
+
+        }
+
+        private void resetIdleTimeout(long now) {
+            long idleTimeoutMS = ServerSocketThread.this.getIdleTimeout(this.clientHandler);
+            long idlePollMS    = ServerSocketThread.getIdlePollInterval(this.clientHandler);
+            this.readTimeoutAt = (idleTimeoutMS > 0L)? (now + idleTimeoutMS) : -1L;
+            this.idlePollAt    = (idlePollMS > 0L)? (now + idlePollMS) : -1L;
+            this.inPacket      = false;
+            this.updateTimer();
+        }
+
+        private void updateTimer() {
+            // schedule the TimerWheel for the nearest pending deadline
+            long deadline = -1L;
+            if (this.closing) {
+                deadline = this.closeTimeoutAt;
+            } else {
+                deadline = this.sessionTimeoutAt;
+                if ((this.readTimeoutAt > 0L) && ((deadline <= 0L) || (this.readTimeoutAt < deadline))) {
+                    deadline = this.readTimeoutAt;
+                }
+                if (!this.inPacket && (this.idlePollAt > 0L) && ((deadline <= 0L) || (this.idlePollAt < deadline))) {
+                    deadline = this.idlePollAt;
+                }
+            }
+            if ((this.timer != null) && this.timer.isPending() && (this.timer.getDeadline() == deadline)) {
+                return; // already scheduled
+            }
+            if (this.timer != null) {
+                this.timer.cancel();
+                this.timer = null;
+            }
+            if (deadline > 0L) {
+                if (this.timerTask == null) {
+                    this.timerTask = new Runnable() {
+                        public void run() {
+                            ChannelSession.this.loop.addExpiredSession(ChannelSession.this);
+                        }
+                    };
+                }
+                this.timer = TimerWheel.getSharedInstance().scheduleAt(this.timerTask, deadline);
+            }
+        }
+
+        public void handleRead() throws IOException {
+            int n;
+            do {
+
+                /* read available bytes */
+                n = this.framer.read(this.input);
+                if (n > 0) {
+                    this.readByteCount += n;
+                }
+
+                /* handle all complete packets */
+                for (;;) {
+                    if (this.closing) {
+                        return;
                     }
-                    Print.logError(eos.getMessage());
-                    throw eos;
+                    byte pkt[] = this.framer.nextPacket();
+                    if (pkt == null) {
+                        break;
+                    }
+                    this.handlePacket(pkt);
+                }
+
+            } while ((n > 0) && (this.tls != null) && this.tls.hasBufferedInput());
+
+            /* end of stream? */
+            if (n < 0) {
+                int byteNdx = this.framer.getPacketByteIndex();
+                if (byteNdx <= 0) {
+                    // end of stream at packet boundry
+                    Print.logInfo("End of stream [empty packet]");
+                    this.terminate(null);
                 } else {
-                    // We're at the end of the UDP datastream (may be an expected condition)
-                    // (just fall through to return what bytes we've already read.)
+                    // end of stream within expected packet
+                    Print.logWarn("EOS: " + this.framer.getPartialPacketString());
+                    this.terminate(new SSEndOfStreamException("End of stream [@ " + byteNdx + "]", byteNdx));
                 }
-            } catch (SocketException se) {
-                Print.logError("ReadPacket error - " + se);
-                throw se;
+                return;
+            }
+
+            /* start packet timeout */
+            if (!this.inPacket && this.framer.isPacketStarted()) {
+                this.inPacket = true;
+                long pcktTimeoutMS = ServerSocketThread.this.getPacketTimeout(this.clientHandler);
+                if (pcktTimeoutMS > 0L) {
+                    this.readTimeoutAt = DateTime.getCurrentTimeMillis() + pcktTimeoutMS;
+                    this.updateTimer();
+                }
+            }
+
+            /* TLS: send output queued during the handshake, or wait for handshake output */
+            if (this.tls != null) {
+                if (this.tls.isHandshakeComplete() && !this.writeQueue.isEmpty()) {
+                    this.handleWrite();
+                } else
+                if ((this.key != null) && this.key.isValid()) {
+                    this.key.interestOps(this.tls.hasPendingOutput()? 
+                        (SelectionKey.OP_READ | SelectionKey.OP_WRITE) : SelectionKey.OP_READ);
+                }
+            }
+
+        }
+
+        private void handlePacket(byte pkt[]) {
+
+            /* check for requested terminate */
+            if (this.clientHandler.terminateSession()) {
+                this.terminate(null);
+                return;
+            }
+
+            /* send packet to listeners */
+            if (ServerSocketThread.this.hasListeners()) {
+                try {
+                    ServerSocketThread.this.invokeListeners(pkt);
+                } catch (Throwable t) {
+                    // a listener can terminate this session
+                    this.terminate(null);
+                    return;
+                }
+            }
+
+            /* handle packet, and get response */
+            try {
+                this.queueWrite(ServerSocketThread.getHandlePacketBuffers(this.clientHandler, pkt));
+                if (this.clientHandler.terminateSession()) {
+                    this.terminate(null);
+                    return;
+                }
+            } catch (Throwable t) {
+                // the ClientPacketHandler can terminate this session
+                Print.logException("Unexpected exception: ", t);
+                this.terminate(null);
+                return;
+            }
+
+            /* display prompt, and wait for next packet */
+            try {
+                this.queueWrite(ServerSocketThread.this.getPrompt(++this.promptIndex)); // may be null
             } catch (IOException ioe) {
-                Print.logError("ReadPacket error - " + ioe);
-                throw ioe;
+                this.terminate(ioe);
+                return;
             }
+            this.resetIdleTimeout(DateTime.getCurrentTimeMillis());
 
-            /* return packet */
-            if (packet.length == packetLen) {
-                // highly unlikely
-                return packet;
-            } else {
-                // resize buffer
-                byte newPacket[] = new byte[packetLen];
-                System.arraycopy(packet, 0, newPacket, 0, packetLen);
-                return newPacket;
+        }
+
+        public void checkTimeouts(long now) {
+            if (!this.channel.isOpen()) {
+                return; // already closed
+            } else
+            if (this.closing) {
+                if ((this.closeTimeoutAt > 0L) && (now >= this.closeTimeoutAt)) {
+                    // unable to flush remaining data within the linger timeout
+                    this.close();
+                }
+            } else
+            if ((this.sessionTimeoutAt > 0L) && (now >= this.sessionTimeoutAt)) {
+                SSSessionTimeoutException ste = new SSSessionTimeoutException("Session timeout");
+                Print.logWarn(ste.getMessage());
+                this.terminate(ste);
+            } else
+            if ((this.readTimeoutAt > 0L) && (now >= this.readTimeoutAt)) {
+                int byteNdx = this.framer.getPacketByteIndex();
+                if (byteNdx > 0) {
+                    // This could mean a protocol error
+                    Print.logWarn("Timeout: 0x" + this.framer.getPartialPacketString());
+                }
+                if (ServerSocketThread.this.getTerminateOnTimeout()) {
+                    if (byteNdx <= 0) {
+                        // timeout at packet boundry
+                        Print.logInfo("Read timeout [empty packet]");
+                        this.terminate(null);
+                    } else {
+                        // timeout within expected packet
+                        SSReadTimeoutException rte = new SSReadTimeoutException("Read timeout [@ " + byteNdx + "]", byteNdx);
+                        Print.logWarn(rte.getMessage());
+                        this.terminate(rte);
+                    }
+                } else {
+                    // return what we have so far
+                    this.handlePacket(this.framer.flushPacket());
+                }
+            } else
+            if (!this.inPacket && (this.idlePollAt > 0L) && (now >= this.idlePollAt)) {
+                // idle poll: send any unsolicited packet
+                long idlePollMS = ServerSocketThread.getIdlePollInterval(this.clientHandler);
+                this.idlePollAt = (idlePollMS > 0L)? (now + idlePollMS) : -1L;
+                try {
+                    byte idlePacket[] = ServerSocketThread.getIdlePacket(this.clientHandler);
+                    if ((idlePacket != null) && (idlePacket.length > 0)) {
+                        this.queueWrite(idlePacket);
+                        this.resetIdleTimeout(now); // wait for the client response
+                    }
+                } catch (Throwable t) {
+                    Print.logException("Idle packet", t);
+                    this.terminate(t);
+                }
             }
+            if (this.channel.isOpen()) {
+                this.updateTimer(); // next deadline
+            }
+        }
 
+        private void queueWrite(byte b[]) throws IOException {
+            if ((b != null) && (b.length > 0)) {
+                this.writeQueue.add(ByteBuffer.wrap(b));
+                this.handleWrite();
+            }
         }
-        
-        public void close() throws IOException {
-            IOException rethrowIOE = null;
-            synchronized (this.runLock) {
-                if (this.client != null) {
-                    try { 
-                        this.client.close(); 
-                    } catch (IOException ioe) {
-                        /* unable to close? */
-                        rethrowIOE = ioe;
+
+        private void queueWrite(ByteBuffer bb[]) throws IOException {
+            if ((bb != null) && (bb.length > 0)) {
+                for (int i = 0; i < bb.length; i++) {
+                    if ((bb[i] != null) && bb[i].hasRemaining()) {
+                        this.writeQueue.add(bb[i]);
                     }
-                    this.client = null;
                 }
+                this.handleWrite();
             }
-            if (rethrowIOE != null) {
-                throw rethrowIOE;
+        }
+
+        public void handleWrite() throws IOException {
+
+            /* TLS handshake in progress */
+            if ((this.tls != null) && !this.tls.isHandshakeComplete()) {
+                if (this.closing) {
+                    this.close(); // terminated before the handshake completed
+                } else
+                if (!this.tls.flush()) {
+                    this.key.interestOps(SelectionKey.OP_READ | SelectionKey.OP_WRITE);
+                } else {
+                    this.handleRead(); // continue handshake (queued output is sent once complete)
+                }
+                return;
+            }
+
+            /* write queued output */
+            while (!this.writeQueue.isEmpty()) {
+                // gathering write of all queued buffers
+                ByteBuffer bb[] = this.writeQueue.toArray(new ByteBuffer[this.writeQueue.size()]);
+                long n = this.output.write(bb);
+                this.writeByteCount += n;
+                while (!this.writeQueue.isEmpty() && !this.writeQueue.get(0).hasRemaining()) {
+                    this.writeQueue.remove(0);
+                }
+                if (!this.writeQueue.isEmpty()) {
+                    // socket buffer is full, wait until writable
+                    this.key.interestOps(SelectionKey.OP_WRITE);
+                    return;
+                }
+            }
+            if ((this.tls != null) && !this.tls.flush()) {
+                // TLS records not yet written
+                this.key.interestOps(SelectionKey.OP_WRITE);
+                return;
+            }
+            if (this.closing) {
+                this.closeLater();
+            } else
+            if (this.key != null) {
+                this.key.interestOps(SelectionKey.OP_READ);
+            }
+        }
+
+        public void terminate(Throwable termError) {
+            if (this.closing) {
+                return;
+            }
+            this.closing = true;
+
+            /* client session terminated */
+            if (this.clientHandler != null) {
+                try {
+                    this.queueWrite(this.clientHandler.getFinalPacket(termError != null));
+                } catch (Throwable t) {
+                    Print.logException("Final packet transmission", t);
+                }
+                this.clientHandler.sessionTerminated(termError, this.readByteCount, this.writeByteCount);
+                if (this.clientHandler instanceof AbstractClientPacketHandler) {
+                    // clear the session so that it doesn't hold on to an instance of this class
+                    ((AbstractClientPacketHandler)this.clientHandler).setSessionInfo(null);
+                }
+            }
+
+            /* close once remaining output has been written */
+            if (this.writeQueue.isEmpty() || (this.key == null) || !this.key.isValid()) {
+                this.closeLater();
+            } else {
+                long lingerMS = (long)ServerSocketThread.this.getLingerTimeoutSec() * 1000L;
+                this.closeTimeoutAt = DateTime.getCurrentTimeMillis() + lingerMS;
+                this.key.interestOps(SelectionKey.OP_WRITE);
+                this.updateTimer();
+            }
+
+        }
+
+        private void setCounted(boolean counted) {
+            // maintain the active channel session count
+            synchronized (ServerSocketThread.this.poolLock) {
+                if (this.counted != counted) {
+                    this.counted = counted;
+                    ServerSocketThread.this.channelSessionCount += counted? 1 : -1;
+                }
+            }
+        }
+
+        private void closeLater() {
+            // all output written, half-close now and close after delay
+            long delayMS = ServerSocketThread.this.getCloseDelay();
+            if ((delayMS <= 0L) || !this.channel.isOpen()) {
+                this.close();
+                return;
+            }
+            this.closing = true;
+            if (this.timer != null) {
+                this.timer.cancel();
+                this.timer = null;
+            }
+            if (this.key != null) {
+                this.key.cancel();
+            }
+            if (this.tls != null) {
+                this.tls.closeOutbound(); // close_notify
+            }
+            try {
+                this.channel.socket().shutdownOutput();
+            } catch (IOException ioe) {
+                this.close(); // already closed/reset by client
+                return;
+            }
+            this.setCounted(false);
+            final SocketChannel sc = this.channel;
+            TimerWheel.getSharedInstance().schedule(new Runnable() {
+                public void run() {
+                    try { sc.close(); } catch (IOException ioe) {}
+                }
+            }, delayMS);
+        }
+
+        public void close() {
+            this.closing = true;
+            this.setCounted(false);
+            this.writeQueue.clear();
+            if (this.timer != null) {
+                this.timer.cancel();
+                this.timer = null;
+            }
+            if (this.key != null) {
+                this.key.cancel();
+            }
+            try {
+                this.channel.close();
+            } catch (IOException ioe) {
+                /* unable to close? */
             }
         }
 
     }
-    
+
     // ------------------------------------------------------------------------
     
     /**
@@ -0,0 +1,200 @@
+// ----------------------------------------------------------------------------
+// Copyright 2006-2010, GeoTelematic Solutions, Inc.
+// All rights reserved
+// ----------------------------------------------------------------------------
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+// http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+//
+// ----------------------------------------------------------------------------
+// Description:
+//  Fixed set of single threaded job queues, selected by key affinity
+// ----------------------------------------------------------------------------
+// Change History:
+//  2026/10/17
+//     -Initial release
+// ----------------------------------------------------------------------------
+package org.opengts.util;
+
+import java.util.*;
+
+/**
+*** A fixed number of shards, each a single thread running the jobs queued to it
+*** in order.  Jobs are routed to a shard by a hash of their key, so all jobs for a
+*** given key run on the same thread, one at a time, without additional locking.
+**/
+
+public class ShardedExecutor
+{
+
+    // ------------------------------------------------------------------------
+
+    private String      name        = null;
+    private Shard       shards[]    = null;
+
+    /**
+    *** Constructor
+    *** @param name        The name of this executor (used for the shard thread names)
+    *** @param shardCount  The number of shards (<= 0 for the number of available processors)
+    **/
+    public ShardedExecutor(String name, int shardCount)
+    {
+        this.name   = (name != null)? name : "Shard";
+        int count   = (shardCount > 0)? shardCount : Runtime.getRuntime().availableProcessors();
+        this.shards = new Shard[count];
+        for (int i = 0; i < this.shards.length; i++) {
+            this.shards[i] = new Shard(this.name + "_" + i);
+        }
+    }
+
+    // ------------------------------------------------------------------------
+
+    /**
+    *** Gets the name of this executor
+    *** @return The name of this executor
+    **/
+    public String getName()
+    {
+        return this.name;
+    }
+
+    /**
+    *** Returns the name of this executor
+    *** @return The name of this executor
+    **/
+    public String toString()
+    {
+        return this.getName() + " [" + this.getShardCount() + "]";
+    }
+
+    /**
+    *** Gets the number of shards
+    *** @return The number of shards
+    **/
+    public int getShardCount()
+    {
+        return this.shards.length;
+    }
+
+    /**
+    *** Gets the shard index to which the specified key is routed
+    *** @param key  The affinity key
+    *** @return The shard index
+    **/
+    public int getShardIndex(Object key)
+    {
+        if (key == null) {
+            return 0;
+        }
+        int h = key.hashCode();
+        h ^= (h >>> 16); // spread the high bits (String hashes of similar keys)
+        h *= 0x85EBCA6B;
+        h ^= (h >>> 13);
+        return (h & 0x7FFFFFFF) % this.shards.length;
+    }
+
+    /**
+    *** Gets the number of jobs waiting in the specified shard
+    *** @param shardNdx  The shard index
+    *** @return The number of waiting jobs
+    **/
+    public int getQueueSize(int shardNdx)
+    {
+        return this.shards[shardNdx].getQueueSize();
+    }
+
+    // ------------------------------------------------------------------------
+
+    /**
+    *** Queues a job on the shard selected by the specified key
+    *** @param key  The affinity key
+    *** @param job  The job to run
+    **/
+    public void run(Object key, Runnable job)
+    {
+        if (job != null) {
+            this.shards[this.getShardIndex(key)].add(job);
+        }
+    }
+
+    /**
+    *** Stops all shard threads once their queued jobs are complete
+    **/
+    public void stopThreads()
+    {
+        for (int i = 0; i < this.shards.length; i++) {
+            this.shards[i].stopThread();
+        }
+    }
+
+    // ------------------------------------------------------------------------
+
+    private static class Shard
+        extends Thread
+    {
+        private java.util.List<Runnable> jobQueue = new Vector<Runnable>();
+        private boolean stop = false;
+
+        public Shard(String name) {
+            super(name);
+            this.setDaemon(true);
+            this.start(); // auto start
+        }
+
+        public int getQueueSize() {
+            synchronized (this.jobQueue) {
+                return this.jobQueue.size();
+            }
+        }
+
+        public void add(Runnable job) {
+            synchronized (this.jobQueue) {
+                this.jobQueue.add(job);
+                this.jobQueue.notify();
+            }
+        }
+
+        public void stopThread() {
+            synchronized (this.jobQueue) {
+                this.stop = true;
+                this.jobQueue.notify();
+            }
+        }
+
+        public void run() {
+            while (true) {
+
+                /* get next job */
+                Runnable job = null;
+                synchronized (this.jobQueue) {
+                    while (this.jobQueue.isEmpty()) {
+                        if (this.stop) {
+                            return;
+                        }
+                        try { this.jobQueue.wait(); } catch (InterruptedException ie) {}
+                    }
+                    job = this.jobQueue.remove(0);
+                }
+
+                /* run job */
+                try {
+                    job.run();
+                } catch (Throwable th) {
+                    Print.logException("Shard job error: " + this.getName(), th);
+                }
+
+            }
+        }
+
+    }
+
+}
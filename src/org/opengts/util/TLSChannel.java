@@ -0,0 +1,443 @@
+// ----------------------------------------------------------------------------
+// Copyright 2006-2010, GeoTelematic Solutions, Inc.
+// All rights reserved
+// ----------------------------------------------------------------------------
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+// http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+//
+// ----------------------------------------------------------------------------
+// Description:
+//  Non-blocking TLS transport over a SocketChannel (SSLEngine)
+// ----------------------------------------------------------------------------
+// Change History:
+//  2026/10/17
+//     -Initial release
+// ----------------------------------------------------------------------------
+package org.opengts.util;
+
+import java.io.*;
+import java.util.*;
+import java.util.concurrent.atomic.*;
+import java.nio.*;
+import java.nio.channels.*;
+import javax.net.ssl.*;
+
+/**
+*** A non-blocking, server side TLS channel.<br>
+*** Application data read from/written to this channel is unwrapped from/wrapped into
+*** TLS records exchanged with the underlying (non-blocking) SocketChannel.  The
+*** handshake is driven by <code>read</code>: writes made before the handshake has
+*** completed return '0' and should be retried once <code>isHandshakeComplete</code>
+*** returns true.  Delegated handshake tasks are run in the calling thread.<br>
+*** Session resumption is provided by the server session cache (or TLS 1.3 session
+*** tickets) of the SSLContext from which the SSLEngine was created.
+**/
+
+public class TLSChannel
+    implements ByteChannel, GatheringByteChannel
+{
+
+    // ------------------------------------------------------------------------
+
+    /**
+    *** Stats: handshake counters shared by the channels of a server
+    **/
+    public static class Stats
+    {
+        private AtomicLong fullCount    = new AtomicLong(0L);
+        private AtomicLong resumedCount = new AtomicLong(0L);
+        private AtomicLong failedCount  = new AtomicLong(0L);
+        public long getFullHandshakeCount() {
+            return this.fullCount.get();
+        }
+        public long getResumedHandshakeCount() {
+            return this.resumedCount.get();
+        }
+        public long getFailedHandshakeCount() {
+            return this.failedCount.get();
+        }
+        public String toString() {
+            return "full=" + this.getFullHandshakeCount() +
+                ", resumed=" + this.getResumedHandshakeCount() +
+                ", failed=" + this.getFailedHandshakeCount();
+        }
+    }
+
+    // ------------------------------------------------------------------------
+
+    /**
+    *** Sets the size and timeout of the server session cache of the specified SSLContext
+    *** @param ctx         The SSLContext
+    *** @param cacheSize   The maximum number of cached sessions ('0' for unlimited)
+    *** @param timeoutSec  The cached session timeout in seconds ('0' for no timeout)
+    **/
+    public static void setSessionCache(SSLContext ctx, int cacheSize, int timeoutSec)
+    {
+        SSLSessionContext ssc = (ctx != null)? ctx.getServerSessionContext() : null;
+        if (ssc != null) {
+            ssc.setSessionCacheSize((cacheSize  > 0)? cacheSize  : 0);
+            ssc.setSessionTimeout(  (timeoutSec > 0)? timeoutSec : 0);
+        }
+    }
+
+    // ------------------------------------------------------------------------
+
+    private static final ByteBuffer EMPTY   = ByteBuffer.allocate(0);
+
+    private SocketChannel   channel         = null;
+    private SSLEngine       engine          = null;
+    private Stats           stats           = null;
+
+    private ByteBuffer      netIn           = null;     // write mode
+    private ByteBuffer      netOut          = null;     // read mode
+    private ByteBuffer      appIn           = null;     // read mode
+
+    private long            handshakeStart  = 0L;
+    private boolean         handshakeDone   = false;
+    private boolean         resumed         = false;
+
+    /**
+    *** Constructor.  The handshake is started immediately.
+    *** @param channel  The connected (non-blocking) SocketChannel
+    *** @param engine   The SSLEngine (server mode is set by this constructor)
+    *** @param stats    The handshake counters (may be null)
+    **/
+    public TLSChannel(SocketChannel channel, SSLEngine engine, Stats stats)
+        throws IOException
+    {
+        this.channel = channel;
+        this.engine  = engine;
+        this.stats   = stats;
+        this.engine.setUseClientMode(false);
+        SSLSession session = this.engine.getSession();
+        this.netIn   = ByteBuffer.allocate(session.getPacketBufferSize());
+        this.netOut  = ByteBuffer.allocate(session.getPacketBufferSize());
+        this.netOut.flip();
+        this.appIn   = ByteBuffer.allocate(session.getApplicationBufferSize());
+        this.appIn.flip();
+        this.handshakeStart = DateTime.getCurrentTimeMillis();
+        this.engine.beginHandshake();
+    }
+
+    // ------------------------------------------------------------------------
+
+    /**
+    *** Returns true if the initial handshake has completed
+    *** @return True if the initial handshake has completed
+    **/
+    public boolean isHandshakeComplete()
+    {
+        return this.handshakeDone;
+    }
+
+    /**
+    *** Returns true if the session was resumed from a previous session
+    *** @return True if the session was resumed
+    **/
+    public boolean isResumed()
+    {
+        return this.resumed;
+    }
+
+    /**
+    *** Gets the SSLSession
+    *** @return The SSLSession
+    **/
+    public SSLSession getSession()
+    {
+        return this.engine.getSession();
+    }
+
+    /**
+    *** Returns true if there are TLS records which have not yet been written to the
+    *** underlying channel
+    *** @return True if there is pending output
+    **/
+    public boolean hasPendingOutput()
+    {
+        return this.netOut.hasRemaining();
+    }
+
+    /**
+    *** Returns true if there is received data which has not yet been returned by
+    *** <code>read</code> (the caller should continue reading)
+    *** @return True if there is buffered input
+    **/
+    public boolean hasBufferedInput()
+    {
+        return this.appIn.hasRemaining() || (this.netIn.position() > 0);
+    }
+
+    public boolean isOpen()
+    {
+        return this.channel.isOpen();
+    }
+
+    // ------------------------------------------------------------------------
+
+    /**
+    *** Writes pending TLS records to the underlying channel
+    *** @return True if all pending records have been written
+    **/
+    public boolean flush()
+        throws IOException
+    {
+        while (this.netOut.hasRemaining()) {
+            if (this.channel.write(this.netOut) <= 0) {
+                return false; // socket buffer is full
+            }
+        }
+        return true;
+    }
+
+    /**
+    *** Wraps the specified application data (or handshake data if 'src' is empty)
+    **/
+    private SSLEngineResult _wrap(ByteBuffer src[], int ofs, int len)
+        throws IOException
+    {
+        for (;;) {
+            this.netOut.compact();
+            SSLEngineResult r;
+            try {
+                r = this.engine.wrap(src, ofs, len, this.netOut);
+            } finally {
+                this.netOut.flip();
+            }
+            this._checkHandshake(r);
+            if (r.getStatus() == SSLEngineResult.Status.BUFFER_OVERFLOW) {
+                if (this.netOut.hasRemaining()) {
+                    return r; // caller must flush first
+                }
+                this.netOut = ByteBuffer.allocate(this.engine.getSession().getPacketBufferSize());
+                this.netOut.flip();
+                continue;
+            }
+            return r;
+        }
+    }
+
+    /**
+    *** Runs delegated handshake tasks
+    **/
+    private void _runTasks()
+    {
+        Runnable task;
+        while ((task = this.engine.getDelegatedTask()) != null) {
+            task.run();
+        }
+    }
+
+    /**
+    *** Records completion of the initial handshake
+    **/
+    private void _checkHandshake(SSLEngineResult r)
+    {
+        if (!this.handshakeDone && (r.getHandshakeStatus() == SSLEngineResult.HandshakeStatus.FINISHED)) {
+            this.handshakeDone = true;
+            // a resumed session was created before this handshake started
+            this.resumed = (this.engine.getSession().getCreationTime() < this.handshakeStart);
+            if (this.stats != null) {
+                if (this.resumed) {
+                    this.stats.resumedCount.incrementAndGet();
+                } else {
+                    this.stats.fullCount.incrementAndGet();
+                }
+            }
+        }
+    }
+
+    /**
+    *** Reads from the underlying channel and unwraps received records (performing any
+    *** required handshake steps) until application data is available.
+    *** @return The number of available application bytes, or -1 if the end of stream
+    ***         has been reached
+    **/
+    private int _fill()
+        throws IOException
+    {
+        try {
+            for (;;) {
+                SSLEngineResult.HandshakeStatus hs = this.engine.getHandshakeStatus();
+                if (hs == SSLEngineResult.HandshakeStatus.NEED_TASK) {
+                    this._runTasks();
+                    continue;
+                } else
+                if (hs == SSLEngineResult.HandshakeStatus.NEED_WRAP) {
+                    SSLEngineResult r = this._wrap(new ByteBuffer[] { EMPTY }, 0, 1);
+                    if (!this.flush()) {
+                        return 0; // wait until writable
+                    } else
+                    if (r.getStatus() == SSLEngineResult.Status.CLOSED) {
+                        return -1;
+                    }
+                    continue;
+                }
+
+                /* unwrap */
+                this.netIn.flip();
+                this.appIn.compact();
+                SSLEngineResult r;
+                try {
+                    r = this.engine.unwrap(this.netIn, this.appIn);
+                } finally {
+                    this.appIn.flip();
+                    this.netIn.compact();
+                }
+                this._checkHandshake(r);
+                switch (r.getStatus()) {
+                    case OK:
+                        if (this.appIn.hasRemaining()) {
+                            return this.appIn.remaining();
+                        }
+                        break;
+                    case BUFFER_UNDERFLOW: {
+                        // incomplete record, read more from the network
+                        int pktSize = this.engine.getSession().getPacketBufferSize();
+                        if (this.netIn.capacity() < pktSize) {
+                            ByteBuffer bb = ByteBuffer.allocate(pktSize);
+                            this.netIn.flip();
+                            bb.put(this.netIn);
+                            this.netIn = bb;
+                        }
+                        int n = this.channel.read(this.netIn);
+                        if (n < 0) {
+                            try { this.engine.closeInbound(); } catch (SSLException se) { /* truncated */ }
+                            return -1;
+                        } else
+                        if (n == 0) {
+                            return 0;
+                        }
+                        break;
+                    }
+                    case BUFFER_OVERFLOW:
+                        if (this.appIn.hasRemaining()) {
+                            return this.appIn.remaining(); // consume current data first
+                        }
+                        this.appIn = ByteBuffer.allocate(this.engine.getSession().getApplicationBufferSize());
+                        this.appIn.flip();
+                        break;
+                    case CLOSED:
+                        return this.appIn.hasRemaining()? this.appIn.remaining() : -1;
+                }
+            }
+        } catch (SSLException se) {
+            if (!this.handshakeDone && (this.stats != null)) {
+                this.stats.failedCount.incrementAndGet();
+            }
+            throw se;
+        }
+    }
+
+    // ------------------------------------------------------------------------
+
+    /**
+    *** Reads application data into the specified buffer
+    *** @param dst  The destination buffer
+    *** @return The number of bytes read (possibly 0), or -1 if the end of stream has
+    ***         been reached
+    **/
+    public int read(ByteBuffer dst)
+        throws IOException
+    {
+        if (!this.appIn.hasRemaining()) {
+            int n = this._fill();
+            if (n <= 0) {
+                return n;
+            }
+        }
+        int len = Math.min(dst.remaining(), this.appIn.remaining());
+        if (len > 0) {
+            int lim = this.appIn.limit();
+            this.appIn.limit(this.appIn.position() + len);
+            dst.put(this.appIn);
+            this.appIn.limit(lim);
+        }
+        return len;
+    }
+
+    public int write(ByteBuffer src)
+        throws IOException
+    {
+        return (int)this.write(new ByteBuffer[] { src }, 0, 1);
+    }
+
+    public long write(ByteBuffer srcs[])
+        throws IOException
+    {
+        return this.write(srcs, 0, srcs.length);
+    }
+
+    /**
+    *** Wraps and writes application data from the specified buffers.
+    *** @return The number of application bytes consumed (0 if the handshake has not
+    ***         yet completed, or the underlying socket buffer is full)
+    **/
+    public long write(ByteBuffer srcs[], int ofs, int len)
+        throws IOException
+    {
+        if (!this.handshakeDone || !this.flush()) {
+            return 0L;
+        }
+        long total = 0L;
+        for (;;) {
+            boolean hasData = false;
+            for (int i = ofs; i < (ofs + len); i++) {
+                if (srcs[i].hasRemaining()) { hasData = true; break; }
+            }
+            if (!hasData) {
+                break;
+            }
+            SSLEngineResult r = this._wrap(srcs, ofs, len);
+            if (r.getStatus() == SSLEngineResult.Status.CLOSED) {
+                throw new SSLException("TLS session closed");
+            }
+            total += r.bytesConsumed();
+            if (!this.flush() || (r.bytesConsumed() == 0)) {
+                break; // wait until writable
+            }
+        }
+        return total;
+    }
+
+    // ------------------------------------------------------------------------
+
+    /**
+    *** Sends a TLS 'close_notify' (best effort, does not wait for the socket to
+    *** become writable).  The underlying channel is not closed.
+    **/
+    public void closeOutbound()
+    {
+        try {
+            this.engine.closeOutbound();
+            while (!this.engine.isOutboundDone()) {
+                SSLEngineResult r = this._wrap(new ByteBuffer[] { EMPTY }, 0, 1);
+                if (!this.flush() || (r.bytesProduced() == 0)) {
+                    break;
+                }
+            }
+        } catch (IOException ioe) {
+            // ignore
+        }
+    }
+
+    /**
+    *** Closes the underlying channel
+    **/
+    public void close()
+        throws IOException
+    {
+        this.channel.close();
+    }
+
+}
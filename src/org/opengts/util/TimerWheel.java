@@ -0,0 +1,283 @@
+// ----------------------------------------------------------------------------
+// Copyright 2006-2010, GeoTelematic Solutions, Inc.
+// All rights reserved
+// ----------------------------------------------------------------------------
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+// http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+//
+// ----------------------------------------------------------------------------
+// Description:
+//  Hashed timer wheel for tracking large numbers of timeouts
+// ----------------------------------------------------------------------------
+// Change History:
+//  2026/10/17
+//     -Initial release
+// ----------------------------------------------------------------------------
+package org.opengts.util;
+
+import java.util.*;
+
+/**
+*** A hashed timer wheel.<br>
+*** Timeouts are placed in one of 'wheelSize' slots based on their deadline
+*** (deadlines beyond one revolution of the wheel record the number of remaining
+*** revolutions).  Scheduling and cancelling a timeout are O(1) operations, and
+*** each tick only examines the timeouts in the current slot.  Expired tasks are
+*** run on the timer thread, and should therefore return quickly.  Timeouts never
+*** expire early, but may expire up to one tick late.
+**/
+
+public class TimerWheel
+    implements Runnable
+{
+
+    // ------------------------------------------------------------------------
+
+    private static final long   DFT_TICK_MS         = 100L;
+    private static final int    DFT_WHEEL_SIZE      = 512;
+
+    private static TimerWheel   sharedInstance      = null;
+
+    /**
+    *** Gets the shared TimerWheel instance (started on first use)
+    *** @return The shared TimerWheel
+    **/
+    public static TimerWheel getSharedInstance()
+    {
+        synchronized (TimerWheel.class) {
+            if (TimerWheel.sharedInstance == null) {
+                TimerWheel.sharedInstance = new TimerWheel("TimerWheel", DFT_TICK_MS, DFT_WHEEL_SIZE);
+            }
+            return TimerWheel.sharedInstance;
+        }
+    }
+
+    // ------------------------------------------------------------------------
+
+    /**
+    *** Timeout: a scheduled task
+    **/
+    public class Timeout
+    {
+        private Runnable    task        = null;
+        private long        deadline    = 0L;
+        private long        rounds      = 0L;
+        private int         slot        = -1;   // -1 when not scheduled
+        private Timeout     prev        = null;
+        private Timeout     next        = null;
+        private Timeout(Runnable task, long deadline) {
+            this.task     = task;
+            this.deadline = deadline;
+        }
+        public long getDeadline() {
+            return this.deadline;
+        }
+        public boolean isPending() {
+            synchronized (TimerWheel.this.lock) {
+                return (this.slot >= 0);
+            }
+        }
+        public boolean cancel() {
+            return TimerWheel.this.cancel(this);
+        }
+    }
+
+    // ------------------------------------------------------------------------
+
+    private Object              lock            = new Object();
+    private Timeout             wheel[]         = null;     // slot list heads
+    private int                 mask            = 0;
+    private long                tickMS          = DFT_TICK_MS;
+    private long                startTime       = 0L;
+    private long                currentTick     = 0L;
+    private int                 pendingCount    = 0;
+    private Thread              thread          = null;
+    private boolean             running         = true;
+
+    /**
+    *** Constructor.  The timer thread is started immediately.
+    *** @param name       The timer thread name
+    *** @param tickMS     The tick duration (timeout resolution) in milliseconds
+    *** @param wheelSize  The number of wheel slots (rounded up to a power of 2)
+    **/
+    public TimerWheel(String name, long tickMS, int wheelSize)
+    {
+        int size = 1;
+        while (size < wheelSize) { size <<= 1; }
+        this.wheel     = new Timeout[size];
+        this.mask      = size - 1;
+        this.tickMS    = (tickMS > 0L)? tickMS : DFT_TICK_MS;
+        this.startTime = DateTime.getCurrentTimeMillis();
+        this.thread    = new Thread(this, (name != null)? name : "TimerWheel");
+        this.thread.setDaemon(true);
+        this.thread.start();
+    }
+
+    // ------------------------------------------------------------------------
+
+    /**
+    *** Gets the tick duration
+    *** @return The tick duration in milliseconds
+    **/
+    public long getTickMS()
+    {
+        return this.tickMS;
+    }
+
+    /**
+    *** Gets the number of pending timeouts
+    *** @return The number of pending timeouts
+    **/
+    public int getPendingCount()
+    {
+        synchronized (this.lock) {
+            return this.pendingCount;
+        }
+    }
+
+    // ------------------------------------------------------------------------
+
+    /**
+    *** Schedules the specified task to run after the specified delay
+    *** @param task     The task to run
+    *** @param delayMS  The delay in milliseconds
+    *** @return The scheduled Timeout (which may be used to cancel the task)
+    **/
+    public Timeout schedule(Runnable task, long delayMS)
+    {
+        return this.scheduleAt(task, DateTime.getCurrentTimeMillis() + ((delayMS > 0L)? delayMS : 0L));
+    }
+
+    /**
+    *** Schedules the specified task to run at the specified time
+    *** @param task      The task to run
+    *** @param deadline  The time (in milliseconds) at which the task is to be run
+    *** @return The scheduled Timeout (which may be used to cancel the task)
+    **/
+    public Timeout scheduleAt(Runnable task, long deadline)
+    {
+        Timeout t = new Timeout(task, deadline);
+        synchronized (this.lock) {
+            // round up, so that the timeout never expires early
+            // (the slot for 'currentTick' has already been processed)
+            long tick = (deadline - this.startTime + this.tickMS - 1L) / this.tickMS;
+            if (tick <= this.currentTick) { tick = this.currentTick + 1L; }
+            t.rounds = (tick - this.currentTick - 1L) / this.wheel.length;
+            t.slot   = (int)(tick & this.mask);
+            t.next   = this.wheel[t.slot];
+            if (t.next != null) { t.next.prev = t; }
+            this.wheel[t.slot] = t;
+            this.pendingCount++;
+        }
+        return t;
+    }
+
+    /**
+    *** Cancels the specified Timeout
+    *** @param t  The Timeout to cancel
+    *** @return True if the Timeout was pending, false if it had already expired or
+    ***         been cancelled
+    **/
+    public boolean cancel(Timeout t)
+    {
+        if (t == null) {
+            return false;
+        }
+        synchronized (this.lock) {
+            if (t.slot < 0) {
+                return false;
+            }
+            this._unlink(t);
+            return true;
+        }
+    }
+
+    /**
+    *** Removes the specified Timeout from its slot (must be called while holding the lock)
+    **/
+    private void _unlink(Timeout t)
+    {
+        if (t.prev != null) {
+            t.prev.next = t.next;
+        } else {
+            this.wheel[t.slot] = t.next;
+        }
+        if (t.next != null) {
+            t.next.prev = t.prev;
+        }
+        t.prev = null;
+        t.next = null;
+        t.slot = -1;
+        this.pendingCount--;
+    }
+
+    // ------------------------------------------------------------------------
+
+    /**
+    *** Stops the timer thread.  Pending timeouts will not be run.
+    **/
+    public void shutdown()
+    {
+        synchronized (this.lock) {
+            this.running = false;
+            this.lock.notifyAll();
+        }
+    }
+
+    /**
+    *** Timer thread
+    **/
+    public void run()
+    {
+        java.util.List<Timeout> expired = new Vector<Timeout>();
+        while (true) {
+
+            /* wait for next tick, and collect expired timeouts */
+            synchronized (this.lock) {
+                while (this.running) {
+                    long nextTickAt = this.startTime + ((this.currentTick + 1L) * this.tickMS);
+                    long waitMS = nextTickAt - DateTime.getCurrentTimeMillis();
+                    if (waitMS <= 0L) { break; }
+                    try { this.lock.wait(waitMS); } catch (InterruptedException ie) {}
+                }
+                if (!this.running) {
+                    break;
+                }
+                this.currentTick++;
+                Timeout t = this.wheel[(int)(this.currentTick & this.mask)];
+                while (t != null) {
+                    Timeout next = t.next;
+                    if (t.rounds <= 0L) {
+                        this._unlink(t);
+                        expired.add(t);
+                    } else {
+                        t.rounds--;
+                    }
+                    t = next;
+                }
+            }
+
+            /* run expired tasks (outside of lock) */
+            for (int i = 0; i < expired.size(); i++) {
+                try {
+                    expired.get(i).task.run();
+                } catch (Throwable th) {
+                    Print.logException("TimerWheel task", th);
+                }
+            }
+            expired.clear();
+
+        }
+    }
+
+}